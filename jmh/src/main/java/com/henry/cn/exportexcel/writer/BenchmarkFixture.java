@@ -0,0 +1,149 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.ExcelRow;
+import com.henry.cn.exportexcel.excel.ExcelStyle;
+import com.henry.cn.exportexcel.excel.ExcelWorksheet;
+import com.henry.cn.exportexcel.reader.ExcelSheetHandler;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * description: 基准测试使用的模板和数据。模板取自jar中的样例，发票信息sheet按sheets复制多份，
+ * 数据中的电站个数为stations，每个电站在发票信息sheet中占5行
+ */
+final class BenchmarkFixture {
+
+    static final String TEMPLATE_NAME = "benchmark.xml";
+
+    private static final String SAMPLE_TEMPLATE = "/template/图片-颜色-单元格合并-样例.xml";
+
+    private static final String SHEET_START = "<Worksheet ss:Name=\"发票信息\">";
+
+    private static final String SHEET_END = "</Worksheet>";
+
+    private BenchmarkFixture() {
+    }
+
+    /**
+     * description: 在临时目录中生成放大后的模板，返回该目录
+     *
+     * @param sheets
+     * @return java.io.File
+     */
+    static File createTemplateDir(int sheets) throws IOException {
+        String sample;
+        try (InputStream inputStream = ExcelExporter.class.getResourceAsStream(SAMPLE_TEMPLATE)) {
+            sample = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+        int start = sample.indexOf(SHEET_START);
+        int end = sample.indexOf(SHEET_END, start) + SHEET_END.length();
+        String sheet = sample.substring(start, end);
+        StringBuilder scaled = new StringBuilder(sample.length() + sheet.length() * sheets);
+        scaled.append(sample, 0, start);
+        for (int i = 0; i < sheets; i++) {
+            scaled.append(sheet.replace(SHEET_START, "<Worksheet ss:Name=\"发票信息" + (i + 1) + "\">"));
+        }
+        scaled.append(sample, end, sample.length());
+        // 样例中的合并行数按默认的数字格式输出，超过999行时会带千分位，基准测试的数据量需要按计算机格式输出
+        String template = scaled.toString().replace("${num}", "${num?c}");
+        File templateDir = Files.createTempDirectory("excel-jmh").toFile();
+        FileUtils.writeStringToFile(new File(templateDir, TEMPLATE_NAME), template, StandardCharsets.UTF_8);
+        return templateDir;
+    }
+
+    static Map<String, Object> createDataMap(int stations) {
+        Map<String, Object> bill = new HashMap<>();
+        bill.put("customerName", "奥迪公司");
+        bill.put("isGeneralTaxpayer", "是");
+        bill.put("taxNumber", "123456789");
+        bill.put("addressAndPhone", "北京市望京SOHO" + "&#10;" + "010-8866396");
+        bill.put("bankAndAccount", "中国银行&#10;123456");
+        String[] powerNames = {"尖", "峰", "平", "谷", "合计"};
+        List<Map<String, Object>> stationBillList = new ArrayList<>(stations);
+        for (int i = 0; i < stations; i++) {
+            Map<String, Object> stationBillOutput = new HashMap<>();
+            stationBillOutput.put("description", "奥迪公司3月份电费" + i);
+            stationBillOutput.put("period", "2020年05月30日_2020年06月30日");
+            List<Map<String, Object>> periodPowerList = new ArrayList<>(powerNames.length);
+            for (int j = 0; j < powerNames.length; j++) {
+                Map<String, Object> periodPower = new HashMap<>();
+                periodPower.put("powerName", powerNames[j]);
+                periodPower.put("power", new BigDecimal(j + 1000));
+                periodPower.put("price", new BigDecimal(j + 0.1));
+                periodPower.put("noTaxMoney", new BigDecimal(j + 1002));
+                periodPower.put("taxRate", 13);
+                periodPower.put("taxAmount", j + 1004);
+                periodPower.put("taxmoney", j + 1005);
+                periodPowerList.add(periodPower);
+            }
+            stationBillOutput.put("periodPowerList", periodPowerList);
+            stationBillOutput.put("stationName", "奥迪公司园区" + i);
+            stationBillList.add(stationBillOutput);
+        }
+        bill.put("stationBillList", stationBillList);
+        Map<String, Object> stationAmountOutput = new HashMap<>();
+        stationAmountOutput.put("power", new BigDecimal(123));
+        stationAmountOutput.put("noTaxMoney", new BigDecimal(456));
+        stationAmountOutput.put("taxAmount", new BigDecimal(789));
+        stationAmountOutput.put("taxmoney", new BigDecimal(2324));
+        bill.put("stationAmount", stationAmountOutput);
+        Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("bill", bill);
+        return dataMap;
+    }
+
+    /**
+     * description: 记录解析结果，之后可以反复回放给{@link SheetWriter}，单独测量写入sheet的耗时
+     */
+    static final class RecordedSheets implements ExcelSheetHandler {
+
+        private Map<String, ExcelStyle> styles;
+
+        private final List<ExcelWorksheet> worksheets = new ArrayList<>();
+
+        private final List<List<ExcelRow>> rows = new ArrayList<>();
+
+        @Override
+        public void styles(Map<String, ExcelStyle> styles) {
+            this.styles = styles;
+        }
+
+        @Override
+        public void startSheet(ExcelWorksheet worksheet) {
+            worksheets.add(worksheet);
+            rows.add(new ArrayList<>());
+        }
+
+        @Override
+        public void row(ExcelRow row) {
+            rows.get(rows.size() - 1).add(row);
+        }
+
+        @Override
+        public void endSheet(ExcelWorksheet worksheet) {
+        }
+
+        Map<String, ExcelStyle> getStyles() {
+            return styles;
+        }
+
+        void replay(ExcelSheetHandler handler) {
+            handler.styles(styles);
+            for (int i = 0; i < worksheets.size(); i++) {
+                handler.startSheet(worksheets.get(i));
+                for (ExcelRow row : rows.get(i)) {
+                    handler.row(row);
+                }
+                handler.endSheet(worksheets.get(i));
+            }
+        }
+    }
+}
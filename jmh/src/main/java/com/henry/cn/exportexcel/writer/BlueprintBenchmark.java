@@ -0,0 +1,102 @@
+package com.henry.cn.exportexcel.writer;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * description: 比较FreeMarker渲染后解析与直接绑定蓝图的耗时和分配。样例模板含有assign等指令无法编译为蓝图，
+ * 这里使用只有插值和list的明细模板，每行8个单元格
+ * <p>
+ * 运行方式：在上级目录执行mvn install，然后在本目录执行mvn package，
+ * 再执行java -jar target/benchmarks.jar BlueprintBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlueprintBenchmark {
+
+    private static final String TEMPLATE_NAME = "detail.xml";
+
+    private static final String TEMPLATE = "<?xml version=\"1.0\"?>\n"
+            + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+            + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+            + " <Styles><Style ss:ID=\"border\"><Borders>\n"
+            + "  <Border ss:Position=\"Bottom\" ss:LineStyle=\"Continuous\" ss:Weight=\"1\"/>\n"
+            + " </Borders></Style></Styles>\n"
+            + " <Worksheet ss:Name=\"明细\"><Table>\n"
+            + "  <Row><Cell><Data ss:Type=\"String\">${title}</Data></Cell></Row>\n"
+            + "  <#list rows as row>\n"
+            + "  <Row>\n"
+            + "   <Cell><Data ss:Type=\"Number\">${row_index}</Data></Cell>\n"
+            + "   <Cell ss:StyleID=\"border\"><Data ss:Type=\"String\">${row.stationName}</Data></Cell>\n"
+            + "   <Cell><Data ss:Type=\"String\">${row.powerName}</Data></Cell>\n"
+            + "   <Cell><Data ss:Type=\"Number\">${row.power}</Data></Cell>\n"
+            + "   <Cell><Data ss:Type=\"Number\">${row.price}</Data></Cell>\n"
+            + "   <Cell><Data ss:Type=\"Number\">${row.noTaxMoney}</Data></Cell>\n"
+            + "   <Cell><Data ss:Type=\"Number\">${row.taxRate}</Data></Cell>\n"
+            + "   <Cell><Data ss:Type=\"String\">${row.remark!}</Data></Cell>\n"
+            + "  </Row>\n"
+            + "  </#list>\n"
+            + " </Table></Worksheet>\n"
+            + "</Workbook>\n";
+
+    @Param({"50000"})
+    private int rows;
+
+    @Param({"FREEMARKER", "BLUEPRINT"})
+    private String engine;
+
+    @Param({"XLSX_DIRECT"})
+    private ExcelFormat format;
+
+    private File templateDir;
+
+    private ExcelExporter exporter;
+
+    private Map<String, Object> dataMap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        templateDir = Files.createTempDirectory("excel-jmh").toFile();
+        FileUtils.writeStringToFile(new File(templateDir, TEMPLATE_NAME), TEMPLATE, StandardCharsets.UTF_8);
+        exporter = ExcelExporter.builder()
+                .templateDir(templateDir)
+                .blueprintBinding("BLUEPRINT".equals(engine))
+                .build();
+        List<Map<String, Object>> rowList = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("stationName", "奥迪公司园区" + i / 5);
+            row.put("powerName", "尖峰平谷计".substring(i % 5, i % 5 + 1));
+            row.put("power", new BigDecimal(i % 5 + 1000));
+            row.put("price", new BigDecimal("0.6123"));
+            row.put("noTaxMoney", new BigDecimal(i % 5 + 1002).multiply(new BigDecimal("0.6123")));
+            row.put("taxRate", 13);
+            rowList.add(row);
+        }
+        dataMap = new HashMap<>();
+        dataMap.put("title", "电费明细");
+        dataMap.put("rows", rowList);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(templateDir);
+    }
+
+    @Benchmark
+    public void export() {
+        exporter.writeExcel(format, dataMap, TEMPLATE_NAME, new NullOutputStream());
+    }
+}
@@ -0,0 +1,148 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.*;
+import com.henry.cn.exportexcel.reader.WorkbookContext;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * description: 测量百万个单元格的值转换：原来的replaceAll加Float.parseFloat、Double.parseDouble
+ * 与{@link CellValues}逐字符解析的对比，以及将百万个Number单元格写入流式xlsx的整体耗时
+ * <p>
+ * 运行方式：在上级目录执行mvn install，然后在本目录执行mvn package，
+ * 再执行java -jar target/benchmarks.jar CellValueBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CellValueBenchmark {
+
+    private static final int COLUMNS = 10;
+
+    @Param({"1000000"})
+    private int cells;
+
+    private String[] numbers;
+
+    private String[] dateTimes;
+
+    private ExcelExporter exporter;
+
+    private Map<String, ExcelStyle> styles;
+
+    private ExcelWorksheet worksheet;
+
+    private List<ExcelRow> rows;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        numbers = new String[cells];
+        dateTimes = new String[cells];
+        for (int i = 0; i < cells; i++) {
+            // 金额、带千分位的金额、整数、税率交替出现
+            switch (i % 4) {
+                case 0:
+                    numbers[i] = (i % 100000) + "." + (i % 100);
+                    break;
+                case 1:
+                    numbers[i] = String.format("%,d.%02d", i * 37L, i % 100);
+                    break;
+                case 2:
+                    numbers[i] = Integer.toString(i);
+                    break;
+                default:
+                    numbers[i] = "0.13";
+                    break;
+            }
+            dateTimes[i] = String.format("2020-%02d-%02dT%02d:%02d:00.000", i % 12 + 1, i % 28 + 1, i % 24, i % 60);
+        }
+        exporter = ExcelExporter.builder().build();
+        styles = Collections.singletonMap("Default", new ExcelStyle());
+        worksheet = new ExcelWorksheet();
+        worksheet.setName("数字");
+        rows = new ArrayList<>(cells / COLUMNS);
+        for (int r = 0; r < cells / COLUMNS; r++) {
+            List<ExcelCell> excelCells = new ArrayList<>(COLUMNS);
+            for (int c = 0; c < COLUMNS; c++) {
+                ExcelData excelData = new ExcelData();
+                excelData.setType(CellValues.NUMBER);
+                excelData.setText(numbers[r * COLUMNS + c]);
+                ExcelCell excelCell = new ExcelCell();
+                excelCell.setStyleID("Default");
+                excelCell.setExcelData(excelData);
+                excelCells.add(excelCell);
+            }
+            ExcelRow row = new ExcelRow();
+            row.setExcelCells(excelCells);
+            rows.add(row);
+        }
+    }
+
+    /**
+     * description: 改动前的转换方式，每个单元格编译一次正则并丢失double精度
+     */
+    @Benchmark
+    public double legacyReplaceAllParseFloat() {
+        double sum = 0;
+        for (String number : numbers) {
+            sum += Float.parseFloat(number.replaceAll(",", ""));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double replaceParseDouble() {
+        double sum = 0;
+        for (String number : numbers) {
+            sum += Double.parseDouble(number.replace(",", ""));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double parseNumber() {
+        double sum = 0;
+        for (String number : numbers) {
+            sum += CellValues.parseNumber(number);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double parseDateTime() {
+        double sum = 0;
+        for (String dateTime : dateTimes) {
+            sum += CellValues.parseDateTime(dateTime);
+        }
+        return sum;
+    }
+
+    /**
+     * description: 将百万个Number单元格写入流式xlsx的sheet，不包括序列化
+     */
+    @Benchmark
+    public Workbook writeNumericSheet() {
+        Workbook wb = exporter.createWorkbook(ExcelFormat.XLSX_STREAMING);
+        try {
+            SheetWriter sheetWriter = new SheetWriter(new WorkbookContext(wb));
+            sheetWriter.styles(styles);
+            sheetWriter.startSheet(worksheet);
+            for (ExcelRow row : rows) {
+                sheetWriter.row(row);
+            }
+            sheetWriter.endSheet(worksheet);
+            return wb;
+        } finally {
+            ExcelExporter.disposeWorkbook(wb);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.reader.ExcelXmlStreamReader;
+import com.henry.cn.exportexcel.reader.StyleOverflowPolicy;
+import com.henry.cn.exportexcel.reader.WorkbookContext;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * description: 比较XLSX、XLSX_STREAMING经过POI生成文件与XLSX_DIRECT直接写出OOXML的耗时和分配，
+ * 分别测量从已解析的行生成完整文件，以及包括模板渲染和解析的整个导出
+ * <p>
+ * 运行方式：在上级目录执行mvn install，然后在本目录执行mvn package，
+ * 再执行java -jar target/benchmarks.jar DirectWriterBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectWriterBenchmark {
+
+    /**
+     * 每个电站在发票信息sheet中占5行
+     */
+    @Param({"2000"})
+    private int stations;
+
+    @Param({"8"})
+    private int sheets;
+
+    @Param({"XLSX", "XLSX_STREAMING", "XLSX_DIRECT"})
+    private ExcelFormat format;
+
+    private File templateDir;
+
+    private ExcelExporter exporter;
+
+    private Map<String, Object> dataMap;
+
+    private BenchmarkFixture.RecordedSheets recordedSheets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        templateDir = BenchmarkFixture.createTemplateDir(sheets);
+        exporter = ExcelExporter.builder().templateDir(templateDir).build();
+        dataMap = BenchmarkFixture.createDataMap(stations);
+        byte[] xml = exporter.writeXml(dataMap, exporter.getTemplate(BenchmarkFixture.TEMPLATE_NAME)).toByteArray();
+        recordedSheets = new BenchmarkFixture.RecordedSheets();
+        ExcelXmlStreamReader.read(new ByteArrayInputStream(xml), recordedSheets);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(templateDir);
+    }
+
+    /**
+     * description: 将已解析的行写成完整的xlsx，POI格式包括写入workbook和序列化
+     */
+    @Benchmark
+    public void writeFile() throws Exception {
+        if (format == ExcelFormat.XLSX_DIRECT) {
+            XlsxDirectWriter directWriter = new XlsxDirectWriter(new NullOutputStream(), 0,
+                    StyleOverflowPolicy.FAIL, null, null, new ExportStats());
+            recordedSheets.replay(directWriter);
+            directWriter.finish();
+            return;
+        }
+        Workbook wb = exporter.createWorkbook(format);
+        try {
+            recordedSheets.replay(new SheetWriter(new WorkbookContext(wb)));
+            wb.write(new NullOutputStream());
+        } finally {
+            ExcelExporter.disposeWorkbook(wb);
+        }
+    }
+
+    /**
+     * description: 包括模板渲染和解析的整个导出
+     */
+    @Benchmark
+    public void export() {
+        exporter.writeExcel(format, dataMap, BenchmarkFixture.TEMPLATE_NAME, new NullOutputStream());
+    }
+}
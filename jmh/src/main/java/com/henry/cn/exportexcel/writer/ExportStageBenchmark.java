@@ -0,0 +1,190 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.ExcelRow;
+import com.henry.cn.exportexcel.excel.ExcelStyle;
+import com.henry.cn.exportexcel.excel.ExcelWorksheet;
+import com.henry.cn.exportexcel.reader.ExcelSheetHandler;
+import com.henry.cn.exportexcel.reader.ExcelXmlReader;
+import com.henry.cn.exportexcel.reader.ExcelXmlStreamReader;
+import com.henry.cn.exportexcel.reader.WorkbookContext;
+import freemarker.template.Template;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.dom4j.Document;
+import org.dom4j.io.SAXReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * description: 分阶段测量导出耗时：模板渲染、xml解析（StAX与dom4j）、样式创建、读取sheet、
+ * 写入行及合并单元格、workbook序列化。每个阶段的输入在Trial级别准备好，只测量该阶段本身
+ * <p>
+ * 运行方式：在上级目录执行mvn install，然后在本目录执行mvn package，再执行java -jar target/benchmarks.jar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportStageBenchmark {
+
+    /**
+     * 每个电站在发票信息sheet中占5行，xls单个sheet最多65536行
+     */
+    @Param({"100", "2000"})
+    private int stations;
+
+    @Param({"1", "8"})
+    private int sheets;
+
+    @Param({"XLS", "XLSX"})
+    private ExcelFormat format;
+
+    private File templateDir;
+
+    private ExcelExporter exporter;
+
+    private Map<String, Object> dataMap;
+
+    private Template template;
+
+    private byte[] xml;
+
+    private Document document;
+
+    private BenchmarkFixture.RecordedSheets recordedSheets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        templateDir = BenchmarkFixture.createTemplateDir(sheets);
+        exporter = ExcelExporter.builder().templateDir(templateDir).build();
+        dataMap = BenchmarkFixture.createDataMap(stations);
+        template = exporter.getTemplate(BenchmarkFixture.TEMPLATE_NAME);
+        xml = exporter.writeXml(dataMap, template).toByteArray();
+        document = new SAXReader().read(new ByteArrayInputStream(xml));
+        recordedSheets = new BenchmarkFixture.RecordedSheets();
+        ExcelXmlStreamReader.read(new ByteArrayInputStream(xml), recordedSheets);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(templateDir);
+    }
+
+    /**
+     * description: FreeMarker渲染模板到内存缓冲区
+     */
+    @Benchmark
+    public int renderTemplate() throws Exception {
+        return exporter.writeXml(dataMap, template).size();
+    }
+
+    /**
+     * description: StAX逐行解析，当前导出使用的解析方式
+     */
+    @Benchmark
+    public void parseStax(Blackhole blackhole) throws Exception {
+        ExcelXmlStreamReader.read(new ByteArrayInputStream(xml), new ExcelSheetHandler() {
+            @Override
+            public void styles(Map<String, ExcelStyle> styles) {
+                blackhole.consume(styles);
+            }
+
+            @Override
+            public void startSheet(ExcelWorksheet worksheet) {
+                blackhole.consume(worksheet);
+            }
+
+            @Override
+            public void row(ExcelRow row) {
+                blackhole.consume(row);
+            }
+
+            @Override
+            public void endSheet(ExcelWorksheet worksheet) {
+            }
+        });
+    }
+
+    /**
+     * description: dom4j整体解析为Document，作为对照
+     */
+    @Benchmark
+    public Document parseDom4j() throws Exception {
+        return new SAXReader().read(new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * description: 解析Styles节点并在新的workbook中创建CellStyle
+     */
+    @Benchmark
+    public Map<String, CellStyle> readCellStyle() throws Exception {
+        Workbook wb = exporter.createWorkbook(format);
+        try {
+            return ExcelXmlReader.readCellStyle(wb, document);
+        } finally {
+            ExcelExporter.disposeWorkbook(wb);
+        }
+    }
+
+    /**
+     * description: 从dom4j的Document中读取全部sheet的数据
+     */
+    @Benchmark
+    public List<ExcelWorksheet> readWorksheet() {
+        Workbook wb = exporter.createWorkbook(format);
+        try {
+            return ExcelXmlReader.readWorksheet(wb, document);
+        } finally {
+            ExcelExporter.disposeWorkbook(wb);
+        }
+    }
+
+    /**
+     * description: 将已解析的行写入新的workbook，包括创建样式、单元格、合并单元格及其边框
+     */
+    @Benchmark
+    public Workbook writeRowsAndMergedRegions() {
+        Workbook wb = exporter.createWorkbook(format);
+        try {
+            recordedSheets.replay(new SheetWriter(new WorkbookContext(wb)));
+            return wb;
+        } finally {
+            ExcelExporter.disposeWorkbook(wb);
+        }
+    }
+
+    /**
+     * description: 序列化已经生成好的workbook，每次调用前重新生成，生成的耗时不计入
+     */
+    @Benchmark
+    public void writeWorkbook(FilledWorkbook filledWorkbook) throws Exception {
+        filledWorkbook.wb.write(new NullOutputStream());
+    }
+
+    @State(Scope.Thread)
+    public static class FilledWorkbook {
+
+        private Workbook wb;
+
+        @Setup(Level.Invocation)
+        public void setUp(ExportStageBenchmark benchmark) {
+            wb = benchmark.exporter.createWorkbook(benchmark.format);
+            benchmark.recordedSheets.replay(new SheetWriter(new WorkbookContext(wb)));
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            ExcelExporter.disposeWorkbook(wb);
+        }
+    }
+}
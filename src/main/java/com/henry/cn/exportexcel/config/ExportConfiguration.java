@@ -0,0 +1,102 @@
+package com.henry.cn.exportexcel.config;
+
+import com.henry.cn.exportexcel.writer.ExcelExporter;
+import com.henry.cn.exportexcel.writer.ExcelWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * description: 导出引擎和异步导出线程池
+ */
+@Configuration
+@EnableConfigurationProperties(ExportProperties.class)
+public class ExportConfiguration {
+
+    /**
+     * description: 未配置的项沿用{@link ExcelWriter}默认引擎的目录，容器中有MeterRegistry时发布导出指标。
+     * 启动时预编译模板，容器关闭时停止监听模板目录。{@link ExcelWriter}的静态方法同样委托给该引擎
+     *
+     * @param properties
+     * @param meterRegistry
+     * @return com.henry.cn.exportexcel.writer.ExcelExporter
+     */
+    @Bean(destroyMethod = "close")
+    public ExcelExporter excelExporter(ExportProperties properties, ObjectProvider<MeterRegistry> meterRegistry) {
+        ExcelExporter.Builder builder = ExcelWriter.getExporter().toBuilder()
+                .compressTempFiles(properties.isCompressTempFiles())
+                .styleOverflowPolicy(properties.getStyleOverflowPolicy())
+                .watchTemplates(properties.isWatchTemplates())
+                .blueprintBinding(properties.isBlueprintBinding());
+        if (properties.getTemplateDir() != null) {
+            builder.templateDir(properties.getTemplateDir());
+        }
+        if (properties.getExportDir() != null) {
+            builder.exportDir(properties.getExportDir());
+        }
+        if (properties.getRowAccessWindowSize() != null) {
+            builder.rowAccessWindowSize(properties.getRowAccessWindowSize());
+        }
+        if (properties.getMaxCellStyles() != null) {
+            builder.maxCellStyles(properties.getMaxCellStyles());
+        }
+        if (properties.getImageCacheBytes() != null) {
+            builder.imageCacheBytes(properties.getImageCacheBytes());
+        }
+        ExportProperties.Metrics metrics = properties.getMetrics();
+        if (metrics.isEnabled()) {
+            meterRegistry.ifAvailable(registry -> builder.meterRegistry(registry)
+                    .allocationSampling(metrics.isAllocationSampling()));
+        }
+        ExcelExporter exporter = builder.build();
+        if (properties.isPrecompileTemplates()) {
+            exporter.precompileTemplates();
+        }
+        ExcelWriter.setExporter(exporter);
+        return exporter;
+    }
+
+    /**
+     * description: 有界队列的导出线程池，队列满且线程数达到上限后拒绝或由提交线程执行，不会无限堆积任务。
+     * 容器中有MeterRegistry时以excel.export.executor为名发布线程池的活跃线程数、队列长度等指标
+     *
+     * @param properties
+     * @param meterRegistry
+     * @return java.util.concurrent.ThreadPoolExecutor
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor excelExportExecutor(ExportProperties properties,
+                                                  ObjectProvider<MeterRegistry> meterRegistry) {
+        ExportProperties.Async async = properties.getAsync();
+        RejectedExecutionHandler rejectedHandler = async.isCallerRunsWhenFull()
+                ? new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(async.getCorePoolSize(),
+                Math.max(async.getCorePoolSize(), async.getMaxPoolSize()),
+                async.getKeepAliveSeconds(), TimeUnit.SECONDS, new ArrayBlockingQueue<>(async.getQueueCapacity()),
+                new ExportThreadFactory(), rejectedHandler);
+        if (properties.getMetrics().isEnabled()) {
+            meterRegistry.ifAvailable(registry -> new ExecutorServiceMetrics(executor, "excel.export.executor",
+                    Tags.empty()).bindTo(registry));
+        }
+        return executor;
+    }
+
+    private static class ExportThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "excel-export-" + threadNumber.getAndIncrement());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
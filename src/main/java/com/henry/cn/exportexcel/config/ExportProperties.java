@@ -0,0 +1,244 @@
+package com.henry.cn.exportexcel.config;
+
+import com.henry.cn.exportexcel.reader.StyleOverflowPolicy;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.io.File;
+
+/**
+ * description: application.properties中export开头的配置
+ */
+@ConfigurationProperties(prefix = "export")
+public class ExportProperties {
+
+    /**
+     * 模板所在目录，不设置时使用resources下的template
+     */
+    private File templateDir;
+    /**
+     * 按文件名导出时的目录，不设置时使用程序所在目录下的export_temp
+     */
+    private File exportDir;
+    /**
+     * 流式导出时内存中保留的行数，不设置时使用SXSSF的默认值
+     */
+    private Integer rowAccessWindowSize;
+    /**
+     * 流式导出时临时文件是否使用gzip压缩
+     */
+    private boolean compressTempFiles = true;
+    /**
+     * 单个workbook中样式数量的上限，不设置时使用文件格式的上限（xls为4000，xlsx为64000）
+     */
+    private Integer maxCellStyles;
+    /**
+     * 样式数量达到上限后的处理方式：FAIL导出失败，DEGRADE使用默认样式继续导出
+     */
+    private StyleOverflowPolicy styleOverflowPolicy = StyleOverflowPolicy.FAIL;
+    /**
+     * 跨导出缓存的图片文件总字节数，0表示不缓存，不设置时为16MB
+     */
+    private Long imageCacheBytes;
+    /**
+     * 启动时是否编译模板目录下的所有模板
+     */
+    private boolean precompileTemplates = true;
+    /**
+     * 是否监听模板目录，模板修改后自动重新编译，导出时不再检查模板文件
+     */
+    private boolean watchTemplates = true;
+    /**
+     * 是否把数据直接绑定到模板编译出的蓝图，无法编译的模板仍使用FreeMarker渲染
+     */
+    private boolean blueprintBinding = true;
+
+    private final Async async = new Async();
+
+    private final Metrics metrics = new Metrics();
+
+    public File getTemplateDir() {
+        return templateDir;
+    }
+
+    public void setTemplateDir(File templateDir) {
+        this.templateDir = templateDir;
+    }
+
+    public File getExportDir() {
+        return exportDir;
+    }
+
+    public void setExportDir(File exportDir) {
+        this.exportDir = exportDir;
+    }
+
+    public Integer getRowAccessWindowSize() {
+        return rowAccessWindowSize;
+    }
+
+    public void setRowAccessWindowSize(Integer rowAccessWindowSize) {
+        this.rowAccessWindowSize = rowAccessWindowSize;
+    }
+
+    public boolean isCompressTempFiles() {
+        return compressTempFiles;
+    }
+
+    public void setCompressTempFiles(boolean compressTempFiles) {
+        this.compressTempFiles = compressTempFiles;
+    }
+
+    public Integer getMaxCellStyles() {
+        return maxCellStyles;
+    }
+
+    public void setMaxCellStyles(Integer maxCellStyles) {
+        this.maxCellStyles = maxCellStyles;
+    }
+
+    public StyleOverflowPolicy getStyleOverflowPolicy() {
+        return styleOverflowPolicy;
+    }
+
+    public void setStyleOverflowPolicy(StyleOverflowPolicy styleOverflowPolicy) {
+        this.styleOverflowPolicy = styleOverflowPolicy;
+    }
+
+    public Long getImageCacheBytes() {
+        return imageCacheBytes;
+    }
+
+    public void setImageCacheBytes(Long imageCacheBytes) {
+        this.imageCacheBytes = imageCacheBytes;
+    }
+
+    public boolean isPrecompileTemplates() {
+        return precompileTemplates;
+    }
+
+    public void setPrecompileTemplates(boolean precompileTemplates) {
+        this.precompileTemplates = precompileTemplates;
+    }
+
+    public boolean isWatchTemplates() {
+        return watchTemplates;
+    }
+
+    public void setWatchTemplates(boolean watchTemplates) {
+        this.watchTemplates = watchTemplates;
+    }
+
+    public boolean isBlueprintBinding() {
+        return blueprintBinding;
+    }
+
+    public void setBlueprintBinding(boolean blueprintBinding) {
+        this.blueprintBinding = blueprintBinding;
+    }
+
+    public Async getAsync() {
+        return async;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * description: 异步导出线程池的配置
+     */
+    public static class Async {
+
+        /**
+         * 常驻的导出线程数
+         */
+        private int corePoolSize = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        /**
+         * 队列满后最多扩充到的线程数
+         */
+        private int maxPoolSize = Runtime.getRuntime().availableProcessors();
+        /**
+         * 等待执行的导出任务数上限
+         */
+        private int queueCapacity = 200;
+        /**
+         * 超出corePoolSize的线程空闲多久后回收
+         */
+        private int keepAliveSeconds = 60;
+        /**
+         * 队列和线程都已满时的处理方式：true由提交任务的线程自己执行（反压），false直接拒绝
+         */
+        private boolean callerRunsWhenFull = false;
+
+        public int getCorePoolSize() {
+            return corePoolSize;
+        }
+
+        public void setCorePoolSize(int corePoolSize) {
+            this.corePoolSize = corePoolSize;
+        }
+
+        public int getMaxPoolSize() {
+            return maxPoolSize;
+        }
+
+        public void setMaxPoolSize(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getKeepAliveSeconds() {
+            return keepAliveSeconds;
+        }
+
+        public void setKeepAliveSeconds(int keepAliveSeconds) {
+            this.keepAliveSeconds = keepAliveSeconds;
+        }
+
+        public boolean isCallerRunsWhenFull() {
+            return callerRunsWhenFull;
+        }
+
+        public void setCallerRunsWhenFull(boolean callerRunsWhenFull) {
+            this.callerRunsWhenFull = callerRunsWhenFull;
+        }
+    }
+
+    /**
+     * description: 导出指标的配置
+     */
+    public static class Metrics {
+
+        /**
+         * 是否向MeterRegistry发布导出耗时和数量
+         */
+        private boolean enabled = true;
+        /**
+         * 是否统计导出线程分配的字节数，开销很小但依赖HotSpot
+         */
+        private boolean allocationSampling = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isAllocationSampling() {
+            return allocationSampling;
+        }
+
+        public void setAllocationSampling(boolean allocationSampling) {
+            this.allocationSampling = allocationSampling;
+        }
+    }
+}
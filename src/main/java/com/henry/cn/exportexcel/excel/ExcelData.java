@@ -2,6 +2,8 @@ package com.henry.cn.exportexcel.excel;
 
 import org.apache.poi.ss.usermodel.RichTextString;
 
+import java.util.List;
+
 /**
  * @author 大脑补丁
  * @project freemarker-excel
@@ -15,8 +17,16 @@ public class ExcelData {
     private String xmlns;
 
     private RichTextString richTextString;
+    /**
+     * 与workbook无关的富文本片段，写入时再创建RichTextString
+     */
+    private List<ExcelRichTextRun> richTextRuns;
 
     private String text;
+    /**
+     * 直接绑定到Number单元格的值，不为空时写入方不再解析text
+     */
+    private Double numberValue;
 
     public String getType() {
         return type;
@@ -42,6 +52,14 @@ public class ExcelData {
         this.richTextString = richTextString;
     }
 
+    public List<ExcelRichTextRun> getRichTextRuns() {
+        return richTextRuns;
+    }
+
+    public void setRichTextRuns(List<ExcelRichTextRun> richTextRuns) {
+        this.richTextRuns = richTextRuns;
+    }
+
     public String getText() {
         return text;
     }
@@ -49,4 +67,12 @@ public class ExcelData {
     public void setText(String text) {
         this.text = text;
     }
+
+    public Double getNumberValue() {
+        return numberValue;
+    }
+
+    public void setNumberValue(Double numberValue) {
+        this.numberValue = numberValue;
+    }
 }
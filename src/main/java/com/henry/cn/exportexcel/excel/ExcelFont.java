@@ -0,0 +1,82 @@
+package com.henry.cn.exportexcel.excel;
+
+import java.util.Objects;
+
+/**
+ * @project freemarker-excel
+ * @description: 与workbook无关的字体描述，对应xml中的Font节点。
+ * 同一workbook中属性相同的字体只创建一次，作为缓存的key，解析完成后不应再修改
+ */
+public class ExcelFont {
+
+    private String fontName;
+
+    private Short size;
+
+    private boolean bold;
+
+    private Integer charSet;
+
+    private String color;
+
+    public String getFontName() {
+        return fontName;
+    }
+
+    public void setFontName(String fontName) {
+        this.fontName = fontName;
+    }
+
+    public Short getSize() {
+        return size;
+    }
+
+    public void setSize(Short size) {
+        this.size = size;
+    }
+
+    public boolean isBold() {
+        return bold;
+    }
+
+    public void setBold(boolean bold) {
+        this.bold = bold;
+    }
+
+    public Integer getCharSet() {
+        return charSet;
+    }
+
+    public void setCharSet(Integer charSet) {
+        this.charSet = charSet;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public void setColor(String color) {
+        this.color = color;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ExcelFont excelFont = (ExcelFont) o;
+        return bold == excelFont.bold
+                && Objects.equals(fontName, excelFont.fontName)
+                && Objects.equals(size, excelFont.size)
+                && Objects.equals(charSet, excelFont.charSet)
+                && Objects.equals(color, excelFont.color);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fontName, size, bold, charSet, color);
+    }
+}
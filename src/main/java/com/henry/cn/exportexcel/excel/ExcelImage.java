@@ -1,14 +1,18 @@
 package com.henry.cn.exportexcel.excel;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.poi.ss.usermodel.ClientAnchor;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * @author 大脑补丁
  * @project freemarker-excel
- * @description: 自定义解析excel的图片解析类
+ * @description: 自定义解析excel的图片解析类，图片可以来自文件，也可以来自内存中的字节、输入流或按需生成的{@link ImageSource}
  * @create 2020-04-14 16:54
  */
 public class ExcelImage implements Serializable {
@@ -18,6 +22,11 @@ public class ExcelImage implements Serializable {
      */
     private File img;
 
+    /**
+     * 图片内容，img为空时使用，写入图片时才读取
+     */
+    private transient ImageSource source;
+
     /**
      * sheet索引
      */
@@ -41,6 +50,101 @@ public class ExcelImage implements Serializable {
         this.anchor = anchor;
     }
 
+    /**
+     * Excel图片参数对象，图片内容来自内存中的字节
+     *
+     * @param data
+     * @param sheetIndex
+     * @param anchor
+     */
+    public ExcelImage(byte[] data, Integer sheetIndex, ClientAnchor anchor) {
+        this(() -> data, sheetIndex, anchor);
+    }
+
+    /**
+     * Excel图片参数对象，读取buffer中position到limit之间的内容，不改变buffer的position
+     *
+     * @param buffer
+     * @param sheetIndex
+     * @param anchor
+     */
+    public ExcelImage(ByteBuffer buffer, Integer sheetIndex, ClientAnchor anchor) {
+        this(() -> toByteArray(buffer), sheetIndex, anchor);
+    }
+
+    /**
+     * Excel图片参数对象，第一次写入图片时读取输入流的全部内容并关闭输入流，之后重复使用读取到的内容
+     *
+     * @param inputStream
+     * @param sheetIndex
+     * @param anchor
+     */
+    public ExcelImage(InputStream inputStream, Integer sheetIndex, ClientAnchor anchor) {
+        this(new InputStreamSource(inputStream), sheetIndex, anchor);
+    }
+
+    /**
+     * Excel图片参数对象，写入图片时才调用source获取内容
+     *
+     * @param source
+     * @param sheetIndex
+     * @param anchor
+     */
+    public ExcelImage(ImageSource source, Integer sheetIndex, ClientAnchor anchor) {
+        this.source = source;
+        this.sheetIndex = sheetIndex;
+        this.anchor = anchor;
+    }
+
+    /**
+     * description: 位置不同的同一张图片，与当前对象共用图片文件或内容来源，
+     * 例如多格式导出时分别为xls和xlsx指定anchor，图片内容只读取一次
+     *
+     * @param anchor
+     * @return com.henry.cn.exportexcel.excel.ExcelImage
+     */
+    public ExcelImage withAnchor(ClientAnchor anchor) {
+        ExcelImage excelImage = new ExcelImage(source, sheetIndex, anchor);
+        excelImage.img = img;
+        return excelImage;
+    }
+
+    private static byte[] toByteArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        ByteBuffer duplicate = buffer.duplicate();
+        byte[] bytes = new byte[duplicate.remaining()];
+        duplicate.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * description: 输入流只能读取一次，读取后保留内容，同一张图片写入多个workbook时共用
+     */
+    private static final class InputStreamSource implements ImageSource {
+
+        private InputStream inputStream;
+
+        private byte[] bytes;
+
+        private InputStreamSource(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public synchronized byte[] getBytes() throws IOException {
+            if (bytes == null) {
+                try (InputStream in = inputStream) {
+                    bytes = IOUtils.toByteArray(in);
+                }
+                inputStream = null;
+            }
+            return bytes;
+        }
+    }
+
     public File getImg() {
         return img;
     }
@@ -49,6 +153,14 @@ public class ExcelImage implements Serializable {
         this.img = img;
     }
 
+    public ImageSource getSource() {
+        return source;
+    }
+
+    public void setSource(ImageSource source) {
+        this.source = source;
+    }
+
     public Integer getSheetIndex() {
         return sheetIndex;
     }
@@ -0,0 +1,33 @@
+package com.henry.cn.exportexcel.excel;
+
+/**
+ * @project freemarker-excel
+ * @description: 富文本中使用同一字体的一段文字
+ */
+public class ExcelRichTextRun {
+
+    private String text;
+
+    private ExcelFont font;
+
+    public ExcelRichTextRun(String text, ExcelFont font) {
+        this.text = text;
+        this.font = font;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public ExcelFont getFont() {
+        return font;
+    }
+
+    public void setFont(ExcelFont font) {
+        this.font = font;
+    }
+}
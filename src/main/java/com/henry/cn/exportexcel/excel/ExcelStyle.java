@@ -0,0 +1,165 @@
+package com.henry.cn.exportexcel.excel;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+
+import java.util.Objects;
+
+/**
+ * @project freemarker-excel
+ * @description: 与workbook无关的样式描述，对应xml中的Style节点，ss:Parent已在解析时合并，
+ * 同一个模板的样式只需解析一次，每个workbook再根据描述创建CellStyle。
+ * equals和hashCode不比较id，外观相同的样式在同一workbook中共用一个CellStyle
+ */
+public class ExcelStyle {
+
+    private String id;
+
+    private String numberFormat;
+
+    private HorizontalAlignment alignment;
+
+    private VerticalAlignment verticalAlignment;
+
+    private boolean wrapText;
+
+    private BorderStyle borderTop;
+
+    private BorderStyle borderBottom;
+
+    private BorderStyle borderLeft;
+
+    private BorderStyle borderRight;
+
+    private ExcelFont font;
+
+    private String interiorColor;
+
+    private FillPatternType fillPattern;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getNumberFormat() {
+        return numberFormat;
+    }
+
+    public void setNumberFormat(String numberFormat) {
+        this.numberFormat = numberFormat;
+    }
+
+    public HorizontalAlignment getAlignment() {
+        return alignment;
+    }
+
+    public void setAlignment(HorizontalAlignment alignment) {
+        this.alignment = alignment;
+    }
+
+    public VerticalAlignment getVerticalAlignment() {
+        return verticalAlignment;
+    }
+
+    public void setVerticalAlignment(VerticalAlignment verticalAlignment) {
+        this.verticalAlignment = verticalAlignment;
+    }
+
+    public boolean isWrapText() {
+        return wrapText;
+    }
+
+    public void setWrapText(boolean wrapText) {
+        this.wrapText = wrapText;
+    }
+
+    public BorderStyle getBorderTop() {
+        return borderTop;
+    }
+
+    public void setBorderTop(BorderStyle borderTop) {
+        this.borderTop = borderTop;
+    }
+
+    public BorderStyle getBorderBottom() {
+        return borderBottom;
+    }
+
+    public void setBorderBottom(BorderStyle borderBottom) {
+        this.borderBottom = borderBottom;
+    }
+
+    public BorderStyle getBorderLeft() {
+        return borderLeft;
+    }
+
+    public void setBorderLeft(BorderStyle borderLeft) {
+        this.borderLeft = borderLeft;
+    }
+
+    public BorderStyle getBorderRight() {
+        return borderRight;
+    }
+
+    public void setBorderRight(BorderStyle borderRight) {
+        this.borderRight = borderRight;
+    }
+
+    public ExcelFont getFont() {
+        return font;
+    }
+
+    public void setFont(ExcelFont font) {
+        this.font = font;
+    }
+
+    public String getInteriorColor() {
+        return interiorColor;
+    }
+
+    public void setInteriorColor(String interiorColor) {
+        this.interiorColor = interiorColor;
+    }
+
+    public FillPatternType getFillPattern() {
+        return fillPattern;
+    }
+
+    public void setFillPattern(FillPatternType fillPattern) {
+        this.fillPattern = fillPattern;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ExcelStyle that = (ExcelStyle) o;
+        return wrapText == that.wrapText
+                && Objects.equals(numberFormat, that.numberFormat)
+                && alignment == that.alignment
+                && verticalAlignment == that.verticalAlignment
+                && borderTop == that.borderTop
+                && borderBottom == that.borderBottom
+                && borderLeft == that.borderLeft
+                && borderRight == that.borderRight
+                && Objects.equals(font, that.font)
+                && Objects.equals(interiorColor, that.interiorColor)
+                && fillPattern == that.fillPattern;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(numberFormat, alignment, verticalAlignment, wrapText, borderTop, borderBottom,
+                borderLeft, borderRight, font, interiorColor, fillPattern);
+    }
+}
@@ -0,0 +1,18 @@
+package com.henry.cn.exportexcel.excel;
+
+import java.io.IOException;
+
+/**
+ * @project freemarker-excel
+ * @description: 图片内容的来源，在图片写入workbook时才读取，可以用于按需生成的图表、二维码等
+ */
+@FunctionalInterface
+public interface ImageSource {
+
+    /**
+     * description: 读取图片的完整内容，格式由内容的文件头判断
+     *
+     * @return byte[]
+     */
+    byte[] getBytes() throws IOException;
+}
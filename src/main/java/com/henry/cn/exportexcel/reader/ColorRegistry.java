@@ -0,0 +1,105 @@
+package com.henry.cn.exportexcel.reader;
+
+import org.apache.poi.hssf.record.PaletteRecord;
+import org.apache.poi.hssf.usermodel.HSSFPalette;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.Color;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * description: 单个workbook中模板颜色到POI颜色的登记表，同一个颜色字符串只解析一次。
+ * HSSF的调色板只有56个位置：调色板中已有的颜色直接使用，其他颜色从最后一个位置向前占用未被使用的位置，
+ * 不同颜色不会互相覆盖。POI创建样式时边框颜色默认为黑色（位置8），黑色和白色的位置始终保留；
+ * 调色板用完后使用最接近的已有颜色
+ */
+class ColorRegistry {
+    private static final Logger log = LoggerFactory.getLogger(ColorRegistry.class);
+
+    private static final int FIRST_INDEX = PaletteRecord.FIRST_COLOR_INDEX;
+
+    private static final int LAST_INDEX = PaletteRecord.FIRST_COLOR_INDEX + PaletteRecord.STANDARD_PALETTE_SIZE - 1;
+
+    /**
+     * 模板中的颜色字符串 -> 颜色
+     */
+    private final Map<String, Color> colorMap = new HashMap<>();
+    /**
+     * rgb -> 颜色，大小写或写法不同的同一个颜色只登记一次
+     */
+    private final Map<Integer, Color> rgbMap = new HashMap<>();
+
+    private final HSSFPalette palette;
+    /**
+     * 调色板中已经返回过的位置，这些位置不能再被覆盖
+     */
+    private final boolean[] usedIndexes = new boolean[LAST_INDEX + 1];
+
+    private int nextIndex = LAST_INDEX;
+
+    private boolean paletteFullLogged;
+
+    ColorRegistry(Workbook workbook) {
+        this.palette = workbook instanceof HSSFWorkbook ? ((HSSFWorkbook) workbook).getCustomPalette() : null;
+        usedIndexes[HSSFColor.HSSFColorPredefined.BLACK.getIndex()] = true;
+        usedIndexes[HSSFColor.HSSFColorPredefined.WHITE.getIndex()] = true;
+    }
+
+    /**
+     * description: 获取#RRGGBB格式的颜色
+     *
+     * @param color
+     * @return org.apache.poi.ss.usermodel.Color
+     */
+    Color getColor(String color) {
+        Color cellColor = colorMap.get(color);
+        if (cellColor == null) {
+            cellColor = rgbMap.computeIfAbsent(Integer.decode(color) & 0xFFFFFF, this::createColor);
+            colorMap.put(color, cellColor);
+        }
+        return cellColor;
+    }
+
+    /**
+     * description: 已登记的不同颜色的数量
+     *
+     * @return int
+     */
+    int size() {
+        return rgbMap.size();
+    }
+
+    private Color createColor(int rgb) {
+        byte r = (byte) (rgb >> 16);
+        byte g = (byte) (rgb >> 8);
+        byte b = (byte) rgb;
+        if (palette == null) {
+            return new XSSFColor(new byte[]{r, g, b}, null);
+        }
+        HSSFColor existing = palette.findColor(r, g, b);
+        if (existing != null && existing.getIndex() >= FIRST_INDEX && existing.getIndex() <= LAST_INDEX) {
+            usedIndexes[existing.getIndex()] = true;
+            return existing;
+        }
+        while (nextIndex >= FIRST_INDEX && usedIndexes[nextIndex]) {
+            nextIndex--;
+        }
+        if (nextIndex < FIRST_INDEX) {
+            if (!paletteFullLogged) {
+                log.warn("xls调色板的{}个位置已用完，之后的颜色使用调色板中最接近的颜色", PaletteRecord.STANDARD_PALETTE_SIZE);
+                paletteFullLogged = true;
+            }
+            return palette.findSimilarColor(r, g, b);
+        }
+        short index = (short) nextIndex;
+        usedIndexes[index] = true;
+        palette.setColorAtIndex(index, r, g, b);
+        return palette.getColor(index);
+    }
+}
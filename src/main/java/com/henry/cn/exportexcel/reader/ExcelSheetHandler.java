@@ -0,0 +1,45 @@
+package com.henry.cn.exportexcel.reader;
+
+import com.henry.cn.exportexcel.excel.ExcelRow;
+import com.henry.cn.exportexcel.excel.ExcelStyle;
+import com.henry.cn.exportexcel.excel.ExcelWorksheet;
+
+import java.util.Map;
+
+/**
+ * description: 逐行接收解析结果的回调，解析器每读完一行就交给处理器，不在内存中保留整个sheet
+ */
+public interface ExcelSheetHandler {
+
+    /**
+     * description: 读取到Styles节点，在所有worksheet之前回调，样式描述与workbook无关，可能来自缓存
+     *
+     * @param styles
+     * @return void
+     */
+    void styles(Map<String, ExcelStyle> styles);
+
+    /**
+     * description: worksheet开始，此时table的属性和列已经读取，行为空
+     *
+     * @param worksheet
+     * @return void
+     */
+    void startSheet(ExcelWorksheet worksheet);
+
+    /**
+     * description: 读取到一行
+     *
+     * @param excelRow
+     * @return void
+     */
+    void row(ExcelRow excelRow);
+
+    /**
+     * description: worksheet结束
+     *
+     * @param worksheet
+     * @return void
+     */
+    void endSheet(ExcelWorksheet worksheet);
+}
@@ -4,7 +4,6 @@ import com.henry.cn.exportexcel.excel.*;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFPalette;
 import org.apache.poi.hssf.usermodel.HSSFRichTextString;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.util.HSSFColor;
@@ -31,8 +30,6 @@ public class ExcelXmlReader {
 
     private static final Logger log = LoggerFactory.getLogger(ExcelXmlReader.class);
 
-    private static Map<String, Color> customerColorMap = new HashMap<>();
-
     /**
      * description: 读取xml格式的样式
      *
@@ -42,76 +39,173 @@ public class ExcelXmlReader {
      * @author Hlingoes 2021/5/23
      */
     public static Map<String, CellStyle> readCellStyle(Workbook wb, Document document) throws DocumentException {
-        // 创建一个LinkedHashMap用于存放style，按照id查找
-        Map<String, CellStyle> styleMap = new LinkedHashMap<String, CellStyle>();
         // 获取根节点
         Element root = document.getRootElement();
         // 获取根节点下的Styles节点
-        Element styles = root.element("Styles");
+        return createCellStyles(new WorkbookContext(wb), readStyles(root.element("Styles")));
+    }
+
+    /**
+     * description: 读取Styles节点下的样式
+     *
+     * @param context
+     * @param styles
+     * @return java.util.Map<java.lang.String, org.apache.poi.ss.usermodel.CellStyle>
+     */
+    public static Map<String, CellStyle> readCellStyle(WorkbookContext context, Element styles) {
+        return createCellStyles(context, readStyles(styles));
+    }
+
+    /**
+     * description: 将Styles节点解析为与workbook无关的样式描述，ss:Parent在此时合并
+     *
+     * @param styles
+     * @return java.util.Map<java.lang.String, com.henry.cn.exportexcel.excel.ExcelStyle>
+     */
+    public static Map<String, ExcelStyle> readStyles(Element styles) {
+        // 创建一个LinkedHashMap用于存放style，按照id查找
+        Map<String, ExcelStyle> styleMap = new LinkedHashMap<String, ExcelStyle>();
         // 获取Styles下的Style节点
         List styleList = styles.elements("Style");
         Iterator<?> it = styleList.iterator();
         while (it.hasNext()) {
-            CellStyle cellStyle = wb.createCellStyle();
+            ExcelStyle excelStyle = new ExcelStyle();
             Element e = (Element) it.next();
             String id = e.attributeValue("ID");
             String pid = e.attributeValue("Parent");
-            CellStyle parentStyle = styleMap.get(pid);
-            extendParentStyle(wb, cellStyle, parentStyle);
+            excelStyle.setId(id);
+            extendParentStyle(excelStyle, styleMap.get(pid));
             // 获取Style下的NumberFormat节点
-            setNumberFormat(wb, cellStyle, e.element("NumberFormat"));
+            setNumberFormat(excelStyle, e.element("NumberFormat"));
             // 获取Style下的Alignment节点
-            setAlignment(cellStyle, e.element("Alignment"));
+            setAlignment(excelStyle, e.element("Alignment"));
             // 获取Style下的Borders节点
-            setBorders(wb, cellStyle, e.element("Borders"));
+            setBorders(excelStyle, e.element("Borders"));
             // 设置font的相关属性，并且设置style的font属性
-            setFont(wb, cellStyle, e.element("Font"));
+            setFont(excelStyle, e.element("Font"));
             // 设置Interior的相关属性，并且设置style的interior属性
-            setInterior(wb, cellStyle, e.element("Interior"));
-            styleMap.put(id, cellStyle);
+            setInterior(excelStyle, e.element("Interior"));
+            styleMap.put(id, excelStyle);
         }
         return styleMap;
     }
 
-    private static void extendParentStyle(Workbook wb, CellStyle cellStyle, CellStyle parentStyle) {
-        if (ObjectUtils.isEmpty(parentStyle)) {
-            return;
+    /**
+     * description: 根据样式描述在workbook中创建CellStyle，外观相同的样式id对应同一个CellStyle
+     *
+     * @param context
+     * @param styles
+     * @return java.util.Map<java.lang.String, org.apache.poi.ss.usermodel.CellStyle>
+     */
+    public static Map<String, CellStyle> createCellStyles(WorkbookContext context, Map<String, ExcelStyle> styles) {
+        Map<String, CellStyle> styleMap = new LinkedHashMap<String, CellStyle>(styles.size() * 2);
+        for (Map.Entry<String, ExcelStyle> entry : styles.entrySet()) {
+            styleMap.put(entry.getKey(), createCellStyle(context, entry.getValue()));
+        }
+        return styleMap;
+    }
+
+    /**
+     * description: 获取样式描述对应的CellStyle，同一workbook中外观相同的样式只创建一次
+     *
+     * @param context
+     * @param excelStyle
+     * @return org.apache.poi.ss.usermodel.CellStyle
+     */
+    static CellStyle createCellStyle(WorkbookContext context, ExcelStyle excelStyle) {
+        return context.getCellStyle(excelStyle, key -> newCellStyle(context, key));
+    }
+
+    private static CellStyle newCellStyle(WorkbookContext context, ExcelStyle excelStyle) {
+        Workbook wb = context.getWorkbook();
+        CellStyle cellStyle = wb.createCellStyle();
+        if (excelStyle.getNumberFormat() != null) {
+            cellStyle.setDataFormat(context.getDataFormat(excelStyle.getNumberFormat()));
         }
-        if (ObjectUtils.isNotEmpty(parentStyle.getDataFormat())) {
-            cellStyle.setDataFormat(parentStyle.getDataFormat());
+        if (excelStyle.getAlignment() != null) {
+            cellStyle.setAlignment(excelStyle.getAlignment());
         }
-        if (ObjectUtils.isNotEmpty(parentStyle.getAlignmentEnum())) {
-            cellStyle.setAlignment(parentStyle.getAlignmentEnum());
+        if (excelStyle.getVerticalAlignment() != null) {
+            cellStyle.setVerticalAlignment(excelStyle.getVerticalAlignment());
         }
-        if (ObjectUtils.isNotEmpty(parentStyle.getVerticalAlignmentEnum())) {
-            cellStyle.setVerticalAlignment(parentStyle.getVerticalAlignmentEnum());
+        cellStyle.setWrapText(excelStyle.isWrapText());
+        if (excelStyle.getBorderBottom() != null) {
+            cellStyle.setBorderBottom(excelStyle.getBorderBottom());
         }
-        cellStyle.setWrapText(parentStyle.getWrapText());
-        cellStyle.setBorderBottom(parentStyle.getBorderBottomEnum());
-        cellStyle.setBorderLeft(parentStyle.getBorderLeftEnum());
-        cellStyle.setBorderRight(parentStyle.getBorderRightEnum());
-        cellStyle.setBorderTop(parentStyle.getBorderTopEnum());
-        if (ObjectUtils.isNotEmpty(parentStyle.getFontIndex())) {
-            cellStyle.setFont(wb.getFontAt(parentStyle.getFontIndex()));
+        if (excelStyle.getBorderLeft() != null) {
+            cellStyle.setBorderLeft(excelStyle.getBorderLeft());
         }
-        if (ObjectUtils.isNotEmpty(parentStyle.getFillForegroundColor())) {
-            extendColor(cellStyle, parentStyle);
+        if (excelStyle.getBorderRight() != null) {
+            cellStyle.setBorderRight(excelStyle.getBorderRight());
         }
-        if (ObjectUtils.isNotEmpty(parentStyle.getFillPatternEnum())) {
-            cellStyle.setFillPattern(parentStyle.getFillPatternEnum());
+        if (excelStyle.getBorderTop() != null) {
+            cellStyle.setBorderTop(excelStyle.getBorderTop());
         }
+        if (excelStyle.getFont() != null) {
+            cellStyle.setFont(createFont(context, excelStyle.getFont()));
+        }
+        if (excelStyle.getInteriorColor() != null) {
+            setColorStyle(context, cellStyle, excelStyle.getInteriorColor());
+        }
+        if (excelStyle.getFillPattern() != null) {
+            cellStyle.setFillPattern(excelStyle.getFillPattern());
+        }
+        return cellStyle;
     }
 
-    private static void extendColor(CellStyle cellStyle, CellStyle parentStyle) {
-        if (cellStyle instanceof XSSFCellStyle) {
-            XSSFColor color = ((XSSFCellStyle) parentStyle).getFillForegroundColorColor();
-            ((XSSFCellStyle) cellStyle).setFillForegroundColor(color);
-            ((XSSFCellStyle) cellStyle).setFillBackgroundColor(color);
-        } else {
-            short colorIndex = parentStyle.getFillForegroundColor();
-            cellStyle.setFillForegroundColor(colorIndex);
-            cellStyle.setFillBackgroundColor(colorIndex);
+    /**
+     * description: 获取字体描述对应的Font，同一workbook中属性相同的字体只创建一次
+     *
+     * @param context
+     * @param excelFont
+     * @return org.apache.poi.ss.usermodel.Font
+     */
+    static Font createFont(WorkbookContext context, ExcelFont excelFont) {
+        return context.getFont(excelFont, key -> newFont(context, key));
+    }
+
+    private static Font newFont(WorkbookContext context, ExcelFont excelFont) {
+        Font font = context.getWorkbook().createFont();
+        if (excelFont.getFontName() != null) {
+            font.setFontName(excelFont.getFontName());
+        }
+        if (excelFont.isBold()) {
+            font.setBold(true);
+        }
+        if (excelFont.getSize() != null) {
+            font.setFontHeightInPoints(excelFont.getSize());
+        }
+        if (excelFont.getCharSet() != null) {
+            font.setCharSet(excelFont.getCharSet());
+        }
+        if (excelFont.getColor() != null) {
+            setColorStyle(context, font, excelFont.getColor());
+        }
+        return font;
+    }
+
+    /**
+     * description: 子样式先完整继承父样式，再由自身的节点覆盖
+     *
+     * @param excelStyle
+     * @param parentStyle
+     * @return void
+     */
+    private static void extendParentStyle(ExcelStyle excelStyle, ExcelStyle parentStyle) {
+        if (ObjectUtils.isEmpty(parentStyle)) {
+            return;
         }
+        excelStyle.setNumberFormat(parentStyle.getNumberFormat());
+        excelStyle.setAlignment(parentStyle.getAlignment());
+        excelStyle.setVerticalAlignment(parentStyle.getVerticalAlignment());
+        excelStyle.setWrapText(parentStyle.isWrapText());
+        excelStyle.setBorderBottom(parentStyle.getBorderBottom());
+        excelStyle.setBorderLeft(parentStyle.getBorderLeft());
+        excelStyle.setBorderRight(parentStyle.getBorderRight());
+        excelStyle.setBorderTop(parentStyle.getBorderTop());
+        excelStyle.setFont(parentStyle.getFont());
+        excelStyle.setInteriorColor(parentStyle.getInteriorColor());
+        excelStyle.setFillPattern(parentStyle.getFillPattern());
     }
 
     /**
@@ -122,7 +216,7 @@ public class ExcelXmlReader {
      * @return void
      * @author Hlingoes 2021/5/23
      */
-    private static void setAlignment(CellStyle cellStyle, Element element) {
+    private static void setAlignment(ExcelStyle cellStyle, Element element) {
         if (null == element) {
             return;
         }
@@ -162,13 +256,12 @@ public class ExcelXmlReader {
     /**
      * description: 设置border样式
      *
-     * @param wb
      * @param cellStyle
      * @param element
      * @return void
      * @author Hlingoes 2021/5/23
      */
-    private static void setBorders(Workbook wb, CellStyle cellStyle, Element element) {
+    private static void setBorders(ExcelStyle cellStyle, Element element) {
         if (null == element) {
             return;
         }
@@ -251,34 +344,16 @@ public class ExcelXmlReader {
     /**
      * description: 设置字体font
      *
-     * @param wb
      * @param cellStyle
      * @param element
      * @return void
      * @author Hlingoes 2021/5/23
      */
-    private static void setFont(Workbook wb, CellStyle cellStyle, Element element) {
+    private static void setFont(ExcelStyle cellStyle, Element element) {
         if (null == element) {
             return;
         }
-        Font font = wb.createFont();
-        setFont(font, element);
-        String color = element.attributeValue("Color");
-        if (StringUtils.isNotEmpty(color)) {
-            setColorStyle(wb, font, color);
-        }
-        cellStyle.setFont(font);
-    }
-
-    /**
-     * description: 设置字体font
-     *
-     * @param font
-     * @param element
-     * @return void
-     * @author Hlingoes 2021/5/23
-     */
-    private static Font setFont(Font font, Element element) {
+        ExcelFont font = new ExcelFont();
         String fontName = element.attributeValue("FontName");
         if (StringUtils.isNotEmpty(fontName)) {
             font.setFontName(fontName);
@@ -289,32 +364,34 @@ public class ExcelXmlReader {
         }
         String size = element.attributeValue("Size");
         if (StringUtils.isNotEmpty(size)) {
-            short fontSize = Short.valueOf(size);
-            font.setFontHeightInPoints(fontSize);
+            font.setSize(Short.valueOf(size));
         }
         String charset = element.attributeValue("CharSet");
         if (StringUtils.isNotEmpty(charset)) {
             font.setCharSet(Integer.valueOf(charset));
         }
-        return font;
+        String color = element.attributeValue("Color");
+        if (StringUtils.isNotEmpty(color)) {
+            font.setColor(color);
+        }
+        cellStyle.setFont(font);
     }
 
     /**
      * description: 设置interior
      *
-     * @param wb
      * @param cellStyle
      * @param element
      * @return void
      * @author Hlingoes 2021/5/23
      */
-    private static void setInterior(Workbook wb, CellStyle cellStyle, Element element) {
+    private static void setInterior(ExcelStyle cellStyle, Element element) {
         if (null == element) {
             return;
         }
         String color = element.attributeValue("Color");
         if (StringUtils.isNotEmpty(color)) {
-            setColorStyle(wb, cellStyle, color);
+            cellStyle.setInteriorColor(color);
         }
         String pattern = element.attributeValue("Pattern");
         if (StringUtils.isNotEmpty(pattern)) {
@@ -323,8 +400,8 @@ public class ExcelXmlReader {
         }
     }
 
-    private static void setColorStyle(Workbook wb, CellStyle cellStyle, String color) {
-        Color cellColor = getColor(wb, color);
+    private static void setColorStyle(WorkbookContext context, CellStyle cellStyle, String color) {
+        Color cellColor = context.getColor(color);
         setColorStyle(cellStyle, cellColor);
     }
 
@@ -339,8 +416,8 @@ public class ExcelXmlReader {
         }
     }
 
-    private static void setColorStyle(Workbook wb, Font font, String color) {
-        Color cellColor = getColor(wb, color);
+    private static void setColorStyle(WorkbookContext context, Font font, String color) {
+        Color cellColor = context.getColor(color);
         if (font instanceof XSSFFont) {
             ((XSSFFont) font).setColor((XSSFColor) cellColor);
         } else {
@@ -412,47 +489,21 @@ public class ExcelXmlReader {
     /**
      * description: 设置HSSFCell的数字格式化
      *
-     * @param wb
      * @param cellStyle
      * @param numberFormat
      * @return void
      * @author Hlingoes 2021/5/23
      */
-    private static void setNumberFormat(Workbook wb, CellStyle cellStyle, Element numberFormat) {
+    private static void setNumberFormat(ExcelStyle cellStyle, Element numberFormat) {
         if (null == numberFormat) {
             return;
         }
         String format = numberFormat.attributeValue("Format");
         if (StringUtils.isNotEmpty(format)) {
-            DataFormat dataFormat = wb.createDataFormat();
-            if ("Standard".equals(format)) {
-                cellStyle.setDataFormat(dataFormat.getFormat("#,##0.00"));
-            } else {
-                cellStyle.setDataFormat(dataFormat.getFormat("0%"));
-            }
+            cellStyle.setNumberFormat(format);
         }
     }
 
-    private static Color getColor(Workbook wb, String color) {
-        java.awt.Color awtColor = java.awt.Color.decode(color);
-        if (wb instanceof HSSFWorkbook) {
-            if (customerColorMap.containsKey(color)) {
-                return customerColorMap.get(color);
-            }
-            HSSFPalette customPalette = ((HSSFWorkbook) wb).getCustomPalette();
-            byte r = (byte) awtColor.getRed();
-            byte g = (byte) awtColor.getGreen();
-            byte b = (byte) awtColor.getBlue();
-            // index 在[8, 64]之间，可先取hash，再取绝对值，然后对50取模，再加8
-            short colorIndex = (short) (Math.toIntExact(Math.abs(color.hashCode()) % 50) + 8);
-            customPalette.setColorAtIndex(colorIndex, r, g, b);
-            Color cellColor = customPalette.getColor(colorIndex);
-            customerColorMap.put(color, cellColor);
-            return cellColor;
-        }
-        return new XSSFColor(awtColor);
-    }
-
     /**
      * description: 读取sheet数据
      *
@@ -461,6 +512,7 @@ public class ExcelXmlReader {
      * @author Hlingoes 2021/5/23
      */
     public static List<ExcelWorksheet> readWorksheet(Workbook wb, Document document) {
+        WorkbookContext context = new WorkbookContext(wb);
         List<ExcelWorksheet> excelWorksheets = new ArrayList<>();
         Element root = document.getRootElement();
         // 读取根节点下的Worksheet节点
@@ -472,7 +524,7 @@ public class ExcelXmlReader {
             ExcelWorksheet worksheet = new ExcelWorksheet();
             String name = sheet.attributeValue("Name");
             worksheet.setName(name);
-            ExcelTable excelTable = readTable(wb, sheet);
+            ExcelTable excelTable = readTable(context, sheet);
             worksheet.setExcelTable(excelTable);
             excelWorksheets.add(worksheet);
         }
@@ -486,11 +538,26 @@ public class ExcelXmlReader {
      * @return com.henry.cn.exportexcel.excel.ExcelTable
      * @author Hlingoes 2021/5/23
      */
-    private static ExcelTable readTable(Workbook wb, Element sheet) {
+    private static ExcelTable readTable(WorkbookContext context, Element sheet) {
         Element tableElement = sheet.element("Table");
         if (tableElement == null) {
             return null;
         }
+        ExcelTable excelTable = readTable(tableElement, tableElement.elements("Column"));
+        // 读取行
+        List<ExcelRow> excelRows = readRows(context, tableElement);
+        excelTable.setExcelRows(excelRows);
+        return excelTable;
+    }
+
+    /**
+     * description: 读取table的属性和列，不读取行
+     *
+     * @param tableElement
+     * @param columnElements
+     * @return com.henry.cn.exportexcel.excel.ExcelTable
+     */
+    static ExcelTable readTable(Element tableElement, List<Element> columnElements) {
         ExcelTable excelTable = new ExcelTable();
         String expandedColumnCount = tableElement.attributeValue("ExpandedColumnCount");
         if (StringUtils.isNotEmpty(expandedColumnCount)) {
@@ -517,15 +584,12 @@ public class ExcelXmlReader {
             excelTable.setDefaultRowHeight(Double.valueOf(defaultRowHeight).intValue());
         }
         // 读取列
-        List<ExcelColumn> excelColumns = readColumns(tableElement, expandedColumnCount, defaultColumnWidth);
+        List<ExcelColumn> excelColumns = readColumns(columnElements, expandedColumnCount, defaultColumnWidth);
         excelTable.setExcelColumns(excelColumns);
-        // 读取行
-        List<ExcelRow> excelRows = readRows(wb, tableElement);
-        excelTable.setExcelRows(excelRows);
         return excelTable;
     }
 
-    private static List<ExcelRow> readRows(Workbook wb, Element tableElement) {
+    private static List<ExcelRow> readRows(WorkbookContext context, Element tableElement) {
         List<Element> rowElements = tableElement.elements("Row");
         if (CollectionUtils.isEmpty(rowElements)) {
             return null;
@@ -541,14 +605,14 @@ public class ExcelXmlReader {
             if (StringUtils.isNotEmpty(index)) {
                 excelRow.setIndex(Integer.valueOf(index));
             }
-            List<ExcelCell> excelCells = readCells(wb, rowElement);
+            List<ExcelCell> excelCells = readCells(context, rowElement);
             excelRow.setExcelCells(excelCells);
             excelRows.add(excelRow);
         }
         return excelRows;
     }
 
-    private static List<ExcelCell> readCells(Workbook wb, Element rowElement) {
+    private static List<ExcelCell> readCells(WorkbookContext context, Element rowElement) {
         List<Element> cellElements = rowElement.elements("Cell");
         if (CollectionUtils.isEmpty(cellElements)) {
             return null;
@@ -576,13 +640,13 @@ public class ExcelXmlReader {
             readComment(excelCell, commentElement);
 
             Element dataElement = cellElement.element("Data");
-            readData(wb, excelCell, dataElement);
+            readData(context, excelCell, dataElement);
             excelCells.add(excelCell);
         }
         return excelCells;
     }
 
-    private static void readData(Workbook wb, ExcelCell excelCell, Element dataElement) {
+    private static void readData(WorkbookContext context, ExcelCell excelCell, Element dataElement) {
         if (dataElement == null) {
             return;
         }
@@ -608,45 +672,52 @@ public class ExcelXmlReader {
         }
 
         if (CollectionUtils.isNotEmpty(fontElements)) {
-            StringBuilder richStringBuilder = new StringBuilder();
-            for (Element fontElement : fontElements) {
-                richStringBuilder.append(fontElement.getText());
-            }
-            RichTextString richString = null;
-            if (wb instanceof HSSFWorkbook) {
-                richString = new HSSFRichTextString(richStringBuilder.toString());
-            } else {
-                richString = new XSSFRichTextString(richStringBuilder.toString());
-            }
-            int index = 0;
+            List<ExcelRichTextRun> runs = new ArrayList<>(fontElements.size());
             for (Element fontElement : fontElements) {
-                Font font = wb.createFont();
-                String face = fontElement.attributeValue("Face");
-                if (face != null) {
-                    font.setFontName(face);
-                }
+                ExcelFont font = new ExcelFont();
+                font.setFontName(fontElement.attributeValue("Face"));
                 String charSet = fontElement.attributeValue("CharSet");
                 if (charSet != null) {
                     font.setCharSet(Integer.valueOf(charSet));
                 }
-                String color = fontElement.attributeValue("Color");
-                if (color != null) {
-                    setColorStyle(wb, font, color);
-                }
-                if (bold != null) {
-                    font.setBold(true);
-                }
-                String text = fontElement.getText();
-                int start = index;
-                int end = index + text.length();
-                richString.applyFont(start, end, font);
-                index = end;
+                font.setColor(fontElement.attributeValue("Color"));
+                font.setBold(bold != null);
+                runs.add(new ExcelRichTextRun(fontElement.getText(), font));
             }
-            excelData.setRichTextString(richString);
+            excelData.setRichTextString(createRichTextString(context, runs));
         }
         excelCell.setExcelData(excelData);
     }
 
+    /**
+     * description: 根据富文本片段创建RichTextString，每个片段使用各自的字体
+     *
+     * @param context
+     * @param runs
+     * @return org.apache.poi.ss.usermodel.RichTextString
+     */
+    public static RichTextString createRichTextString(WorkbookContext context, List<ExcelRichTextRun> runs) {
+        StringBuilder richStringBuilder = new StringBuilder();
+        for (ExcelRichTextRun run : runs) {
+            richStringBuilder.append(run.getText());
+        }
+        RichTextString richString = null;
+        if (context.getWorkbook() instanceof HSSFWorkbook) {
+            richString = new HSSFRichTextString(richStringBuilder.toString());
+        } else {
+            richString = new XSSFRichTextString(richStringBuilder.toString());
+        }
+        int index = 0;
+        for (ExcelRichTextRun run : runs) {
+            Font font = createFont(context, run.getFont());
+            int start = index;
+            int end = index + run.getText().length();
+            richString.applyFont(start, end, font);
+            index = end;
+        }
+        return richString;
+    }
+
     private static void readComment(ExcelCell excelCell, Element commentElement) {
         if (ObjectUtils.isEmpty(commentElement)) {
             return;
@@ -663,8 +734,8 @@ public class ExcelXmlReader {
         excelCell.setExcelComment(excelComment);
     }
 
-    private static List<ExcelColumn> readColumns(Element tableElement, String expandedRowCount, String defaultColumnWidth) {
-        List<Element> columnElements = tableElement.elements("Column");
+    private static List<ExcelColumn> readColumns(List<Element> columnElements, String expandedRowCount,
+                                                 String defaultColumnWidth) {
         if (CollectionUtils.isEmpty(columnElements)) {
             return null;
         }
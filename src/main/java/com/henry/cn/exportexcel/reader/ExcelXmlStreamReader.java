@@ -0,0 +1,503 @@
+package com.henry.cn.exportexcel.reader;
+
+import com.henry.cn.exportexcel.excel.*;
+import org.apache.commons.lang3.StringUtils;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * description: 基于StAX事件流读取类excel的xml文件，每读完一行就交给{@link ExcelSheetHandler}，
+ * 内存占用与行数无关。Styles、Column等体积很小的节点仍然转换为dom4j节点，复用{@link ExcelXmlReader}的解析逻辑
+ */
+public class ExcelXmlStreamReader {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+
+    /**
+     * description: 读取xml，按顺序回调styles、startSheet、row、endSheet
+     *
+     * @param xmlStream
+     * @param handler
+     * @return void
+     */
+    public static void read(InputStream xmlStream, ExcelSheetHandler handler) throws XMLStreamException {
+        read(xmlStream, null, handler);
+    }
+
+    /**
+     * description: 读取xml，compiledStyles不为空时跳过Styles节点，直接使用已编译的样式描述
+     *
+     * @param xmlStream
+     * @param compiledStyles
+     * @param handler
+     * @return void
+     */
+    public static void read(InputStream xmlStream, Map<String, ExcelStyle> compiledStyles,
+                            ExcelSheetHandler handler) throws XMLStreamException {
+        read(XML_INPUT_FACTORY.createXMLStreamReader(xmlStream), compiledStyles, handler);
+    }
+
+    /**
+     * description: 读取已解码的xml文本，忽略xml声明中的encoding
+     *
+     * @param xmlReader
+     * @param handler
+     * @return void
+     */
+    public static void read(Reader xmlReader, ExcelSheetHandler handler) throws XMLStreamException {
+        read(XML_INPUT_FACTORY.createXMLStreamReader(xmlReader), null, handler);
+    }
+
+    private static void read(XMLStreamReader reader, Map<String, ExcelStyle> compiledStyles,
+                             ExcelSheetHandler handler) throws XMLStreamException {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if ("Styles".equals(name)) {
+                    if (compiledStyles != null) {
+                        skipElement(reader);
+                        handler.styles(compiledStyles);
+                    } else {
+                        handler.styles(ExcelXmlReader.readStyles(readElement(reader)));
+                    }
+                } else if ("Worksheet".equals(name)) {
+                    readWorksheet(reader, handler);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * description: 按Worksheet拆分xml，在executor上并行解析各个sheet，解析结果按sheet的顺序在调用线程中回调handler，
+     * 因此handler中对workbook的修改仍然是串行的。尚未回调的sheet的行会暂存在内存中，
+     * xml无法拆分或只有一个sheet时回退为顺序解析
+     *
+     * @param xml
+     * @param length
+     * @param compiledStyles
+     * @param handler
+     * @param executor
+     * @return void
+     */
+    public static void readParallel(byte[] xml, int length, Map<String, ExcelStyle> compiledStyles,
+                                    ExcelSheetHandler handler, Executor executor) throws XMLStreamException {
+        WorksheetSplitter splitter = WorksheetSplitter.split(xml, length);
+        if (splitter == null || splitter.worksheetCount() < 2) {
+            read(new ByteArrayInputStream(xml, 0, length), compiledStyles, handler);
+            return;
+        }
+        List<CompletableFuture<SheetBuffer>> sheets = new ArrayList<>(splitter.worksheetCount());
+        for (int i = 0; i < splitter.worksheetCount(); i++) {
+            int index = i;
+            sheets.add(CompletableFuture.supplyAsync(() -> readSheet(splitter, index), executor));
+        }
+        boolean completed = false;
+        try {
+            read(splitter.head(), compiledStyles, handler);
+            for (CompletableFuture<SheetBuffer> sheet : sheets) {
+                sheet.join().replay(handler);
+            }
+            completed = true;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        } finally {
+            if (!completed) {
+                for (CompletableFuture<SheetBuffer> sheet : sheets) {
+                    sheet.cancel(false);
+                }
+            }
+        }
+    }
+
+    private static SheetBuffer readSheet(WorksheetSplitter splitter, int index) {
+        SheetBuffer sheetBuffer = new SheetBuffer();
+        try {
+            read(splitter.worksheet(index), null, sheetBuffer);
+        } catch (XMLStreamException e) {
+            throw new CompletionException(e);
+        }
+        return sheetBuffer;
+    }
+
+    private static void readWorksheet(XMLStreamReader reader, ExcelSheetHandler handler)
+            throws XMLStreamException {
+        ExcelWorksheet worksheet = new ExcelWorksheet();
+        worksheet.setName(reader.getAttributeValue(null, "Name"));
+        Element tableElement = null;
+        List<Element> columnElements = new ArrayList<>();
+        boolean started = false;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String name = reader.getLocalName();
+            if ("Table".equals(name)) {
+                // 只保留table的属性，行在后面逐个读取
+                tableElement = readAttributes(reader);
+                depth++;
+                continue;
+            }
+            if ("Column".equals(name)) {
+                columnElements.add(readElement(reader));
+                continue;
+            }
+            if ("Row".equals(name)) {
+                if (!started) {
+                    startSheet(worksheet, tableElement, columnElements, handler);
+                    started = true;
+                }
+                handler.row(readRow(reader));
+                continue;
+            }
+            skipElement(reader);
+        }
+        if (!started) {
+            startSheet(worksheet, tableElement, columnElements, handler);
+        }
+        handler.endSheet(worksheet);
+    }
+
+    private static void startSheet(ExcelWorksheet worksheet, Element tableElement, List<Element> columnElements,
+                                   ExcelSheetHandler handler) {
+        if (tableElement != null) {
+            worksheet.setExcelTable(ExcelXmlReader.readTable(tableElement, columnElements));
+        }
+        handler.startSheet(worksheet);
+    }
+
+    private static ExcelRow readRow(XMLStreamReader reader) throws XMLStreamException {
+        ExcelRow excelRow = new ExcelRow();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String value = reader.getAttributeValue(i);
+            switch (reader.getAttributeLocalName(i)) {
+                case "Height":
+                    excelRow.setHeight(Double.valueOf(value).intValue());
+                    break;
+                case "Index":
+                    excelRow.setIndex(Integer.valueOf(value));
+                    break;
+                default:
+                    break;
+            }
+        }
+        List<ExcelCell> excelCells = null;
+        while (nextElement(reader)) {
+            if ("Cell".equals(reader.getLocalName())) {
+                if (excelCells == null) {
+                    excelCells = new ArrayList<>();
+                }
+                excelCells.add(readCell(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        excelRow.setExcelCells(excelCells);
+        return excelRow;
+    }
+
+    private static ExcelCell readCell(XMLStreamReader reader) throws XMLStreamException {
+        ExcelCell excelCell = new ExcelCell();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String value = reader.getAttributeValue(i);
+            if (StringUtils.isEmpty(value)) {
+                continue;
+            }
+            switch (reader.getAttributeLocalName(i)) {
+                case "StyleID":
+                    excelCell.setStyleID(value);
+                    break;
+                case "MergeAcross":
+                    excelCell.setMergeAcross(Integer.valueOf(value));
+                    break;
+                case "MergeDown":
+                    excelCell.setMergeDown(Integer.valueOf(value));
+                    break;
+                case "Index":
+                    excelCell.setIndex(Integer.valueOf(value));
+                    break;
+                default:
+                    break;
+            }
+        }
+        while (nextElement(reader)) {
+            String name = reader.getLocalName();
+            if ("Data".equals(name) && excelCell.getExcelData() == null) {
+                readData(excelCell, reader);
+            } else if ("Comment".equals(name) && excelCell.getExcelComment() == null) {
+                readComment(excelCell, reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return excelCell;
+    }
+
+    /**
+     * description: 读取Data节点，富文本的规则与{@link ExcelXmlReader}一致：
+     * 优先取U下的Font，其次取B下的Font（加粗），最后取Data下直接的Font
+     *
+     * @param excelCell
+     * @param reader
+     * @return void
+     */
+    private static void readData(ExcelCell excelCell, XMLStreamReader reader) throws XMLStreamException {
+        ExcelData excelData = new ExcelData();
+        excelData.setType(reader.getAttributeValue(null, "Type"));
+        StringBuilder text = new StringBuilder();
+        List<ExcelRichTextRun> bRuns = null;
+        List<ExcelRichTextRun> uRuns = null;
+        List<ExcelRichTextRun> dataRuns = new ArrayList<>();
+        int event;
+        while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+            if (isText(event)) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("B".equals(name) && bRuns == null) {
+                    bRuns = readFontRuns(reader);
+                } else if ("U".equals(name) && uRuns == null) {
+                    uRuns = readFontRuns(reader);
+                } else if ("Font".equals(name)) {
+                    dataRuns.add(readFontRun(reader));
+                } else {
+                    skipElement(reader);
+                }
+            }
+        }
+        excelData.setText(text.toString());
+        List<ExcelRichTextRun> runs = uRuns != null ? uRuns : (bRuns != null ? bRuns : dataRuns);
+        if (!runs.isEmpty()) {
+            if (bRuns != null) {
+                for (ExcelRichTextRun run : runs) {
+                    run.getFont().setBold(true);
+                }
+            }
+            // 富文本只保留片段，由写入方在各自的workbook中创建字体，解析过程不依赖workbook
+            excelData.setRichTextRuns(runs);
+        }
+        excelCell.setExcelData(excelData);
+    }
+
+    private static List<ExcelRichTextRun> readFontRuns(XMLStreamReader reader) throws XMLStreamException {
+        List<ExcelRichTextRun> runs = new ArrayList<>();
+        int event;
+        while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            if ("Font".equals(reader.getLocalName())) {
+                runs.add(readFontRun(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return runs;
+    }
+
+    private static ExcelRichTextRun readFontRun(XMLStreamReader reader) throws XMLStreamException {
+        ExcelFont font = new ExcelFont();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String value = reader.getAttributeValue(i);
+            switch (reader.getAttributeLocalName(i)) {
+                case "Face":
+                    font.setFontName(value);
+                    break;
+                case "CharSet":
+                    font.setCharSet(Integer.valueOf(value));
+                    break;
+                case "Color":
+                    font.setColor(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+        // 只取Font下直接的文本
+        StringBuilder text = new StringBuilder();
+        int event;
+        while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+            if (isText(event)) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                skipElement(reader);
+            }
+        }
+        return new ExcelRichTextRun(text.toString(), font);
+    }
+
+    private static void readComment(ExcelCell excelCell, XMLStreamReader reader) throws XMLStreamException {
+        ExcelComment excelComment = new ExcelComment();
+        excelComment.setAuthor(reader.getAttributeValue(null, "Author"));
+        while (nextElement(reader)) {
+            if ("Data".equals(reader.getLocalName()) && excelComment.getExcelData() == null) {
+                ExcelData excelData = new ExcelData();
+                excelData.setText(readStringValue(reader));
+                excelComment.setExcelData(excelData);
+            } else {
+                skipElement(reader);
+            }
+        }
+        excelCell.setExcelComment(excelComment);
+    }
+
+    /**
+     * description: 读取节点下所有后代的文本，等同于dom4j的getStringValue
+     *
+     * @param reader
+     * @return java.lang.String
+     */
+    private static String readStringValue(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (isText(event)) {
+                text.append(reader.getText());
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * description: 将当前节点及其子节点读取为dom4j节点，仅用于Styles、Column等体积很小的节点
+     *
+     * @param reader
+     * @return org.dom4j.Element
+     */
+    private static Element readElement(XMLStreamReader reader) throws XMLStreamException {
+        Element element = readAttributes(reader);
+        int event;
+        while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                element.add(readElement(reader));
+            } else if (isText(event)) {
+                element.addText(reader.getText());
+            }
+        }
+        return element;
+    }
+
+    private static Element readAttributes(XMLStreamReader reader) {
+        Element element = DocumentHelper.createElement(reader.getLocalName());
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.addAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    /**
+     * description: 移动到下一个子节点，忽略文本、注释等，遇到当前节点结束时返回false
+     *
+     * @param reader
+     * @return boolean
+     */
+    private static boolean nextElement(XMLStreamReader reader) throws XMLStreamException {
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static boolean isText(int event) {
+        return event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                || event == XMLStreamConstants.SPACE;
+    }
+
+    /**
+     * description: 暂存一个sheet的解析结果，回放后即释放
+     */
+    private static class SheetBuffer implements ExcelSheetHandler {
+
+        private ExcelWorksheet worksheet;
+
+        private List<ExcelRow> rows = new ArrayList<>();
+
+        @Override
+        public void styles(Map<String, ExcelStyle> styles) {
+        }
+
+        @Override
+        public void startSheet(ExcelWorksheet worksheet) {
+            this.worksheet = worksheet;
+        }
+
+        @Override
+        public void row(ExcelRow row) {
+            rows.add(row);
+        }
+
+        @Override
+        public void endSheet(ExcelWorksheet worksheet) {
+        }
+
+        private void replay(ExcelSheetHandler handler) {
+            handler.startSheet(worksheet);
+            for (ExcelRow row : rows) {
+                handler.row(row);
+            }
+            handler.endSheet(worksheet);
+            rows = null;
+        }
+    }
+}
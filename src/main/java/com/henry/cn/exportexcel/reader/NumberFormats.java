@@ -0,0 +1,47 @@
+package com.henry.cn.exportexcel.reader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * description: SpreadsheetML中NumberFormat的Format属性到excel格式代码的转换。
+ * Fixed、Percent、Short Date等命名格式转换为对应的格式代码，其他值本身就是自定义的格式代码
+ */
+public final class NumberFormats {
+
+    private static final Map<String, String> NAMED_FORMATS = new HashMap<>();
+
+    static {
+        NAMED_FORMATS.put("General", "General");
+        NAMED_FORMATS.put("General Number", "General");
+        NAMED_FORMATS.put("General Date", "m/d/yy h:mm");
+        NAMED_FORMATS.put("Long Date", "dddd, mmmm d, yyyy");
+        NAMED_FORMATS.put("Medium Date", "d-mmm-yy");
+        NAMED_FORMATS.put("Short Date", "m/d/yy");
+        NAMED_FORMATS.put("Long Time", "h:mm:ss AM/PM");
+        NAMED_FORMATS.put("Medium Time", "h:mm AM/PM");
+        NAMED_FORMATS.put("Short Time", "h:mm");
+        NAMED_FORMATS.put("Currency", "\"$\"#,##0.00_);[Red](\"$\"#,##0.00)");
+        NAMED_FORMATS.put("Euro Currency", "[$€-2] #,##0.00");
+        NAMED_FORMATS.put("Fixed", "0.00");
+        NAMED_FORMATS.put("Standard", "#,##0.00");
+        NAMED_FORMATS.put("Percent", "0.00%");
+        NAMED_FORMATS.put("Scientific", "0.00E+00");
+        NAMED_FORMATS.put("Yes/No", "\"Yes\";\"Yes\";\"No\"");
+        NAMED_FORMATS.put("True/False", "\"True\";\"True\";\"False\"");
+        NAMED_FORMATS.put("On/Off", "\"On\";\"On\";\"Off\"");
+    }
+
+    private NumberFormats() {
+    }
+
+    /**
+     * description: 获取Format属性对应的格式代码
+     *
+     * @param format
+     * @return java.lang.String
+     */
+    public static String toFormatCode(String format) {
+        return NAMED_FORMATS.getOrDefault(format, format);
+    }
+}
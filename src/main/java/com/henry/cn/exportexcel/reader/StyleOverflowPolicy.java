@@ -0,0 +1,15 @@
+package com.henry.cn.exportexcel.reader;
+
+/**
+ * description: workbook中的样式数量达到上限（xls为4000，xlsx为64000）后的处理方式
+ */
+public enum StyleOverflowPolicy {
+    /**
+     * 抛出IllegalStateException，导出失败
+     */
+    FAIL,
+    /**
+     * 不再创建新样式，超出的样式使用workbook的默认样式，合并单元格不再补充边框，导出继续进行
+     */
+    DEGRADE
+}
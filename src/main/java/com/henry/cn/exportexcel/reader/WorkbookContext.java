@@ -0,0 +1,266 @@
+package com.henry.cn.exportexcel.reader;
+
+import com.henry.cn.exportexcel.excel.ExcelFont;
+import com.henry.cn.exportexcel.excel.ExcelStyle;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Color;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * description: 单个workbook在导出过程中的状态，例如HSSF调色板中已分配的颜色、已创建的字体和样式、各个sheet的画布、已添加的图片。
+ * 每次导出新建一个，只在导出线程内使用，不同workbook之间互不影响
+ */
+public class WorkbookContext {
+    private static final Logger log = LoggerFactory.getLogger(WorkbookContext.class);
+
+    private final Workbook workbook;
+
+    private final ColorRegistry colorRegistry;
+    /**
+     * 模板中的Format属性 -> workbook中的格式序号
+     */
+    private final Map<String, Short> dataFormatMap = new HashMap<>();
+
+    private DataFormat dataFormat;
+    /**
+     * 属性相同的字体共用一个，字体数量只取决于不同字体的种类，不随富文本单元格的行数增长
+     */
+    private final Map<ExcelFont, Font> fontMap = new HashMap<>();
+    /**
+     * 外观相同的样式共用一个，模板中大量重复的m、s样式只创建一次
+     */
+    private final Map<ExcelStyle, CellStyle> cellStyleMap = new HashMap<>();
+    /**
+     * 合并单元格边缘的单元格在原样式上替换边框得到的样式，key由原样式的index和四个边框组成
+     */
+    private final Map<Long, CellStyle> borderVariantMap = new HashMap<>();
+    /**
+     * 每个sheet的画布只创建一次，注释和图片共用
+     */
+    private final Map<Sheet, Drawing<?>> drawingMap = new IdentityHashMap<>();
+    /**
+     * 图片内容的hash -> workbook中的图片序号，内容相同的图片只添加一次
+     */
+    private final Map<String, Integer> pictureIndexMap = new HashMap<>();
+    /**
+     * workbook中样式数量的上限，包括workbook自带的样式
+     */
+    private final int maxCellStyles;
+
+    private final StyleOverflowPolicy styleOverflowPolicy;
+    /**
+     * 与已创建的样式外观相同而直接复用的次数
+     */
+    private int collapsedStyleCount;
+    /**
+     * 超出上限后使用默认样式代替的次数
+     */
+    private int degradedStyleCount;
+
+    public WorkbookContext(Workbook workbook) {
+        this(workbook, 0, StyleOverflowPolicy.FAIL);
+    }
+
+    /**
+     * @param workbook
+     * @param maxCellStyles       样式数量上限，小于等于0或超出文件格式的上限时使用文件格式的上限
+     * @param styleOverflowPolicy 达到上限后的处理方式
+     */
+    public WorkbookContext(Workbook workbook, int maxCellStyles, StyleOverflowPolicy styleOverflowPolicy) {
+        this.workbook = workbook;
+        this.colorRegistry = new ColorRegistry(workbook);
+        int formatLimit = workbook.getSpreadsheetVersion().getMaxCellStyles();
+        this.maxCellStyles = maxCellStyles > 0 ? Math.min(maxCellStyles, formatLimit) : formatLimit;
+        this.styleOverflowPolicy = styleOverflowPolicy;
+    }
+
+    public Workbook getWorkbook() {
+        return workbook;
+    }
+
+    /**
+     * description: 获取属性相同的已创建字体，没有时通过fontFactory创建
+     *
+     * @param excelFont
+     * @param fontFactory
+     * @return org.apache.poi.ss.usermodel.Font
+     */
+    Font getFont(ExcelFont excelFont, Function<ExcelFont, Font> fontFactory) {
+        return fontMap.computeIfAbsent(excelFont, fontFactory);
+    }
+
+    /**
+     * description: 获取外观相同的已创建样式，没有时通过styleFactory创建。
+     * 样式数量达到上限时按styleOverflowPolicy抛出异常或返回workbook的默认样式
+     *
+     * @param excelStyle
+     * @param styleFactory
+     * @return org.apache.poi.ss.usermodel.CellStyle
+     */
+    CellStyle getCellStyle(ExcelStyle excelStyle, Function<ExcelStyle, CellStyle> styleFactory) {
+        CellStyle cellStyle = cellStyleMap.get(excelStyle);
+        if (cellStyle != null) {
+            collapsedStyleCount++;
+            return cellStyle;
+        }
+        if (isStyleBudgetExhausted(excelStyle.getId())) {
+            return workbook.getCellStyleAt(0);
+        }
+        cellStyle = styleFactory.apply(excelStyle);
+        cellStyleMap.put(excelStyle, cellStyle);
+        return cellStyle;
+    }
+
+    /**
+     * description: 获取在baseStyle上替换四个边框后的样式，相同的组合只创建一次。
+     * 边框与baseStyle相同时直接返回baseStyle，样式数量达到上限且允许降级时也返回baseStyle
+     *
+     * @param baseStyle
+     * @param top
+     * @param bottom
+     * @param left
+     * @param right
+     * @return org.apache.poi.ss.usermodel.CellStyle
+     */
+    public CellStyle getBorderVariant(CellStyle baseStyle, BorderStyle top, BorderStyle bottom, BorderStyle left,
+                                     BorderStyle right) {
+        if (baseStyle.getBorderTopEnum() == top && baseStyle.getBorderBottomEnum() == bottom
+                && baseStyle.getBorderLeftEnum() == left && baseStyle.getBorderRightEnum() == right) {
+            return baseStyle;
+        }
+        // BorderStyle不超过16种，每个边框占4位
+        long key = (long) (baseStyle.getIndex() & 0xFFFF) << 16
+                | top.ordinal() << 12 | bottom.ordinal() << 8 | left.ordinal() << 4 | right.ordinal();
+        CellStyle cellStyle = borderVariantMap.get(key);
+        if (cellStyle != null) {
+            return cellStyle;
+        }
+        if (isStyleBudgetExhausted("border variant of " + baseStyle.getIndex())) {
+            return baseStyle;
+        }
+        cellStyle = workbook.createCellStyle();
+        cellStyle.cloneStyleFrom(baseStyle);
+        cellStyle.setBorderTop(top);
+        cellStyle.setBorderBottom(bottom);
+        cellStyle.setBorderLeft(left);
+        cellStyle.setBorderRight(right);
+        borderVariantMap.put(key, cellStyle);
+        return cellStyle;
+    }
+
+    /**
+     * description: 样式数量是否已达到上限，FAIL时直接抛出异常，DEGRADE时记录次数并返回true
+     *
+     * @param description
+     * @return boolean
+     */
+    private boolean isStyleBudgetExhausted(String description) {
+        if (workbook.getNumCellStyles() < maxCellStyles) {
+            return false;
+        }
+        if (styleOverflowPolicy == StyleOverflowPolicy.FAIL) {
+            throw new IllegalStateException("样式数量达到上限" + maxCellStyles + ", style: " + description);
+        }
+        if (degradedStyleCount++ == 0) {
+            log.warn("样式数量达到上限{}，之后新的样式使用默认样式代替, style: {}", maxCellStyles, description);
+        }
+        return true;
+    }
+
+    /**
+     * description: 通过本context创建的样式数量，包括合并单元格的边框样式
+     *
+     * @return int
+     */
+    public int getCellStyleCount() {
+        return cellStyleMap.size() + borderVariantMap.size();
+    }
+
+    public int getCollapsedStyleCount() {
+        return collapsedStyleCount;
+    }
+
+    public int getDegradedStyleCount() {
+        return degradedStyleCount;
+    }
+
+    /**
+     * description: 获取sheet的画布，同一个sheet的注释和图片共用
+     *
+     * @param sheet
+     * @return org.apache.poi.ss.usermodel.Drawing<?>
+     */
+    public Drawing<?> getDrawing(Sheet sheet) {
+        return drawingMap.computeIfAbsent(sheet, Sheet::createDrawingPatriarch);
+    }
+
+    /**
+     * description: 添加图片并返回其在workbook中的序号，内容相同的图片只添加一次
+     *
+     * @param contentHash 图片内容的hash
+     * @param bytes
+     * @param pictureType
+     * @return int
+     */
+    public int addPicture(String contentHash, byte[] bytes, int pictureType) {
+        return pictureIndexMap.computeIfAbsent(contentHash, key -> workbook.addPicture(bytes, pictureType));
+    }
+
+    /**
+     * description: 已创建的字体数量
+     *
+     * @return int
+     */
+    public int getFontCount() {
+        return fontMap.size();
+    }
+
+    /**
+     * description: 获取颜色，HSSF需要在当前workbook的调色板中登记自定义颜色
+     *
+     * @param color
+     * @return org.apache.poi.ss.usermodel.Color
+     */
+    Color getColor(String color) {
+        return colorRegistry.getColor(color);
+    }
+
+    /**
+     * description: 获取Format属性对应的格式序号，同一workbook中每种格式只查找或创建一次
+     *
+     * @param numberFormat
+     * @return short
+     */
+    short getDataFormat(String numberFormat) {
+        Short index = dataFormatMap.get(numberFormat);
+        if (index == null) {
+            if (dataFormat == null) {
+                dataFormat = workbook.createDataFormat();
+            }
+            index = dataFormat.getFormat(NumberFormats.toFormatCode(numberFormat));
+            dataFormatMap.put(numberFormat, index);
+        }
+        return index;
+    }
+
+    /**
+     * description: 已使用的不同颜色的数量
+     *
+     * @return int
+     */
+    public int getColorCount() {
+        return colorRegistry.size();
+    }
+}
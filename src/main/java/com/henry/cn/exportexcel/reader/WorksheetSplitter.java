@@ -0,0 +1,205 @@
+package com.henry.cn.exportexcel.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * description: 在渲染后的xml字节中定位根节点和各个Worksheet节点的位置，不做完整解析。
+ * 每个Worksheet片段包上根节点的开始、结束标签后即是一个完整的文档，命名空间声明保持不变，可以独立解析。
+ * 只识别ASCII的标签，注释、CDATA、处理指令中的内容会被跳过
+ */
+class WorksheetSplitter {
+
+    private static final String WORKSHEET = "Worksheet";
+
+    private final byte[] xml;
+
+    private final int length;
+
+    private int rootStart = -1;
+
+    private int rootEnd = -1;
+
+    private byte[] rootEndTag;
+
+    private final List<int[]> worksheets = new ArrayList<>();
+
+    private WorksheetSplitter(byte[] xml, int length) {
+        this.xml = xml;
+        this.length = length;
+    }
+
+    /**
+     * description: 拆分xml，结构无法识别时返回null，调用方应回退为顺序解析
+     *
+     * @param xml
+     * @param length
+     * @return com.henry.cn.exportexcel.reader.WorksheetSplitter
+     */
+    static WorksheetSplitter split(byte[] xml, int length) {
+        WorksheetSplitter splitter = new WorksheetSplitter(xml, length);
+        return splitter.scan() ? splitter : null;
+    }
+
+    /**
+     * description: 第一个Worksheet之前的部分（xml声明、根节点、Styles等）加上根节点的结束标签
+     *
+     * @return java.io.InputStream
+     */
+    InputStream head() {
+        int end = worksheets.isEmpty() ? length : worksheets.get(0)[0];
+        return new SequenceInputStream(new ByteArrayInputStream(xml, 0, end),
+                new ByteArrayInputStream(rootEndTag));
+    }
+
+    int worksheetCount() {
+        return worksheets.size();
+    }
+
+    /**
+     * description: 第index个Worksheet，前面是xml声明到根节点开始标签的内容，后面是根节点的结束标签
+     *
+     * @param index
+     * @return java.io.InputStream
+     */
+    InputStream worksheet(int index) {
+        int[] range = worksheets.get(index);
+        List<InputStream> parts = Arrays.asList(
+                new ByteArrayInputStream(xml, 0, rootEnd),
+                new ByteArrayInputStream(xml, range[0], range[1] - range[0]),
+                new ByteArrayInputStream(rootEndTag));
+        return new SequenceInputStream(Collections.enumeration(parts));
+    }
+
+    private boolean scan() {
+        int worksheetStart = -1;
+        int i = 0;
+        while (i < length) {
+            if (xml[i] != '<') {
+                i++;
+                continue;
+            }
+            if (startsWith(i, "<!--")) {
+                i = skipPast(i + 4, "-->");
+            } else if (startsWith(i, "<![CDATA[")) {
+                i = skipPast(i + 9, "]]>");
+            } else if (startsWith(i, "<?")) {
+                i = skipPast(i + 2, "?>");
+            } else if (startsWith(i, "<!")) {
+                // DOCTYPE
+                i = skipTag(i);
+            } else if (i + 1 < length && xml[i + 1] == '/') {
+                int tagEnd = skipTag(i);
+                if (tagEnd < 0) {
+                    return false;
+                }
+                if (worksheetStart >= 0 && isWorksheet(i + 2)) {
+                    worksheets.add(new int[]{worksheetStart, tagEnd});
+                    worksheetStart = -1;
+                }
+                i = tagEnd;
+            } else {
+                int tagEnd = skipTag(i);
+                if (tagEnd < 0) {
+                    return false;
+                }
+                if (rootStart < 0) {
+                    rootStart = i;
+                    rootEnd = tagEnd;
+                    rootEndTag = ("</" + qName(i + 1) + ">").getBytes(StandardCharsets.US_ASCII);
+                } else if (worksheetStart < 0 && isWorksheet(i + 1)) {
+                    if (xml[tagEnd - 2] == '/') {
+                        worksheets.add(new int[]{i, tagEnd});
+                    } else {
+                        worksheetStart = i;
+                    }
+                }
+                i = tagEnd;
+            }
+            if (i < 0) {
+                return false;
+            }
+        }
+        return rootStart >= 0 && worksheetStart < 0;
+    }
+
+    private boolean startsWith(int offset, String prefix) {
+        if (offset + prefix.length() > length) {
+            return false;
+        }
+        for (int j = 0; j < prefix.length(); j++) {
+            if (xml[offset + j] != prefix.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipPast(int offset, String terminator) {
+        for (int i = offset; i < length; i++) {
+            if (startsWith(i, terminator)) {
+                return i + terminator.length();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * description: 返回标签结束符'>'之后的位置，属性值中的'>'不作为结束符
+     *
+     * @param offset
+     * @return int
+     */
+    private int skipTag(int offset) {
+        byte quote = 0;
+        for (int i = offset + 1; i < length; i++) {
+            byte b = xml[i];
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private String qName(int offset) {
+        int end = offset;
+        while (end < length && !isNameEnd(xml[end])) {
+            end++;
+        }
+        return new String(xml, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * description: 标签名（忽略前缀）是否为Worksheet，直接比较字节，避免为每个标签创建字符串
+     *
+     * @param offset
+     * @return boolean
+     */
+    private boolean isWorksheet(int offset) {
+        int start = offset;
+        int end = offset;
+        while (end < length && !isNameEnd(xml[end])) {
+            if (xml[end] == ':') {
+                start = end + 1;
+            }
+            end++;
+        }
+        return end - start == WORKSHEET.length() && startsWith(start, WORKSHEET);
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '>' || b == '/';
+    }
+}
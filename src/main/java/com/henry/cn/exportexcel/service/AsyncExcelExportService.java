@@ -0,0 +1,142 @@
+package com.henry.cn.exportexcel.service;
+
+import com.henry.cn.exportexcel.excel.ExcelImage;
+import com.henry.cn.exportexcel.writer.ExcelBatchItem;
+import com.henry.cn.exportexcel.writer.ExcelBatchResult;
+import com.henry.cn.exportexcel.writer.ExcelExporter;
+import com.henry.cn.exportexcel.writer.ExcelFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+
+/**
+ * description: 异步导出，任务提交到有界的导出线程池，每个任务返回一个CompletableFuture，
+ * 成功时得到导出的文件，失败时得到导出过程中的异常；线程池饱和时返回的future以{@link RejectedExecutionException}结束
+ */
+@Service
+public class AsyncExcelExportService {
+    private static final Logger log = LoggerFactory.getLogger(AsyncExcelExportService.class);
+
+    private final ExcelExporter exporter;
+
+    private final ThreadPoolExecutor executor;
+
+    public AsyncExcelExportService(ExcelExporter exporter,
+                                   @Qualifier("excelExportExecutor") ThreadPoolExecutor executor) {
+        this.exporter = exporter;
+        this.executor = executor;
+    }
+
+    /**
+     * description: 异步导出到exportDir下
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param fileName
+     * @return java.util.concurrent.CompletableFuture<java.io.File>
+     */
+    public CompletableFuture<File> submit(ExcelFormat format, Map dataMap, String templateName, String fileName) {
+        return submit(format, dataMap, templateName, fileName, null);
+    }
+
+    /**
+     * description: 异步导出带图片的文件到exportDir下
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param fileName
+     * @param images
+     * @return java.util.concurrent.CompletableFuture<java.io.File>
+     */
+    public CompletableFuture<File> submit(ExcelFormat format, Map dataMap, String templateName, String fileName,
+                                          List<ExcelImage> images) {
+        return submit(() -> exporter.writeExcel(format, dataMap, templateName, fileName, images));
+    }
+
+    /**
+     * description: 异步导出带图片的文件到指定文件
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param file
+     * @param images
+     * @return java.util.concurrent.CompletableFuture<java.io.File>
+     */
+    public CompletableFuture<File> submit(ExcelFormat format, Map dataMap, String templateName, File file,
+                                          List<ExcelImage> images) {
+        return submit(() -> {
+            exporter.writeExcel(format, dataMap, templateName, file, images);
+            return file;
+        });
+    }
+
+    /**
+     * description: 在导出线程池中用同一个模板批量导出，同时导出的文件不超过线程池的最大线程数，
+     * 线程池饱和时由当前线程导出。当前线程等待整批结束后返回每个文件的结果，items随后关闭，不能在导出线程池中调用
+     *
+     * @param format
+     * @param templateName
+     * @param items
+     * @return java.util.List<com.henry.cn.exportexcel.writer.ExcelBatchResult>
+     */
+    public List<ExcelBatchResult> writeBatch(ExcelFormat format, String templateName, Stream<ExcelBatchItem> items) {
+        return exporter.writeExcelBatch(format, templateName, items, executor, executor.getMaximumPoolSize());
+    }
+
+    /**
+     * description: 当前排队等待的任务数
+     *
+     * @return int
+     */
+    public int getQueuedJobs() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * description: 当前正在执行的任务数
+     *
+     * @return int
+     */
+    public int getActiveJobs() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * description: 任务开始前future已被取消时不再导出
+     *
+     * @param job
+     * @return java.util.concurrent.CompletableFuture<java.io.File>
+     */
+    private CompletableFuture<File> submit(Callable<File> job) {
+        CompletableFuture<File> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(job.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("导出任务被拒绝, active: {}, queued: {}", executor.getActiveCount(), executor.getQueue().size());
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,261 @@
+package com.henry.cn.exportexcel.writer;
+
+import org.apache.poi.ss.usermodel.FormulaError;
+
+/**
+ * description: 将SpreadsheetML中Data节点的文本转换为单元格的值。Number逐个字符解析，
+ * 不使用正则也不生成中间字符串，有效数字不超过15位且指数不超过22时直接由long和10的幂得到精确的double，
+ * 其他情况才交给Double.parseDouble；DateTime直接换算为excel的日期序号，不经过Date和Calendar
+ */
+final class CellValues {
+
+    static final String NUMBER = "Number";
+
+    static final String DATE_TIME = "DateTime";
+
+    static final String BOOLEAN = "Boolean";
+
+    static final String ERROR = "Error";
+
+    /**
+     * double可以精确表示的10的幂
+     */
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * 可以写入单元格的错误值，FormulaError.values()每次调用都复制数组
+     */
+    private static final FormulaError[] ERRORS = {
+            FormulaError.NULL, FormulaError.DIV0, FormulaError.VALUE, FormulaError.REF,
+            FormulaError.NAME, FormulaError.NUM, FormulaError.NA};
+
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /**
+     * 1899-12-30距1970-01-01的天数，excel的日期序号从该日开始
+     */
+    private static final long EXCEL_EPOCH_DAY = -25569;
+
+    private static final double SECONDS_PER_DAY = 86400;
+
+    private CellValues() {
+    }
+
+    /**
+     * description: 解析数字，允许千分位的逗号、正负号、小数点和科学计数法，首尾的空白被忽略
+     *
+     * @param text
+     * @return double
+     */
+    static double parseNumber(String text) {
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        int i = 0;
+        while (i < end && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+        boolean seenDot = false;
+        boolean truncated = false;
+        boolean hasComma = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && c == '0') {
+                    // 前导的0不计入有效数字
+                    if (seenDot) {
+                        exponent--;
+                    }
+                } else if (digits < MAX_LONG_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (seenDot) {
+                        exponent--;
+                    }
+                } else {
+                    truncated = true;
+                    if (!seenDot) {
+                        exponent++;
+                    }
+                }
+            } else if (c == ',' && !seenDot) {
+                hasComma = true;
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else if ((c == 'e' || c == 'E') && seenDigit) {
+                exponent += parseExponent(text, i + 1, end);
+                break;
+            } else {
+                throw new NumberFormatException("无法解析的数字: " + text);
+            }
+        }
+        if (!seenDigit) {
+            throw new NumberFormatException("无法解析的数字: " + text);
+        }
+        if (mantissa == 0) {
+            return 0;
+        }
+        if (!truncated && digits <= MAX_EXACT_DIGITS && Math.abs(exponent) < POW10.length) {
+            double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+            return negative ? -value : value;
+        }
+        // 有效数字过多或指数过大，无法保证一次乘除的结果是最接近的double
+        return Double.parseDouble(hasComma ? text.replace(",", "") : text);
+    }
+
+    private static int parseExponent(String text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("无法解析的数字: " + text);
+        }
+        int exponent = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("无法解析的数字: " + text);
+            }
+            // 超出double范围的指数按上限处理，Double.parseDouble会得到0或Infinity
+            exponent = Math.min(exponent * 10 + (c - '0'), 10000);
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    /**
+     * description: 将yyyy-MM-ddTHH:mm:ss.SSS格式的时间转换为excel的日期序号（1900日期系统），
+     * 时间部分可以省略，格式不正确或早于1899-12-31时返回NaN
+     *
+     * @param text
+     * @return double
+     */
+    static double parseDateTime(String text) {
+        int length = text.length();
+        if (length < 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return Double.NaN;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return Double.NaN;
+        }
+        double seconds = 0;
+        if (length > 10) {
+            if (length < 19 || text.charAt(10) != 'T' || text.charAt(13) != ':' || text.charAt(16) != ':') {
+                return Double.NaN;
+            }
+            int hour = digits(text, 11, 13);
+            int minute = digits(text, 14, 16);
+            int second = digits(text, 17, 19);
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+                return Double.NaN;
+            }
+            int millis = 0;
+            if (length > 19) {
+                if (text.charAt(19) != '.' || length > 23 || length == 20) {
+                    return Double.NaN;
+                }
+                millis = digits(text, 20, length);
+                if (millis < 0) {
+                    return Double.NaN;
+                }
+                for (int i = length; i < 23; i++) {
+                    millis *= 10;
+                }
+            }
+            seconds = hour * 3600 + minute * 60 + second + millis / 1000.0;
+        }
+        long serial = daysFromCivil(year, month, day) - EXCEL_EPOCH_DAY;
+        if (serial < 1) {
+            return Double.NaN;
+        }
+        if (serial < 61) {
+            // excel将1900年当作闰年，1900-03-01之前的序号比实际天数少1
+            serial--;
+        }
+        return serial + seconds / SECONDS_PER_DAY;
+    }
+
+    /**
+     * description: 解析布尔值，接受1、0、true、false，无法识别时返回null
+     *
+     * @param text
+     * @return java.lang.Boolean
+     */
+    static Boolean parseBoolean(String text) {
+        String value = text.trim();
+        if ("1".equals(value) || "true".equalsIgnoreCase(value)) {
+            return Boolean.TRUE;
+        }
+        if ("0".equals(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    /**
+     * description: 解析#N/A、#DIV/0!等错误值，无法识别时返回null
+     *
+     * @param text
+     * @return org.apache.poi.ss.usermodel.FormulaError
+     */
+    static FormulaError parseError(String text) {
+        String value = text.trim();
+        for (FormulaError error : ERRORS) {
+            if (error.getString().equals(value)) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * 公历日期距1970-01-01的天数
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,40 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.ExcelImage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * description: 批量导出中的一个文件，导出到exportDir下的fileName，扩展名由导出格式决定
+ */
+public class ExcelBatchItem {
+
+    private final String fileName;
+
+    private final Map dataMap;
+
+    private final List<ExcelImage> images;
+
+    public ExcelBatchItem(String fileName, Map dataMap) {
+        this(fileName, dataMap, null);
+    }
+
+    public ExcelBatchItem(String fileName, Map dataMap, List<ExcelImage> images) {
+        this.fileName = fileName;
+        this.dataMap = dataMap;
+        this.images = images;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Map getDataMap() {
+        return dataMap;
+    }
+
+    public List<ExcelImage> getImages() {
+        return images;
+    }
+}
@@ -0,0 +1,45 @@
+package com.henry.cn.exportexcel.writer;
+
+import java.io.File;
+
+/**
+ * description: 批量导出中一个文件的结果，成功时file为导出的文件，失败时failure为导出过程中的异常
+ */
+public class ExcelBatchResult {
+
+    private final ExcelBatchItem item;
+
+    private final File file;
+
+    private final Throwable failure;
+
+    private ExcelBatchResult(ExcelBatchItem item, File file, Throwable failure) {
+        this.item = item;
+        this.file = file;
+        this.failure = failure;
+    }
+
+    static ExcelBatchResult success(ExcelBatchItem item, File file) {
+        return new ExcelBatchResult(item, file, null);
+    }
+
+    static ExcelBatchResult failure(ExcelBatchItem item, Throwable failure) {
+        return new ExcelBatchResult(item, null, failure);
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    public ExcelBatchItem getItem() {
+        return item;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+}
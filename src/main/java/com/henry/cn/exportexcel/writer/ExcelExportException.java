@@ -0,0 +1,11 @@
+package com.henry.cn.exportexcel.writer;
+
+/**
+ * description: 导出失败，cause为模板渲染、xml解析或文件写入时的原始异常
+ */
+public class ExcelExportException extends RuntimeException {
+
+    public ExcelExportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,1433 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.ExcelImage;
+import com.henry.cn.exportexcel.excel.ExcelStyle;
+import com.henry.cn.exportexcel.excel.ImageSource;
+import com.henry.cn.exportexcel.reader.ExcelSheetHandler;
+import com.henry.cn.exportexcel.reader.ExcelXmlStreamReader;
+import com.henry.cn.exportexcel.reader.StyleOverflowPolicy;
+import com.henry.cn.exportexcel.reader.WorkbookContext;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.FastByteArrayOutputStream;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * description: 导出引擎，通过{@link Builder}创建，创建后配置不可修改，可以被多个线程同时使用。
+ * 每次导出使用独立的workbook和{@link WorkbookContext}，导出之间只共享模板和已编译的样式。
+ * 开启模板监听时需要在不再使用后调用{@link #close()}停止监听
+ */
+public final class ExcelExporter implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ExcelExporter.class);
+
+    /**
+     * 流式导出时内存中保留的行数，超出窗口的行会被刷写到临时文件
+     */
+    public static final int DEFAULT_ROW_ACCESS_WINDOW_SIZE = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+    /**
+     * 图片缓存默认的总字节数
+     */
+    public static final long DEFAULT_IMAGE_CACHE_BYTES = 16 * 1024 * 1024;
+    /**
+     * 模板渲染缓冲区的首个分块大小
+     */
+    private static final int XML_BUFFER_INITIAL_SIZE = 64 * 1024;
+    /**
+     * 写出workbook时的缓冲区大小
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    /**
+     * 边渲染边解析时管道的大小
+     */
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final File templateDir;
+
+    private final File exportDir;
+
+    private final String charset;
+
+    private final int rowAccessWindowSize;
+
+    private final boolean compressTempFiles;
+    /**
+     * 不为空时多个sheet并行解析
+     */
+    private final Executor sheetExecutor;
+    /**
+     * 不为空时在其中渲染模板，当前线程同时解析渲染结果，渲染结果不在内存中积累
+     */
+    private final Executor renderExecutor;
+    /**
+     * 单个workbook中样式数量的上限，0表示使用文件格式的上限
+     */
+    private final int maxCellStyles;
+
+    private final StyleOverflowPolicy styleOverflowPolicy;
+    /**
+     * 按Worksheet拆分xml需要在字节中查找ASCII标签，UTF-16等编码下只能顺序解析
+     */
+    private final boolean splittable;
+    /**
+     * 配置完成后不再修改，FreeMarker保证其线程安全
+     */
+    private final Configuration configuration;
+    /**
+     * 是否监听模板目录，开启后导出时不再检查模板文件是否修改
+     */
+    private final boolean watchTemplates;
+
+    private final TemplateRegistry templateRegistry;
+    /**
+     * 是否把数据直接绑定到模板编译出的蓝图，模板无法编译时仍使用FreeMarker渲染
+     */
+    private final boolean blueprintBinding;
+    /**
+     * 已编译的模板样式
+     */
+    private final TemplateStyleCache styleCache = new TemplateStyleCache();
+
+    private final long imageCacheBytes;
+    /**
+     * 图片文件的原始字节
+     */
+    private final ImageCache imageCache;
+
+    private final MeterRegistry meterRegistry;
+
+    private final boolean allocationSampling;
+    /**
+     * 配置了meterRegistry时不为空
+     */
+    private final ExportMetrics metrics;
+
+    private ExcelExporter(Builder builder) {
+        this.templateDir = builder.templateDir;
+        this.exportDir = builder.exportDir;
+        this.charset = builder.charset;
+        this.rowAccessWindowSize = builder.rowAccessWindowSize;
+        this.compressTempFiles = builder.compressTempFiles;
+        this.sheetExecutor = builder.sheetExecutor;
+        this.renderExecutor = builder.renderExecutor;
+        this.maxCellStyles = builder.maxCellStyles;
+        this.styleOverflowPolicy = builder.styleOverflowPolicy;
+        this.imageCacheBytes = builder.imageCacheBytes;
+        this.imageCache = new ImageCache(builder.imageCacheBytes);
+        this.splittable = "<".getBytes(Charset.forName(builder.charset)).length == 1;
+        this.configuration = createConfiguration(builder);
+        this.watchTemplates = builder.watchTemplates;
+        this.blueprintBinding = builder.blueprintBinding;
+        this.templateRegistry = new TemplateRegistry(configuration, builder.charset, builder.templateDir,
+                builder.watchTemplates, builder.blueprintBinding);
+        this.meterRegistry = builder.meterRegistry;
+        this.allocationSampling = builder.allocationSampling;
+        this.metrics = builder.meterRegistry == null ? null
+                : new ExportMetrics(builder.meterRegistry, builder.allocationSampling);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * description: 以当前配置为基础创建builder，用于派生配置不同的引擎
+     *
+     * @return com.henry.cn.exportexcel.writer.ExcelExporter.Builder
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .templateDir(templateDir)
+                .exportDir(exportDir)
+                .charset(charset)
+                .rowAccessWindowSize(rowAccessWindowSize)
+                .compressTempFiles(compressTempFiles)
+                .sheetExecutor(sheetExecutor)
+                .renderExecutor(renderExecutor)
+                .maxCellStyles(maxCellStyles)
+                .styleOverflowPolicy(styleOverflowPolicy)
+                .imageCacheBytes(imageCacheBytes)
+                .meterRegistry(meterRegistry)
+                .allocationSampling(allocationSampling)
+                .watchTemplates(watchTemplates)
+                .blueprintBinding(blueprintBinding);
+    }
+
+    private static Configuration createConfiguration(Builder builder) {
+        Configuration configuration = new Configuration(Configuration.VERSION_2_3_28);
+        configuration.setDefaultEncoding(builder.charset);
+        // 监听模板目录时由TemplateRegistry在文件修改后清除缓存，include的模板也不再每次检查
+        configuration.setTemplateUpdateDelayMilliseconds(builder.watchTemplates ? Long.MAX_VALUE : 0);
+        configuration.setEncoding(Locale.CHINA, builder.charset);
+        configuration.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        configuration.setObjectWrapper(new LazySourceObjectWrapper(Configuration.VERSION_2_3_28));
+        configuration.setOutputEncoding(builder.charset);
+        if (builder.templateDir == null) {
+            // 未指定目录时读取classpath下的template
+            configuration.setClassForTemplateLoading(ExcelExporter.class, "/template");
+            return configuration;
+        }
+        try {
+            configuration.setDirectoryForTemplateLoading(builder.templateDir);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("template dir is not available: " + builder.templateDir, e);
+        }
+        return configuration;
+    }
+
+    public File getTemplateDir() {
+        return templateDir;
+    }
+
+    public File getExportDir() {
+        return exportDir;
+    }
+
+    public String getCharset() {
+        return charset;
+    }
+
+    public int getRowAccessWindowSize() {
+        return rowAccessWindowSize;
+    }
+
+    public boolean isCompressTempFiles() {
+        return compressTempFiles;
+    }
+
+    public Executor getSheetExecutor() {
+        return sheetExecutor;
+    }
+
+    public Executor getRenderExecutor() {
+        return renderExecutor;
+    }
+
+    public int getMaxCellStyles() {
+        return maxCellStyles;
+    }
+
+    public StyleOverflowPolicy getStyleOverflowPolicy() {
+        return styleOverflowPolicy;
+    }
+
+    public long getImageCacheBytes() {
+        return imageCacheBytes;
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    public boolean isAllocationSampling() {
+        return allocationSampling;
+    }
+
+    public boolean isWatchTemplates() {
+        return watchTemplates;
+    }
+
+    public boolean isBlueprintBinding() {
+        return blueprintBinding;
+    }
+
+    /**
+     * description: 编译模板目录下所有的xml和ftl模板，返回编译成功的模板个数，用于启动时预热，避免首次导出时编译模板。
+     * 有语法错误或无法读取的模板只记录日志，使用该模板导出时再抛出异常；模板目录无法读取时抛出异常
+     *
+     * @return int
+     */
+    public int precompileTemplates() {
+        long start = System.nanoTime();
+        int count;
+        try {
+            count = templateRegistry.precompile();
+        } catch (IOException e) {
+            throw new ExcelExportException("预编译模板失败", e);
+        }
+        log.info("预编译模板: {}个, 耗时: {}ms", count, (System.nanoTime() - start) / 1_000_000);
+        return count;
+    }
+
+    /**
+     * description: 停止监听模板目录，未开启监听时不做任何操作
+     *
+     * @return void
+     */
+    @Override
+    public void close() throws IOException {
+        templateRegistry.close();
+    }
+
+    /**
+     * description: 导出到exportDir下，文件扩展名由format决定
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param fileName
+     * @return java.io.File
+     */
+    public File writeExcel(ExcelFormat format, Map dataMap, String templateName, String fileName) {
+        return writeExcel(format, dataMap, templateName, fileName, null);
+    }
+
+    /**
+     * description: 导出带图片的文件到exportDir下，文件扩展名由format决定
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param fileName
+     * @param images
+     * @return java.io.File
+     */
+    public File writeExcel(ExcelFormat format, Map dataMap, String templateName, String fileName,
+                           List<ExcelImage> images) {
+        if (exportDir == null) {
+            throw new IllegalStateException("exportDir is not configured");
+        }
+        File file = FileUtils.getFile(exportDir, fileName + format.getExtension());
+        writeExcel(format, dataMap, templateName, file, images);
+        return file;
+    }
+
+    /**
+     * description: 导出到指定文件
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param file
+     * @return void
+     */
+    public void writeExcel(ExcelFormat format, Map dataMap, String templateName, File file) {
+        writeExcel(format, dataMap, templateName, file, null);
+    }
+
+    /**
+     * description: 导出带图片的文件到指定文件，失败时抛出{@link ExcelExportException}
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param file
+     * @param images
+     * @return void
+     */
+    public void writeExcel(ExcelFormat format, Map dataMap, String templateName, File file,
+                           List<ExcelImage> images) {
+        writeExcel(format, dataMap, templateName, null, file, images);
+    }
+
+    /**
+     * description: 导出到指定文件，template不为空时直接使用，批量导出时所有文件共用同一个已编译的模板
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param template
+     * @param file
+     * @param images
+     * @return void
+     */
+    private void writeExcel(ExcelFormat format, Map dataMap, String templateName, Template template, File file,
+                            List<ExcelImage> images) {
+        if (format == ExcelFormat.XLSX_DIRECT) {
+            writeDirect(dataMap, templateName, template, file, images);
+            return;
+        }
+        writeExcel(createWorkbook(format), dataMap, templateName, template, file, images);
+    }
+
+    /**
+     * description: 导出到输出流，例如HTTP响应或对象存储的上传流。写入时带缓冲，结束后flush，但不关闭outputStream
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param outputStream
+     * @return void
+     */
+    public void writeExcel(ExcelFormat format, Map dataMap, String templateName, OutputStream outputStream) {
+        writeExcel(format, dataMap, templateName, outputStream, null);
+    }
+
+    /**
+     * description: 导出带图片的文件到输出流，结束后flush，但不关闭outputStream
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param outputStream
+     * @param images
+     * @return void
+     */
+    public void writeExcel(ExcelFormat format, Map dataMap, String templateName, OutputStream outputStream,
+                           List<ExcelImage> images) {
+        if (format == ExcelFormat.XLSX_DIRECT) {
+            writeDirect(dataMap, templateName, outputStream, images);
+            return;
+        }
+        Workbook wb = createWorkbook(format);
+        ExportStats stats = new ExportStats();
+        long start = System.nanoTime();
+        long allocatedBefore = allocatedBytes();
+        boolean success = false;
+        try {
+            buildWorkbook(wb, dataMap, resolveTemplate(templateName, null, stats), images, stats);
+            writeWorkbook(wb, outputStream, stats);
+            success = true;
+            log.info("导出成功, template: {}", templateName);
+        } catch (IOException | TemplateException | XMLStreamException | IllegalStateException e) {
+            throw new ExcelExportException("导出失败：" + templateName, e);
+        } finally {
+            disposeWorkbook(wb);
+            recordMetrics(format, stats, start, allocatedBefore, success);
+        }
+    }
+
+    /**
+     * description: 导出到channel，结束后不关闭channel
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param channel
+     * @return void
+     */
+    public void writeExcel(ExcelFormat format, Map dataMap, String templateName, WritableByteChannel channel) {
+        writeExcel(format, dataMap, templateName, channel, null);
+    }
+
+    /**
+     * description: 导出带图片的文件到channel，结束后不关闭channel
+     *
+     * @param format
+     * @param dataMap
+     * @param templateName
+     * @param channel
+     * @param images
+     * @return void
+     */
+    public void writeExcel(ExcelFormat format, Map dataMap, String templateName, WritableByteChannel channel,
+                           List<ExcelImage> images) {
+        writeExcel(format, dataMap, templateName, Channels.newOutputStream(channel), images);
+    }
+
+    /**
+     * description: 渲染和解析一次，同时导出多种格式到exportDir下
+     *
+     * @param formats
+     * @param dataMap
+     * @param templateName
+     * @param fileName
+     * @return java.util.Map<com.henry.cn.exportexcel.writer.ExcelFormat, java.io.File>
+     */
+    public Map<ExcelFormat, File> writeExcel(Set<ExcelFormat> formats, Map dataMap, String templateName,
+                                             String fileName) {
+        return writeExcel(formats, dataMap, templateName, fileName, null);
+    }
+
+    /**
+     * description: 渲染和解析一次，同时导出多种格式的带图片文件到exportDir下，返回每种格式导出的文件。
+     * 图片的anchor区分xls和xlsx，因此按格式分别传入，没有对应图片的格式不写入图片。
+     * 解析得到的行与格式无关，不配置sheetExecutor时每读完一行就依次交给各个格式写入，内存占用与单个格式相同；
+     * 配置了sheetExecutor时先记录全部解析结果，再在其中并行写入各个格式。
+     * 扩展名相同的格式不能同时导出，任意一种格式失败时删除所有已导出的文件并抛出{@link ExcelExportException}
+     *
+     * @param formats
+     * @param dataMap
+     * @param templateName
+     * @param fileName
+     * @param images
+     * @return java.util.Map<com.henry.cn.exportexcel.writer.ExcelFormat, java.io.File>
+     */
+    public Map<ExcelFormat, File> writeExcel(Set<ExcelFormat> formats, Map dataMap, String templateName,
+                                             String fileName, Map<ExcelFormat, List<ExcelImage>> images) {
+        if (exportDir == null) {
+            throw new IllegalStateException("exportDir is not configured");
+        }
+        if (formats.isEmpty()) {
+            throw new IllegalArgumentException("formats is empty");
+        }
+        Set<String> extensions = new HashSet<>();
+        for (ExcelFormat format : formats) {
+            if (!extensions.add(format.getExtension())) {
+                throw new IllegalArgumentException("formats with the same extension: " + formats);
+            }
+        }
+        List<ExportTarget> targets = new ArrayList<>(formats.size());
+        XlsxDirectWriter.ImageReader imageReader = sharedImageReader();
+        long start = System.nanoTime();
+        long allocatedBefore = allocatedBytes();
+        boolean success = false;
+        try {
+            for (ExcelFormat format : formats) {
+                File file = FileUtils.getFile(exportDir, fileName + format.getExtension());
+                targets.add(new ExportTarget(format, file, images == null ? null : images.get(format), imageReader));
+            }
+            writeTargets(targets, dataMap, templateName);
+            success = true;
+            log.info("导出成功, formats: {}, file: {}", formats, fileName);
+        } catch (IOException | TemplateException | XMLStreamException | IllegalStateException e) {
+            throw new ExcelExportException("导出失败：" + fileName, e);
+        } catch (UncheckedIOException e) {
+            throw new ExcelExportException("导出失败：" + fileName, e.getCause());
+        } finally {
+            for (int i = 0; i < targets.size(); i++) {
+                ExportTarget target = targets.get(i);
+                target.close();
+                if (!success) {
+                    FileUtils.deleteQuietly(target.file);
+                }
+                // 分配的字节数只计入第一种格式
+                recordMetrics(target.format, target.stats, start, i == 0 ? allocatedBefore : -1, success);
+            }
+        }
+        Map<ExcelFormat, File> files = new EnumMap<>(ExcelFormat.class);
+        for (ExportTarget target : targets) {
+            files.put(target.format, target.file);
+        }
+        return files;
+    }
+
+    /**
+     * description: 用同一个模板批量导出到exportDir下，每个item一个文件。模板只获取一次，所有文件共用编译后的模板、
+     * 蓝图和解析后的样式；各个文件在executor中并行导出，同时导出的文件不超过parallelism个，
+     * items在有空闲时才继续读取，因此可以是延迟生成的Stream。executor拒绝任务时在当前线程导出。
+     * 单个文件失败不影响其他文件，结果按items的顺序返回，模板不存在时整批失败。items在方法返回或抛出异常前关闭
+     *
+     * @param format
+     * @param templateName
+     * @param items
+     * @param executor
+     * @param parallelism
+     * @return java.util.List<com.henry.cn.exportexcel.writer.ExcelBatchResult>
+     */
+    public List<ExcelBatchResult> writeExcelBatch(ExcelFormat format, String templateName,
+                                                  Stream<ExcelBatchItem> items, Executor executor,
+                                                  int parallelism) {
+        // items可能持有数据库游标等资源，无论成功还是失败都在导出结束后关闭
+        try (Stream<ExcelBatchItem> stream = items) {
+            if (exportDir == null) {
+                throw new IllegalStateException("exportDir is not configured");
+            }
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+            }
+            long start = System.nanoTime();
+            Template template;
+            try {
+                template = getTemplate(templateName);
+            } catch (IOException e) {
+                throw new ExcelExportException("导出失败：" + templateName, e);
+            }
+            Semaphore permits = new Semaphore(parallelism);
+            List<CompletableFuture<ExcelBatchResult>> futures = new ArrayList<>();
+            Iterator<ExcelBatchItem> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                ExcelBatchItem item = iterator.next();
+                CompletableFuture<ExcelBatchResult> future = new CompletableFuture<>();
+                futures.add(future);
+                permits.acquireUninterruptibly();
+                Runnable job = () -> {
+                    try {
+                        File file = FileUtils.getFile(exportDir, item.getFileName() + format.getExtension());
+                        writeExcel(format, item.getDataMap(), templateName, template, file, item.getImages());
+                        future.complete(ExcelBatchResult.success(item, file));
+                    } catch (Throwable e) {
+                        future.complete(ExcelBatchResult.failure(item, e));
+                    } finally {
+                        permits.release();
+                    }
+                };
+                try {
+                    executor.execute(job);
+                } catch (RejectedExecutionException e) {
+                    job.run();
+                }
+            }
+            List<ExcelBatchResult> results = new ArrayList<>(futures.size());
+            int failures = 0;
+            for (CompletableFuture<ExcelBatchResult> future : futures) {
+                ExcelBatchResult result = future.join();
+                if (!result.isSuccess()) {
+                    failures++;
+                }
+                results.add(result);
+            }
+            log.info("批量导出结束, template: {}, 成功: {}, 失败: {}, 耗时: {}ms", templateName, results.size() - failures,
+                    failures, (System.nanoTime() - start) / 1_000_000);
+            return results;
+        }
+    }
+
+    /**
+     * description: 渲染和解析一次，把结果交给各个格式写入。模板、渲染和解析的耗时只计入第一种格式，
+     * 其他格式的sheetsNanos只包含自身写入sheet的耗时
+     *
+     * @param targets
+     * @param dataMap
+     * @param templateName
+     * @return void
+     */
+    private void writeTargets(List<ExportTarget> targets, Map dataMap, String templateName)
+            throws IOException, TemplateException, XMLStreamException {
+        ExportTarget first = targets.get(0);
+        Template template = resolveTemplate(templateName, null, first.stats);
+        if (sheetExecutor == null) {
+            List<ExcelSheetHandler> handlers = new ArrayList<>(targets.size());
+            for (ExportTarget target : targets) {
+                handlers.add(target.handler);
+            }
+            writeSheets(template, dataMap, new TeeSheetHandler(handlers), first::getStyles, first.stats);
+            for (ExportTarget target : targets.subList(1, targets.size())) {
+                first.stats.sheetsNanos -= target.stats.handlerNanos;
+                target.stats.sheetsNanos = target.stats.handlerNanos;
+            }
+            for (ExportTarget target : targets) {
+                target.finish();
+            }
+            return;
+        }
+        RecordedWorkbook recorded = new RecordedWorkbook();
+        writeSheets(template, dataMap, recorded, recorded::getStyles, first.stats);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[targets.size()];
+        for (int i = 0; i < futures.length; i++) {
+            ExportTarget target = targets.get(i);
+            futures[i] = CompletableFuture.runAsync(() -> {
+                long start = System.nanoTime();
+                recorded.replay(target.handler);
+                target.stats.sheetsNanos += System.nanoTime() - start;
+                try {
+                    target.finish();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, sheetExecutor);
+        }
+        try {
+            // 等待所有格式结束后再返回，失败时不会有格式仍在写入将被删除的文件
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * description: 使用调用方创建的workbook导出，workbook只能使用一次
+     *
+     * @param wb
+     * @param dataMap
+     * @param templateName
+     * @param file
+     * @param images
+     * @return void
+     */
+    void writeExcel(Workbook wb, Map dataMap, String templateName, File file, List<ExcelImage> images) {
+        writeExcel(wb, dataMap, templateName, null, file, images);
+    }
+
+    private void writeExcel(Workbook wb, Map dataMap, String templateName, Template template, File file,
+                            List<ExcelImage> images) {
+        ExportStats stats = new ExportStats();
+        long start = System.nanoTime();
+        long allocatedBefore = allocatedBytes();
+        boolean success = false;
+        try {
+            buildWorkbook(wb, dataMap, resolveTemplate(templateName, template, stats), images, stats);
+            // 数据全部生成后再创建文件，失败时不会留下空文件
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                writeWorkbook(wb, outputStream, stats);
+            }
+            success = true;
+            log.info("导出成功, file: {}", file.getAbsoluteFile());
+        } catch (IOException | TemplateException | XMLStreamException | IllegalStateException e) {
+            throw new ExcelExportException("导出失败：" + file.getAbsoluteFile(), e);
+        } finally {
+            disposeWorkbook(wb);
+            recordMetrics(ExcelFormat.of(wb), stats, start, allocatedBefore, success);
+        }
+    }
+
+    /**
+     * description: 不创建workbook，边解析边直接写出xlsx到文件，失败时删除已写出的部分
+     *
+     * @param dataMap
+     * @param templateName
+     * @param template     不为空时直接使用
+     * @param file
+     * @param images
+     * @return void
+     */
+    private void writeDirect(Map dataMap, String templateName, Template template, File file,
+                             List<ExcelImage> images) {
+        ExportStats stats = new ExportStats();
+        long start = System.nanoTime();
+        long allocatedBefore = allocatedBytes();
+        boolean success = false;
+        try {
+            Template resolved = resolveTemplate(templateName, template, stats);
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                writeDirect(dataMap, resolved, outputStream, images, stats);
+            }
+            success = true;
+            log.info("导出成功, file: {}", file.getAbsoluteFile());
+        } catch (IOException | TemplateException | XMLStreamException | IllegalStateException e) {
+            throw new ExcelExportException("导出失败：" + file.getAbsoluteFile(), e);
+        } catch (UncheckedIOException e) {
+            throw new ExcelExportException("导出失败：" + file.getAbsoluteFile(), e.getCause());
+        } finally {
+            if (!success) {
+                FileUtils.deleteQuietly(file);
+            }
+            recordMetrics(ExcelFormat.XLSX_DIRECT, stats, start, allocatedBefore, success);
+        }
+    }
+
+    /**
+     * description: 不创建workbook，边解析边直接写出xlsx到输出流，结束后flush，但不关闭outputStream
+     *
+     * @param dataMap
+     * @param templateName
+     * @param outputStream
+     * @param images
+     * @return void
+     */
+    private void writeDirect(Map dataMap, String templateName, OutputStream outputStream, List<ExcelImage> images) {
+        ExportStats stats = new ExportStats();
+        long start = System.nanoTime();
+        long allocatedBefore = allocatedBytes();
+        boolean success = false;
+        try {
+            writeDirect(dataMap, resolveTemplate(templateName, null, stats), outputStream, images, stats);
+            success = true;
+            log.info("导出成功, template: {}", templateName);
+        } catch (IOException | TemplateException | XMLStreamException | IllegalStateException e) {
+            throw new ExcelExportException("导出失败：" + templateName, e);
+        } catch (UncheckedIOException e) {
+            throw new ExcelExportException("导出失败：" + templateName, e.getCause());
+        } finally {
+            recordMetrics(ExcelFormat.XLSX_DIRECT, stats, start, allocatedBefore, success);
+        }
+    }
+
+    /**
+     * description: 渲染模板后由{@link XlsxDirectWriter}逐行写出。各个sheet在解析过程中写出，
+     * 样式、workbook和包结构在所有sheet之后写出，writeNanos只包含这一部分
+     *
+     * @param dataMap
+     * @param template
+     * @param outputStream
+     * @param images
+     * @param stats
+     * @return void
+     */
+    private void writeDirect(Map dataMap, Template template, OutputStream outputStream, List<ExcelImage> images,
+                             ExportStats stats) throws IOException, TemplateException, XMLStreamException {
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        BufferedOutputStream bufferedStream = new BufferedOutputStream(countingStream, OUTPUT_BUFFER_SIZE);
+        XlsxDirectWriter directWriter = new XlsxDirectWriter(bufferedStream, maxCellStyles, styleOverflowPolicy,
+                images, this::readImage, stats);
+        writeSheets(template, dataMap, directWriter, directWriter::getStyles, stats);
+        long sheetsEnd = System.nanoTime();
+        directWriter.finish();
+        bufferedStream.flush();
+        stats.writeNanos = System.nanoTime() - sheetsEnd;
+        stats.bytesWritten = countingStream.getByteCount();
+        XlsxStyles xlsxStyles = directWriter.getXlsxStyles();
+        stats.styles = xlsxStyles.getCellStyleCount();
+        stats.collapsedStyles = xlsxStyles.getCollapsedStyleCount();
+        stats.degradedStyles = xlsxStyles.getDegradedStyleCount();
+    }
+
+    private void buildWorkbook(Workbook wb, Map dataMap, Template template, List<ExcelImage> images,
+                               ExportStats stats) throws IOException, TemplateException, XMLStreamException {
+        // 数据和图片共用同一个context，每个sheet的画布只创建一次
+        WorkbookContext context = new WorkbookContext(wb, maxCellStyles, styleOverflowPolicy);
+        writeData(context, template, dataMap, stats);
+        if (CollectionUtils.isNotEmpty(images)) {
+            long imagesStart = System.nanoTime();
+            writeImageInExcel(context, images, this::readImage);
+            stats.imagesNanos = System.nanoTime() - imagesStart;
+            stats.images = images.size();
+        }
+    }
+
+    /**
+     * description: 获取导出使用的模板，已经获取过的模板直接使用，否则按名称获取并记录耗时
+     *
+     * @param templateName
+     * @param template
+     * @param stats
+     * @return freemarker.template.Template
+     */
+    private Template resolveTemplate(String templateName, Template template, ExportStats stats) throws IOException {
+        if (template != null) {
+            return template;
+        }
+        long start = System.nanoTime();
+        Template resolved = getTemplate(templateName);
+        stats.templateNanos = System.nanoTime() - start;
+        return resolved;
+    }
+
+    /**
+     * description: 未开启分配采样时返回-1
+     *
+     * @return long
+     */
+    private long allocatedBytes() {
+        return metrics == null ? -1 : metrics.currentThreadAllocatedBytes();
+    }
+
+    private void recordMetrics(ExcelFormat format, ExportStats stats, long start, long allocatedBefore,
+                               boolean success) {
+        if (metrics == null) {
+            return;
+        }
+        if (allocatedBefore >= 0) {
+            stats.allocatedBytes = metrics.currentThreadAllocatedBytes() - allocatedBefore;
+        }
+        metrics.record(format, stats, System.nanoTime() - start, success);
+    }
+
+    /**
+     * description: 带缓冲写出workbook。XSSF写完后会关闭传入的流，这里屏蔽关闭，由调用方决定何时关闭
+     *
+     * @param wb
+     * @param outputStream
+     * @return void
+     */
+    private static void writeWorkbook(Workbook wb, OutputStream outputStream, ExportStats stats)
+            throws IOException {
+        long start = System.nanoTime();
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        BufferedOutputStream bufferedStream = new BufferedOutputStream(countingStream, OUTPUT_BUFFER_SIZE);
+        wb.write(new CloseShieldOutputStream(bufferedStream));
+        bufferedStream.flush();
+        stats.writeNanos = System.nanoTime() - start;
+        stats.bytesWritten = countingStream.getByteCount();
+    }
+
+    Template getTemplate(String templateName) throws IOException {
+        return templateRegistry.get(templateName);
+    }
+
+    Workbook createWorkbook(ExcelFormat format) {
+        switch (format) {
+            case XLS:
+                return new HSSFWorkbook();
+            case XLSX_STREAMING:
+                return new SXSSFWorkbook(null, rowAccessWindowSize, compressTempFiles);
+            case XLSX_DIRECT:
+                throw new IllegalArgumentException("XLSX_DIRECT格式不使用workbook");
+            default:
+                return new XSSFWorkbook();
+        }
+    }
+
+    /**
+     * description: 流式workbook会在磁盘上生成临时文件，导出结束后需要清理
+     *
+     * @param wb
+     * @return void
+     */
+    static void disposeWorkbook(Workbook wb) {
+        if (wb instanceof SXSSFWorkbook) {
+            ((SXSSFWorkbook) wb).dispose();
+        }
+    }
+
+    /**
+     * description: 边解析边写入workbook，解析器不保留已写入的行
+     *
+     * @param context
+     * @param template
+     * @param dataMap
+     * @param stats
+     * @return void
+     */
+    private void writeData(WorkbookContext context, Template template, Map dataMap, ExportStats stats)
+            throws XMLStreamException, IOException, TemplateException {
+        SheetWriter sheetWriter = new SheetWriter(context, stats);
+        writeSheets(template, dataMap, sheetWriter, sheetWriter::getStyles, stats);
+        stats.styles = context.getCellStyleCount();
+        stats.collapsedStyles = context.getCollapsedStyleCount();
+        stats.degradedStyles = context.getDegradedStyleCount();
+        log.debug("创建样式: {}, 合并的重复样式: {}, 超出上限的样式: {}", stats.styles, stats.collapsedStyles,
+                stats.degradedStyles);
+    }
+
+    /**
+     * description: 模板能编译为蓝图时直接把数据绑定到handler，否则渲染模板后解析渲染结果。
+     * 使用蓝图时没有渲染阶段，sheetsNanos为绑定和写入sheet的耗时
+     *
+     * @param template
+     * @param dataMap
+     * @param handler
+     * @param parsedStyles 解析结束后获取handler收到的样式
+     * @param stats
+     * @return void
+     */
+    private void writeSheets(Template template, Map dataMap, ExcelSheetHandler handler,
+                             Supplier<Map<String, ExcelStyle>> parsedStyles, ExportStats stats)
+            throws XMLStreamException, IOException, TemplateException {
+        long start = System.nanoTime();
+        TemplateBlueprint blueprint = templateRegistry.getBlueprint(template);
+        if (blueprint != null) {
+            blueprint.bind(dataMap, handler);
+            stats.sheetsNanos = System.nanoTime() - start;
+            return;
+        }
+        if (renderExecutor != null) {
+            readPipedXml(template, dataMap, handler, parsedStyles, stats);
+            stats.sheetsNanos = System.nanoTime() - start;
+            return;
+        }
+        FastByteArrayOutputStream xmlBuffer = writeXml(dataMap, template);
+        long renderEnd = System.nanoTime();
+        stats.renderNanos = renderEnd - start;
+        readXml(template, xmlBuffer, handler, parsedStyles);
+        stats.sheetsNanos = System.nanoTime() - renderEnd;
+    }
+
+    /**
+     * description: 在renderExecutor中把模板渲染到管道，当前线程同时从管道解析，内存中只保留管道中的数据。
+     * 渲染失败时解析只能读到不完整的xml，抛出渲染的异常；解析或handler失败时关闭管道，渲染随之结束
+     *
+     * @param template
+     * @param dataMap
+     * @param handler
+     * @param parsedStyles 解析结束后获取handler收到的样式
+     * @param stats
+     * @return void
+     */
+    private void readPipedXml(Template template, Map dataMap, ExcelSheetHandler handler,
+                              Supplier<Map<String, ExcelStyle>> parsedStyles, ExportStats stats)
+            throws XMLStreamException, IOException, TemplateException {
+        String templateName = template.getSourceName();
+        long lastModified = templateRegistry.getLastModified(template);
+        Map<String, ExcelStyle> compiledStyles = styleCache.get(templateName, lastModified);
+        PipedInputStream xmlStream = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream pipe = new PipedOutputStream(xmlStream);
+        CompletableFuture<Long> rendering = CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(pipe, charset))) {
+                template.process(dataMap, writer);
+            } catch (IOException | TemplateException e) {
+                throw new CompletionException(e);
+            }
+            return System.nanoTime() - start;
+        }, renderExecutor);
+        try {
+            ExcelXmlStreamReader.read(xmlStream, compiledStyles, handler);
+        } catch (XMLStreamException | RuntimeException e) {
+            xmlStream.close();
+            Throwable renderFailure = awaitRendering(rendering);
+            // 写入已关闭的管道产生的IOException是解析失败的结果
+            if (renderFailure instanceof TemplateException || renderFailure instanceof RuntimeException) {
+                renderFailure.addSuppressed(e);
+                throwRenderFailure(renderFailure);
+            }
+            throw e;
+        } finally {
+            xmlStream.close();
+        }
+        Throwable renderFailure = awaitRendering(rendering);
+        if (renderFailure != null) {
+            throwRenderFailure(renderFailure);
+        }
+        stats.renderNanos = rendering.join();
+        if (compiledStyles == null && parsedStyles.get() != null) {
+            styleCache.put(templateName, lastModified, parsedStyles.get());
+        }
+    }
+
+    /**
+     * description: 等待渲染结束，返回渲染失败的原始异常，成功时返回null
+     *
+     * @param rendering
+     * @return java.lang.Throwable
+     */
+    private static Throwable awaitRendering(CompletableFuture<Long> rendering) {
+        try {
+            rendering.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+    private static void throwRenderFailure(Throwable renderFailure) throws IOException, TemplateException {
+        if (renderFailure instanceof TemplateException) {
+            throw (TemplateException) renderFailure;
+        }
+        if (renderFailure instanceof IOException) {
+            throw (IOException) renderFailure;
+        }
+        if (renderFailure instanceof Error) {
+            throw (Error) renderFailure;
+        }
+        throw (RuntimeException) renderFailure;
+    }
+
+    /**
+     * description: 将渲染结果逐行交给handler。同一模板的样式只在首次导出时解析，
+     * 之后按模板名称和最后修改时间从缓存中获取，因此模板的Styles节点中不能包含随数据变化的插值。
+     * 配置了sheetExecutor时各个sheet并行解析，回调handler仍在当前线程按顺序进行
+     *
+     * @param template
+     * @param xmlBuffer
+     * @param handler
+     * @param parsedStyles 解析结束后获取handler收到的样式
+     * @return void
+     */
+    private void readXml(Template template, FastByteArrayOutputStream xmlBuffer, ExcelSheetHandler handler,
+                         Supplier<Map<String, ExcelStyle>> parsedStyles) throws XMLStreamException, IOException {
+        String templateName = template.getSourceName();
+        long lastModified = templateRegistry.getLastModified(template);
+        Map<String, ExcelStyle> compiledStyles = styleCache.get(templateName, lastModified);
+        if (sheetExecutor != null && splittable) {
+            byte[] xml = xmlBuffer.toByteArrayUnsafe();
+            ExcelXmlStreamReader.readParallel(xml, xml.length, compiledStyles, handler, sheetExecutor);
+        } else {
+            ExcelXmlStreamReader.read(xmlBuffer.getInputStream(), compiledStyles, handler);
+        }
+        if (compiledStyles == null && parsedStyles.get() != null) {
+            styleCache.put(templateName, lastModified, parsedStyles.get());
+        }
+    }
+
+    /**
+     * description: 将模板渲染到内存中的分块缓冲区，解析器直接读取，不再落地临时xml文件
+     *
+     * @param dataMap  数据源
+     * @param template 模板
+     * @return org.springframework.util.FastByteArrayOutputStream
+     */
+    FastByteArrayOutputStream writeXml(Map dataMap, Template template) throws IOException, TemplateException {
+        // 分块缓冲区扩容时不复制已写入的数据，getInputStream也不会复制
+        FastByteArrayOutputStream xmlBuffer = new FastByteArrayOutputStream(XML_BUFFER_INITIAL_SIZE);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(xmlBuffer, charset));
+        template.process(dataMap, writer);
+        writer.flush();
+        return xmlBuffer;
+    }
+
+    /**
+     * description: description: 将图片写入Excel
+     *
+     * @param context
+     * @param excelImages
+     * @param imageReader
+     * @return void
+     * @author Hlingoes 2021/4/27
+     */
+    private void writeImageInExcel(WorkbookContext context, List<ExcelImage> excelImages,
+                                   XlsxDirectWriter.ImageReader imageReader) throws IOException {
+        for (ExcelImage excelImage : excelImages) {
+            writeImageInExcel(context, excelImage, imageReader);
+        }
+    }
+
+    /**
+     * description: 将图片写入Excel，直接写入图片文件的原始字节，格式由文件头决定，内容相同的图片只添加一次
+     *
+     * @param context
+     * @param excelImage
+     * @param imageReader
+     * @return void
+     * @author Hlingoes 2021/4/27
+     */
+    private void writeImageInExcel(WorkbookContext context, ExcelImage excelImage,
+                                   XlsxDirectWriter.ImageReader imageReader) throws IOException {
+        Workbook wb = context.getWorkbook();
+        Sheet sheet = wb.getSheetAt(excelImage.getSheetIndex());
+        if (ObjectUtils.isEmpty(sheet)) {
+            return;
+        }
+        // 画图的顶级管理器，一个sheet只有一个，与注释共用
+        Drawing<?> patriarch = context.getDrawing(sheet);
+        // anchor存储图片的属性，包括在Excel中的位置、大小等信息
+        ClientAnchor anchor = createAnchor(wb, excelImage);
+        ImageData imageData = imageReader.read(excelImage).forWorkbook(wb);
+        // 通过poi将图片写入到Excel中
+        int pictureIndex = context.addPicture(imageData.getHash(), imageData.getBytes(), imageData.getPictureType());
+        patriarch.createPicture(anchor, pictureIndex);
+    }
+
+    /**
+     * description: 按workbook的类型新建anchor并复制图片的位置，不修改调用方的anchor，
+     * 同一个ExcelImage可以同时写入多个workbook。anchor与workbook的类型不一致时失败
+     *
+     * @param wb
+     * @param excelImage
+     * @return org.apache.poi.ss.usermodel.ClientAnchor
+     */
+    private static ClientAnchor createAnchor(Workbook wb, ExcelImage excelImage) throws IOException {
+        ClientAnchor source = excelImage.getAnchor();
+        ClientAnchor anchor = wb.getCreationHelper().createClientAnchor();
+        if (!anchor.getClass().isInstance(source)) {
+            throw new IOException("图片的anchor与导出格式不匹配, sheet: " + excelImage.getSheetIndex() + ", anchor: "
+                    + (source == null ? null : source.getClass().getSimpleName()));
+        }
+        anchor.setCol1(source.getCol1());
+        anchor.setRow1(source.getRow1());
+        anchor.setDx1(source.getDx1());
+        anchor.setDy1(source.getDy1());
+        anchor.setCol2(source.getCol2());
+        anchor.setRow2(source.getRow2());
+        anchor.setDx2(source.getDx2());
+        anchor.setDy2(source.getDy2());
+        anchor.setAnchorType(ClientAnchor.AnchorType.DONT_MOVE_AND_RESIZE);
+        return anchor;
+    }
+
+    /**
+     * description: 文件经过缓存读取，其他来源在此时才读取内容，不缓存
+     *
+     * @param excelImage
+     * @return com.henry.cn.exportexcel.writer.ImageData
+     */
+    private ImageData readImage(ExcelImage excelImage) throws IOException {
+        if (excelImage.getImg() != null) {
+            return imageCache.get(excelImage.getImg());
+        }
+        if (excelImage.getSource() == null) {
+            throw new IOException("图片没有指定文件或内容, sheet: " + excelImage.getSheetIndex());
+        }
+        byte[] bytes = excelImage.getSource().getBytes();
+        if (bytes == null || bytes.length == 0) {
+            throw new IOException("图片内容为空, sheet: " + excelImage.getSheetIndex());
+        }
+        return ImageData.of(bytes);
+    }
+
+    /**
+     * description: 一次多格式导出中各个格式共用的图片读取，同一个ImageSource只调用一次，
+     * 读取结果在各个格式之间共享；图片文件本身经过imageCache缓存
+     *
+     * @return com.henry.cn.exportexcel.writer.XlsxDirectWriter.ImageReader
+     */
+    private XlsxDirectWriter.ImageReader sharedImageReader() {
+        Map<ImageSource, ImageData> imageMap = new IdentityHashMap<>();
+        return excelImage -> {
+            ImageSource source = excelImage.getImg() == null ? excelImage.getSource() : null;
+            if (source == null) {
+                return readImage(excelImage);
+            }
+            // 并行写入各个格式时，后到的格式等待第一次读取完成
+            synchronized (imageMap) {
+                ImageData imageData = imageMap.get(source);
+                if (imageData == null) {
+                    imageData = readImage(excelImage);
+                    imageMap.put(source, imageData);
+                }
+                return imageData;
+            }
+        };
+    }
+
+    /**
+     * description: 多格式导出中的一种格式，xls和xlsx等写入workbook，XLSX_DIRECT直接写出到文件
+     */
+    private class ExportTarget {
+
+        private final ExcelFormat format;
+
+        private final File file;
+
+        private final ExportStats stats = new ExportStats();
+
+        private final List<ExcelImage> images;
+
+        private final XlsxDirectWriter.ImageReader imageReader;
+
+        private final ExcelSheetHandler handler;
+
+        private Workbook wb;
+
+        private WorkbookContext context;
+
+        private SheetWriter sheetWriter;
+
+        private OutputStream fileStream;
+
+        private CountingOutputStream countingStream;
+
+        private BufferedOutputStream bufferedStream;
+
+        private XlsxDirectWriter directWriter;
+
+        private ExportTarget(ExcelFormat format, File file, List<ExcelImage> images,
+                             XlsxDirectWriter.ImageReader imageReader) throws IOException {
+            this.format = format;
+            this.file = file;
+            this.images = images;
+            this.imageReader = imageReader;
+            if (format == ExcelFormat.XLSX_DIRECT) {
+                fileStream = new FileOutputStream(file);
+                countingStream = new CountingOutputStream(fileStream);
+                bufferedStream = new BufferedOutputStream(countingStream, OUTPUT_BUFFER_SIZE);
+                directWriter = new XlsxDirectWriter(bufferedStream, maxCellStyles, styleOverflowPolicy, images,
+                        imageReader, stats);
+                handler = directWriter;
+            } else {
+                wb = createWorkbook(format);
+                context = new WorkbookContext(wb, maxCellStyles, styleOverflowPolicy);
+                sheetWriter = new SheetWriter(context, stats);
+                handler = sheetWriter;
+            }
+        }
+
+        private Map<String, ExcelStyle> getStyles() {
+            return directWriter != null ? directWriter.getStyles() : sheetWriter.getStyles();
+        }
+
+        /**
+         * description: 所有sheet写入后写出文件，workbook格式先写入图片
+         */
+        private void finish() throws IOException {
+            if (directWriter != null) {
+                long start = System.nanoTime();
+                directWriter.finish();
+                bufferedStream.flush();
+                fileStream.close();
+                stats.writeNanos = System.nanoTime() - start;
+                stats.bytesWritten = countingStream.getByteCount();
+                XlsxStyles xlsxStyles = directWriter.getXlsxStyles();
+                stats.styles = xlsxStyles.getCellStyleCount();
+                stats.collapsedStyles = xlsxStyles.getCollapsedStyleCount();
+                stats.degradedStyles = xlsxStyles.getDegradedStyleCount();
+                return;
+            }
+            stats.styles = context.getCellStyleCount();
+            stats.collapsedStyles = context.getCollapsedStyleCount();
+            stats.degradedStyles = context.getDegradedStyleCount();
+            if (CollectionUtils.isNotEmpty(images)) {
+                long imagesStart = System.nanoTime();
+                writeImageInExcel(context, images, imageReader);
+                stats.imagesNanos = System.nanoTime() - imagesStart;
+                stats.images = images.size();
+            }
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                writeWorkbook(wb, outputStream, stats);
+            }
+        }
+
+        private void close() {
+            if (wb != null) {
+                disposeWorkbook(wb);
+            }
+            if (fileStream != null) {
+                try {
+                    fileStream.close();
+                } catch (IOException e) {
+                    log.error("close export file fail: {}", file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * description: 导出引擎的配置，build后即不再依赖builder
+     */
+    public static final class Builder {
+
+        private File templateDir;
+
+        private File exportDir;
+
+        private String charset = "UTF-8";
+
+        private int rowAccessWindowSize = DEFAULT_ROW_ACCESS_WINDOW_SIZE;
+
+        private boolean compressTempFiles = true;
+
+        private Executor sheetExecutor;
+
+        private Executor renderExecutor;
+
+        private int maxCellStyles;
+
+        private StyleOverflowPolicy styleOverflowPolicy = StyleOverflowPolicy.FAIL;
+
+        private long imageCacheBytes = DEFAULT_IMAGE_CACHE_BYTES;
+
+        private MeterRegistry meterRegistry;
+
+        private boolean allocationSampling;
+
+        private boolean watchTemplates;
+
+        private boolean blueprintBinding = true;
+
+        private Builder() {
+        }
+
+        /**
+         * 模板所在目录，不设置时读取classpath下的template
+         */
+        public Builder templateDir(File templateDir) {
+            this.templateDir = templateDir;
+            return this;
+        }
+
+        /**
+         * 按文件名导出时的目录
+         */
+        public Builder exportDir(File exportDir) {
+            this.exportDir = exportDir;
+            return this;
+        }
+
+        /**
+         * 模板及渲染结果的编码
+         */
+        public Builder charset(String charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * 流式导出时内存中保留的行数
+         */
+        public Builder rowAccessWindowSize(int rowAccessWindowSize) {
+            this.rowAccessWindowSize = rowAccessWindowSize;
+            return this;
+        }
+
+        /**
+         * 流式导出时临时文件是否使用gzip压缩
+         */
+        public Builder compressTempFiles(boolean compressTempFiles) {
+            this.compressTempFiles = compressTempFiles;
+            return this;
+        }
+
+        /**
+         * 多sheet并行解析使用的线程池，例如ForkJoinPool或虚拟线程的executor，不设置时顺序解析
+         */
+        public Builder sheetExecutor(Executor sheetExecutor) {
+            this.sheetExecutor = sheetExecutor;
+            return this;
+        }
+
+        /**
+         * 渲染模板使用的线程池，设置后模板在其中渲染，导出线程同时解析，渲染结果不再整体缓存在内存中，
+         * 配合延迟加载的数据源可以用固定的内存导出任意行数。每次导出占用其中一个线程直到渲染结束，
+         * 不能与执行导出任务的有界线程池相同，否则线程池占满时导出会互相等待。设置后不再并行解析sheet
+         */
+        public Builder renderExecutor(Executor renderExecutor) {
+            this.renderExecutor = renderExecutor;
+            return this;
+        }
+
+        /**
+         * 单个workbook中样式数量的上限，不设置时使用文件格式的上限（xls为4000，xlsx为64000）
+         */
+        public Builder maxCellStyles(int maxCellStyles) {
+            this.maxCellStyles = maxCellStyles;
+            return this;
+        }
+
+        /**
+         * 样式数量达到上限后导出失败还是使用默认样式继续导出，默认导出失败
+         */
+        public Builder styleOverflowPolicy(StyleOverflowPolicy styleOverflowPolicy) {
+            this.styleOverflowPolicy = styleOverflowPolicy;
+            return this;
+        }
+
+        /**
+         * 跨导出缓存的图片文件总字节数，0表示不缓存
+         */
+        public Builder imageCacheBytes(long imageCacheBytes) {
+            this.imageCacheBytes = imageCacheBytes;
+            return this;
+        }
+
+        /**
+         * 发布导出耗时和数量指标的registry，不设置时不记录指标
+         */
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        /**
+         * 是否统计导出线程分配的字节数，依赖HotSpot的ThreadMXBean，只在设置了meterRegistry时生效
+         */
+        public Builder allocationSampling(boolean allocationSampling) {
+            this.allocationSampling = allocationSampling;
+            return this;
+        }
+
+        /**
+         * 是否监听模板目录，开启后模板编译一次常驻内存，文件修改后由监听线程重新编译，导出时不再检查模板文件
+         */
+        public Builder watchTemplates(boolean watchTemplates) {
+            this.watchTemplates = watchTemplates;
+            return this;
+        }
+
+        /**
+         * 是否把数据直接绑定到模板编译出的行蓝图，跳过FreeMarker渲染和xml解析，默认开启。
+         * 只有简单插值和包住整行的list的模板可以编译，其他模板不受影响
+         */
+        public Builder blueprintBinding(boolean blueprintBinding) {
+            this.blueprintBinding = blueprintBinding;
+            return this;
+        }
+
+        public ExcelExporter build() {
+            return new ExcelExporter(this);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.henry.cn.exportexcel.writer;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * description: 导出的文件格式
+ */
+public enum ExcelFormat {
+    /**
+     * 2003版的xls文件
+     */
+    XLS(".xls"),
+    /**
+     * 2007版的xlsx文件
+     */
+    XLSX(".xlsx"),
+    /**
+     * 以SXSSF流式方式生成的2007版xlsx文件，适用于大数据量导出
+     */
+    XLSX_STREAMING(".xlsx"),
+    /**
+     * 不经过POI的usermodel直接生成的2007版xlsx文件，适用于超大数据量导出，文本以inlineStr写在单元格内
+     */
+    XLSX_DIRECT(".xlsx");
+
+    private final String extension;
+
+    ExcelFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * description: 根据workbook的类型判断格式
+     *
+     * @param wb
+     * @return com.henry.cn.exportexcel.writer.ExcelFormat
+     */
+    static ExcelFormat of(Workbook wb) {
+        if (wb instanceof HSSFWorkbook) {
+            return XLS;
+        }
+        return wb instanceof SXSSFWorkbook ? XLSX_STREAMING : XLSX;
+    }
+}
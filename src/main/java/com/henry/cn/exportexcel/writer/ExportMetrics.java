@@ -0,0 +1,104 @@
+package com.henry.cn.exportexcel.writer;
+
+import io.micrometer.core.instrument.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * description: 将{@link ExportStats}发布到Micrometer。
+ * excel.export按格式和结果记录总耗时，excel.export.stage按阶段记录耗时，
+ * excel.export.rows等计数器记录导出的数据量，开启采样时excel.export.allocated记录导出线程分配的字节数
+ */
+class ExportMetrics {
+    private static final Logger log = LoggerFactory.getLogger(ExportMetrics.class);
+
+    private static final String PREFIX = "excel.export";
+
+    private final MeterRegistry registry;
+
+    private final com.sun.management.ThreadMXBean threadMXBean;
+
+    ExportMetrics(MeterRegistry registry, boolean allocationSampling) {
+        this.registry = registry;
+        this.threadMXBean = allocationSampling ? allocationMXBean() : null;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationMXBean() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (allocationMXBean.isThreadAllocatedMemorySupported()) {
+                allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+                return allocationMXBean;
+            }
+        }
+        log.warn("当前JVM不支持按线程统计分配的内存，忽略allocationSampling");
+        return null;
+    }
+
+    /**
+     * description: 当前线程累计分配的字节数，未开启采样时返回-1
+     *
+     * @return long
+     */
+    long currentThreadAllocatedBytes() {
+        if (threadMXBean == null) {
+            return -1;
+        }
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    void record(ExcelFormat format, ExportStats stats, long totalNanos, boolean success) {
+        String formatTag = format.name();
+        Timer.builder(PREFIX)
+                .description("excel导出总耗时")
+                .tags("format", formatTag, "outcome", success ? "success" : "failure")
+                .register(registry)
+                .record(totalNanos, TimeUnit.NANOSECONDS);
+        recordStage(formatTag, "template", stats.templateNanos);
+        recordStage(formatTag, "render", stats.renderNanos);
+        recordStage(formatTag, "parse", stats.parseNanos());
+        recordStage(formatTag, "styles", stats.stylesNanos);
+        recordStage(formatTag, "rows", stats.rowNanos());
+        recordStage(formatTag, "mergedRegions", stats.mergedRegionNanos);
+        recordStage(formatTag, "images", stats.imagesNanos);
+        recordStage(formatTag, "write", stats.writeNanos);
+        count(formatTag, "rows", stats.rows);
+        count(formatTag, "cells", stats.cells);
+        count(formatTag, "styles", stats.styles);
+        count(formatTag, "collapsedStyles", stats.collapsedStyles);
+        count(formatTag, "degradedStyles", stats.degradedStyles);
+        count(formatTag, "mergedRegions", stats.mergedRegions);
+        count(formatTag, "images", stats.images);
+        count(formatTag, "bytes", stats.bytesWritten);
+        if (stats.allocatedBytes >= 0) {
+            DistributionSummary.builder(PREFIX + ".allocated")
+                    .description("导出线程分配的字节数，不包含并行解析sheet的线程")
+                    .baseUnit("bytes")
+                    .tag("format", formatTag)
+                    .register(registry)
+                    .record(stats.allocatedBytes);
+        }
+    }
+
+    private void recordStage(String format, String stage, long nanos) {
+        Timer.builder(PREFIX + ".stage")
+                .description("excel导出各阶段的耗时")
+                .tags("format", format, "stage", stage)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void count(String format, String name, long amount) {
+        if (amount <= 0) {
+            return;
+        }
+        Counter.builder(PREFIX + "." + name)
+                .tag("format", format)
+                .register(registry)
+                .increment(amount);
+    }
+}
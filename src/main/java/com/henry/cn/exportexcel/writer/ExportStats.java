@@ -0,0 +1,61 @@
+package com.henry.cn.exportexcel.writer;
+
+/**
+ * description: 单次导出各阶段的耗时和数量，只在导出线程内累加，导出结束后交给{@link ExportMetrics}
+ */
+class ExportStats {
+
+    long templateNanos;
+
+    /**
+     * 模板渲染的耗时，配置了renderExecutor时渲染与解析同时进行，该耗时包含在sheetsNanos的时间段内
+     */
+    long renderNanos;
+    /**
+     * 解析和写入sheet的总耗时，流式解析时两者交替进行，解析耗时为其减去handlerNanos。使用蓝图时解析耗时即为绑定耗时
+     */
+    long sheetsNanos;
+    /**
+     * {@link SheetWriter}回调的耗时，包含stylesNanos和mergedRegionNanos
+     */
+    long handlerNanos;
+
+    long stylesNanos;
+
+    long mergedRegionNanos;
+
+    long imagesNanos;
+
+    long writeNanos;
+
+    long rows;
+
+    long cells;
+
+    /**
+     * 创建的CellStyle数量，外观相同的样式只计一次
+     */
+    long styles;
+
+    long collapsedStyles;
+
+    long degradedStyles;
+
+    long mergedRegions;
+
+    long images;
+
+    long bytesWritten;
+    /**
+     * 导出线程分配的字节数，未开启采样时为-1
+     */
+    long allocatedBytes = -1;
+
+    long parseNanos() {
+        return Math.max(0, sheetsNanos - handlerNanos);
+    }
+
+    long rowNanos() {
+        return Math.max(0, handlerNanos - stylesNanos - mergedRegionNanos);
+    }
+}
@@ -0,0 +1,78 @@
+package com.henry.cn.exportexcel.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * description: 按文件缓存图片的原始字节，logo等每次导出都使用的图片只读取一次。
+ * 按最近使用淘汰，缓存的总字节数不超过maxBytes，文件修改后缓存自动失效
+ */
+class ImageCache {
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, CachedImage> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * description: 读取图片，文件未修改时使用缓存
+     *
+     * @param file
+     * @return com.henry.cn.exportexcel.writer.ImageData
+     */
+    ImageData get(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        synchronized (this) {
+            CachedImage cached = cache.get(key);
+            if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+                return cached.imageData;
+            }
+        }
+        // 读取文件时不持有锁
+        ImageData imageData = ImageData.of(Files.readAllBytes(file.toPath()));
+        put(key, new CachedImage(lastModified, imageData.getBytes().length, imageData));
+        return imageData;
+    }
+
+    private synchronized void put(String key, CachedImage image) {
+        if (image.length > maxBytes) {
+            return;
+        }
+        CachedImage previous = cache.put(key, image);
+        if (previous != null) {
+            totalBytes -= previous.length;
+        }
+        totalBytes += image.length;
+        Iterator<Map.Entry<String, CachedImage>> iterator = cache.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            totalBytes -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+
+    private static class CachedImage {
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final ImageData imageData;
+
+        private CachedImage(long lastModified, long length, ImageData imageData) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.imageData = imageData;
+        }
+    }
+}
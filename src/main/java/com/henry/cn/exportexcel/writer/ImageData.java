@@ -0,0 +1,150 @@
+package com.henry.cn.exportexcel.writer;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * description: 待写入workbook的图片原始字节。格式根据文件头判断，workbook支持该格式时直接写入原始字节，
+ * 不解码；只有workbook不支持的格式（例如xls中的gif、bmp）才解码后转为png
+ */
+final class ImageData {
+
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final byte[] JPEG_HEADER = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+
+    private static final byte[] GIF_HEADER = {'G', 'I', 'F', '8'};
+
+    private static final byte[] BMP_HEADER = {'B', 'M'};
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] bytes;
+    /**
+     * XSSFWorkbook.PICTURE_TYPE_*，无法识别时为-1
+     */
+    private final int pictureType;
+    /**
+     * 内容的SHA-256，同一workbook中内容相同的图片只添加一次
+     */
+    private final String hash;
+    /**
+     * xls不支持原格式时转换得到的png
+     */
+    private volatile ImageData png;
+
+    private ImageData(byte[] bytes, int pictureType) {
+        this.bytes = bytes;
+        this.pictureType = pictureType;
+        this.hash = sha256(bytes);
+    }
+
+    static ImageData of(byte[] bytes) {
+        return new ImageData(bytes, sniff(bytes));
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    int getPictureType() {
+        return pictureType;
+    }
+
+    String getHash() {
+        return hash;
+    }
+
+    /**
+     * description: 返回可以写入wb的图片，原格式不被支持时转为png，转换结果会保留以便下次使用
+     *
+     * @param wb
+     * @return com.henry.cn.exportexcel.writer.ImageData
+     */
+    ImageData forWorkbook(Workbook wb) throws IOException {
+        return isSupported(wb) ? this : toPng();
+    }
+
+    /**
+     * description: 返回可以直接写入xlsx的图片，png、jpeg、gif、bmp保持原样，其他格式转为png
+     *
+     * @return com.henry.cn.exportexcel.writer.ImageData
+     */
+    ImageData forXlsx() throws IOException {
+        return pictureType >= 0 ? this : toPng();
+    }
+
+    private ImageData toPng() throws IOException {
+        ImageData converted = png;
+        if (converted == null) {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image == null) {
+                throw new IOException("不支持的图片格式");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            converted = new ImageData(out.toByteArray(), Workbook.PICTURE_TYPE_PNG);
+            png = converted;
+        }
+        return converted;
+    }
+
+    private boolean isSupported(Workbook wb) {
+        if (pictureType == Workbook.PICTURE_TYPE_PNG || pictureType == Workbook.PICTURE_TYPE_JPEG) {
+            return true;
+        }
+        return pictureType >= 0 && !(wb instanceof HSSFWorkbook);
+    }
+
+    private static int sniff(byte[] bytes) {
+        if (startsWith(bytes, PNG_HEADER)) {
+            return Workbook.PICTURE_TYPE_PNG;
+        }
+        if (startsWith(bytes, JPEG_HEADER)) {
+            return Workbook.PICTURE_TYPE_JPEG;
+        }
+        if (startsWith(bytes, GIF_HEADER)) {
+            return XSSFWorkbook.PICTURE_TYPE_GIF;
+        }
+        if (startsWith(bytes, BMP_HEADER)) {
+            return XSSFWorkbook.PICTURE_TYPE_BMP;
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] header) {
+        if (bytes.length < header.length) {
+            return false;
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (bytes[i] != header[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String sha256(byte[] bytes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
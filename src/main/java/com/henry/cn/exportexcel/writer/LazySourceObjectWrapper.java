@@ -0,0 +1,36 @@
+package com.henry.cn.exportexcel.writer;
+
+import freemarker.template.DefaultIteratorAdapter;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.Version;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.BaseStream;
+
+/**
+ * description: 让模板中的&lt;#list&gt;可以遍历延迟加载的数据源。Iterator、Iterable、Stream和Spliterator
+ * 都包装为只能遍历一次的序列，渲染到哪一行才从数据源中取哪一行，数据不需要预先全部放入内存。
+ * 这类数据源不支持?size等需要预先知道元素个数的内建函数
+ */
+class LazySourceObjectWrapper extends DefaultObjectWrapper {
+
+    LazySourceObjectWrapper(Version incompatibleImprovements) {
+        super(incompatibleImprovements);
+        // 默认只把Collection当作序列，其他Iterable只能当作普通对象
+        setIterableSupport(true);
+    }
+
+    @Override
+    protected TemplateModel handleUnknownType(Object obj) throws TemplateModelException {
+        if (obj instanceof BaseStream) {
+            return DefaultIteratorAdapter.adapt(((BaseStream<?, ?>) obj).iterator(), this);
+        }
+        if (obj instanceof Spliterator) {
+            return DefaultIteratorAdapter.adapt(Spliterators.iterator((Spliterator<?>) obj), this);
+        }
+        return super.handleUnknownType(obj);
+    }
+}
@@ -0,0 +1,43 @@
+package com.henry.cn.exportexcel.writer;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * description: 单个sheet中合并单元格的重叠检查。按列保存已占用的行区间，每次检查只涉及区域所在的列，
+ * 代替POI的addMergedRegion逐个比较已有合并单元格的校验
+ */
+class MergedRegionIndex {
+
+    /**
+     * 列号 -> (起始行 -> 结束行)，同一列中的区间互不重叠
+     */
+    private final Map<Integer, TreeMap<Integer, Integer>> columns = new HashMap<>();
+
+    /**
+     * description: 登记合并单元格，与已登记的区域重叠时抛出IllegalStateException，此时不登记任何列
+     *
+     * @param range
+     * @return void
+     */
+    void add(CellRangeAddress range) {
+        int firstRow = range.getFirstRow();
+        int lastRow = range.getLastRow();
+        for (int col = range.getFirstColumn(); col <= range.getLastColumn(); col++) {
+            TreeMap<Integer, Integer> rows = columns.get(col);
+            if (rows == null) {
+                continue;
+            }
+            Map.Entry<Integer, Integer> before = rows.floorEntry(lastRow);
+            if (before != null && before.getValue() >= firstRow) {
+                throw new IllegalStateException("合并单元格" + range.formatAsString() + "与已有的合并单元格重叠");
+            }
+        }
+        for (int col = range.getFirstColumn(); col <= range.getLastColumn(); col++) {
+            columns.computeIfAbsent(col, key -> new TreeMap<>()).put(firstRow, lastRow);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.ExcelRow;
+import com.henry.cn.exportexcel.excel.ExcelStyle;
+import com.henry.cn.exportexcel.excel.ExcelWorksheet;
+import com.henry.cn.exportexcel.reader.ExcelSheetHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * description: 与文件格式无关的解析结果，记录全部样式、sheet和行，之后可以同时回放给多个handler。
+ * 记录期间占用的内存与行数成正比，只在需要并行写入多种格式时使用
+ */
+class RecordedWorkbook implements ExcelSheetHandler {
+
+    private Map<String, ExcelStyle> styles;
+
+    private final List<ExcelWorksheet> worksheets = new ArrayList<>();
+
+    private final List<List<ExcelRow>> rows = new ArrayList<>();
+
+    @Override
+    public void styles(Map<String, ExcelStyle> styles) {
+        this.styles = styles;
+    }
+
+    @Override
+    public void startSheet(ExcelWorksheet worksheet) {
+        worksheets.add(worksheet);
+        rows.add(new ArrayList<>());
+    }
+
+    @Override
+    public void row(ExcelRow excelRow) {
+        rows.get(rows.size() - 1).add(excelRow);
+    }
+
+    @Override
+    public void endSheet(ExcelWorksheet worksheet) {
+    }
+
+    Map<String, ExcelStyle> getStyles() {
+        return styles;
+    }
+
+    /**
+     * description: 按解析时的顺序回调handler，记录完成后可以在多个线程中同时回放
+     *
+     * @param handler
+     * @return void
+     */
+    void replay(ExcelSheetHandler handler) {
+        if (styles != null) {
+            handler.styles(styles);
+        }
+        for (int i = 0; i < worksheets.size(); i++) {
+            ExcelWorksheet worksheet = worksheets.get(i);
+            handler.startSheet(worksheet);
+            for (ExcelRow row : rows.get(i)) {
+                handler.row(row);
+            }
+            handler.endSheet(worksheet);
+        }
+    }
+}
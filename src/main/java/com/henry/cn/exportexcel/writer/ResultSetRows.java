@@ -0,0 +1,98 @@
+package com.henry.cn.exportexcel.writer;
+
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * description: 把JDBC的ResultSet作为模板中&lt;#list&gt;的数据源，导出到哪一行才读取哪一行。
+ * 每行转换为列名不区分大小写的Map，模板中可以用${row.stationName}读取STATIONNAME列。
+ * ResultSet只能遍历一次，由调用方在导出结束后关闭；配合XLSX_STREAMING或XLSX_DIRECT导出时内存占用与行数无关。
+ * <p>
+ * 驱动是否按fetchSize分批读取取决于驱动本身，例如MySQL需要fetchSize为Integer.MIN_VALUE或开启useCursorFetch
+ */
+public class ResultSetRows implements Iterator<Map<String, Object>> {
+
+    private final ResultSet resultSet;
+
+    private String[] columnLabels;
+    /**
+     * 已调用next但还没有被取走的行
+     */
+    private boolean fetched;
+
+    private boolean exhausted;
+
+    /**
+     * description: 使用驱动默认的fetchSize
+     *
+     * @param resultSet
+     */
+    public ResultSetRows(ResultSet resultSet) {
+        this.resultSet = resultSet;
+    }
+
+    /**
+     * description: 设置每次从数据库读取的行数
+     *
+     * @param resultSet
+     * @param fetchSize
+     */
+    public ResultSetRows(ResultSet resultSet, int fetchSize) {
+        this(resultSet);
+        try {
+            resultSet.setFetchSize(fetchSize);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("fetch size is not supported: " + fetchSize, e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!fetched && !exhausted) {
+            try {
+                fetched = resultSet.next();
+            } catch (SQLException e) {
+                throw new ExcelExportException("读取ResultSet失败", e);
+            }
+            exhausted = !fetched;
+        }
+        return fetched;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        try {
+            return readRow();
+        } catch (SQLException e) {
+            throw new ExcelExportException("读取ResultSet失败", e);
+        }
+    }
+
+    private Map<String, Object> readRow() throws SQLException {
+        if (columnLabels == null) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            columnLabels = new String[metaData.getColumnCount()];
+            for (int i = 0; i < columnLabels.length; i++) {
+                columnLabels[i] = metaData.getColumnLabel(i + 1);
+            }
+        }
+        Map<String, Object> row = new LinkedCaseInsensitiveMap<>(columnLabels.length);
+        for (int i = 0; i < columnLabels.length; i++) {
+            Object value = resultSet.getObject(i + 1);
+            // 模板无法输出Clob，按字符串读取
+            row.put(columnLabels[i], value instanceof Clob ? resultSet.getString(i + 1) : value);
+        }
+        return row;
+    }
+}
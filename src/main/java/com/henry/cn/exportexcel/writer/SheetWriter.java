@@ -0,0 +1,543 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.*;
+import com.henry.cn.exportexcel.reader.ExcelSheetHandler;
+import com.henry.cn.exportexcel.reader.ExcelXmlReader;
+import com.henry.cn.exportexcel.reader.WorkbookContext;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.util.*;
+
+/**
+ * description: 将解析器逐行回调的数据写入workbook的sheet
+ */
+class SheetWriter implements ExcelSheetHandler {
+
+    private final WorkbookContext context;
+
+    private final Workbook wb;
+    /**
+     * SXSSF只在内存中保留有限的行，合并单元格的边框需要随行设置
+     */
+    private final boolean streaming;
+
+    private Map<String, ExcelStyle> styles;
+
+    private Map<String, CellStyle> styleMap = Collections.emptyMap();
+
+    private Sheet sheet;
+    /**
+     * 当前行在xml中的序号
+     */
+    private int rowPosition;
+    /**
+     * 当前行在sheet中的行号
+     */
+    private int createRowIndex;
+    /**
+     * 已经创建的最后一行
+     */
+    private int lastRowIndex;
+    /**
+     * 非流式时为sheet的全部合并单元格，流式时为尚未写完的合并单元格
+     */
+    private List<ExcelCellRangeAddress> cellRangeAddresses;
+    /**
+     * 当前sheet中合并单元格的重叠检查
+     */
+    private MergedRegionIndex mergedRegionIndex;
+
+    private final List<ExcelCellRangeAddress> rowRanges = new ArrayList<>();
+    /**
+     * 当前sheet中待创建的注释，sheet结束时一次性创建
+     */
+    private final List<PendingComment> comments = new ArrayList<>();
+    /**
+     * 各个回调的耗时和写入的数量
+     */
+    private final ExportStats stats;
+
+    SheetWriter(WorkbookContext context) {
+        this(context, new ExportStats());
+    }
+
+    SheetWriter(WorkbookContext context, ExportStats stats) {
+        this.context = context;
+        this.wb = context.getWorkbook();
+        this.streaming = wb instanceof SXSSFWorkbook;
+        this.stats = stats;
+    }
+
+    @Override
+    public void styles(Map<String, ExcelStyle> styles) {
+        long start = System.nanoTime();
+        this.styles = styles;
+        this.styleMap = ExcelXmlReader.createCellStyles(context, styles);
+        long elapsed = System.nanoTime() - start;
+        stats.stylesNanos += elapsed;
+        stats.handlerNanos += elapsed;
+    }
+
+    Map<String, ExcelStyle> getStyles() {
+        return styles;
+    }
+
+    @Override
+    public void startSheet(ExcelWorksheet worksheet) {
+        long start = System.nanoTime();
+        sheet = wb.createSheet(worksheet.getName());
+        rowPosition = 0;
+        createRowIndex = 0;
+        lastRowIndex = -1;
+        cellRangeAddresses = streaming ? new LinkedList<>() : new ArrayList<>();
+        mergedRegionIndex = new MergedRegionIndex();
+        ExcelTable excelTable = worksheet.getExcelTable();
+        if (excelTable != null) {
+            // 填充列宽
+            fillColumnWidth(sheet, excelTable.getExcelColumns());
+        }
+        stats.handlerNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void row(ExcelRow excelRow) {
+        int rowIndex = rowPosition++;
+        if (excelRow == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        createRowIndex = getIndex(createRowIndex, rowIndex, excelRow.getIndex());
+        stats.rows++;
+        if (!streaming) {
+            writeRow(styleMap, sheet, excelRow, createRowIndex, cellRangeAddresses);
+            stats.handlerNanos += System.nanoTime() - start;
+            return;
+        }
+        // 模板跳过的行若处于合并单元格内，需要先补齐
+        long mergeStart = System.nanoTime();
+        lastRowIndex = fillPendingRows(sheet, cellRangeAddresses, lastRowIndex, createRowIndex - 1);
+        long rowStart = System.nanoTime();
+        rowRanges.clear();
+        Row row = writeRow(styleMap, sheet, excelRow, createRowIndex, rowRanges);
+        long rowEnd = System.nanoTime();
+        for (ExcelCellRangeAddress address : rowRanges) {
+            if (address.getCellRangeAddress() != null) {
+                addMergedRegion(address.getCellRangeAddress());
+                cellRangeAddresses.add(address);
+            }
+        }
+        setRangeBorderInRow(row, cellRangeAddresses);
+        lastRowIndex = createRowIndex;
+        long end = System.nanoTime();
+        stats.mergedRegionNanos += (rowStart - mergeStart) + (end - rowEnd);
+        stats.handlerNanos += end - start;
+    }
+
+    @Override
+    public void endSheet(ExcelWorksheet worksheet) {
+        long start = System.nanoTime();
+        if (streaming) {
+            // 合并单元格超出模板最后一行的部分
+            fillPendingRows(sheet, cellRangeAddresses, lastRowIndex, Integer.MAX_VALUE);
+        } else {
+            // 添加合并单元格
+            setCellRangeStyle(cellRangeAddresses);
+        }
+        writeComments();
+        sheet = null;
+        cellRangeAddresses = null;
+        mergedRegionIndex = null;
+        long elapsed = System.nanoTime() - start;
+        stats.mergedRegionNanos += elapsed;
+        stats.handlerNanos += elapsed;
+    }
+
+    /**
+     * description: 创建一行及其单元格，并收集该行产生的合并单元格
+     *
+     * @param styleMap
+     * @param sheet
+     * @param excelRowInfo
+     * @param createRowIndex
+     * @param cellRangeAddresses
+     * @return org.apache.poi.ss.usermodel.Row
+     */
+    private Row writeRow(Map<String, CellStyle> styleMap, Sheet sheet, ExcelRow excelRowInfo,
+                         int createRowIndex, List<ExcelCellRangeAddress> cellRangeAddresses) {
+        Row row = sheet.createRow(createRowIndex);
+        if (excelRowInfo.getHeight() != null) {
+            Integer height = excelRowInfo.getHeight() * 20;
+            row.setHeight(height.shortValue());
+        }
+        List<ExcelCell> excelCells = excelRowInfo.getExcelCells();
+        if (CollectionUtils.isEmpty(excelCells)) {
+            return row;
+        }
+        int startIndex = 0;
+        for (int cellIndex = 0; cellIndex < excelCells.size(); cellIndex++) {
+            ExcelCell excelCellInfo = excelCells.get(cellIndex);
+            if (excelCellInfo == null) {
+                continue;
+            }
+            // 获取起始列
+            startIndex = getIndex(startIndex, cellIndex, excelCellInfo.getIndex());
+            Cell cell = row.createCell(startIndex);
+            stats.cells++;
+            String styleId = excelCellInfo.getStyleID();
+            CellStyle cellStyle = styleMap.get(styleId);
+            setCellValue(excelCellInfo.getExcelData(), cell);
+            cell.setCellStyle(cellStyle);
+            // 单元格注释，sheet结束时统一创建
+            if (excelCellInfo.getExcelComment() != null) {
+                comments.add(new PendingComment(createRowIndex, startIndex, excelCellInfo.getExcelComment()));
+            }
+            // 合并单元格
+            startIndex = addCellRanges(createRowIndex, startIndex, cellRangeAddresses, excelCellInfo, cellStyle);
+        }
+        return row;
+    }
+
+    private int fillPendingRows(Sheet sheet, List<ExcelCellRangeAddress> pendingRanges,
+                                int lastRowIndex, int endRowIndex) {
+        while (!pendingRanges.isEmpty() && lastRowIndex < endRowIndex) {
+            lastRowIndex++;
+            setRangeBorderInRow(sheet.createRow(lastRowIndex), pendingRanges);
+        }
+        return lastRowIndex;
+    }
+
+    /**
+     * description: 设置合并单元格在当前行上的边框，已经结束的合并单元格从pendingRanges中移除
+     *
+     * @param row
+     * @param pendingRanges
+     * @return void
+     */
+    private void setRangeBorderInRow(Row row, List<ExcelCellRangeAddress> pendingRanges) {
+        int rowNum = row.getRowNum();
+        Iterator<ExcelCellRangeAddress> iterator = pendingRanges.iterator();
+        while (iterator.hasNext()) {
+            ExcelCellRangeAddress address = iterator.next();
+            CellRangeAddress range = address.getCellRangeAddress();
+            if (rowNum < range.getFirstRow()) {
+                continue;
+            }
+            setRangeBorder(row, range, address.getCellStyle());
+            if (rowNum >= range.getLastRow()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * description: 设置合并单元格在一行上的边框，与RegionUtil的效果相同：边缘的单元格只替换所在边的边框，
+     * 其余属性保持原样。替换边框后的样式由{@link WorkbookContext#getBorderVariant}缓存，不逐个单元格查找或创建样式
+     *
+     * @param row
+     * @param range
+     * @param rangeStyle
+     * @return void
+     */
+    private void setRangeBorder(Row row, CellRangeAddress range, CellStyle rangeStyle) {
+        if (rangeStyle == null) {
+            // 未指定样式的合并单元格没有边框
+            return;
+        }
+        int rowNum = row.getRowNum();
+        boolean top = rowNum == range.getFirstRow();
+        boolean bottom = rowNum == range.getLastRow();
+        int firstColumn = range.getFirstColumn();
+        int lastColumn = range.getLastColumn();
+        // 中间的行只需设置首尾两列
+        int step = top || bottom ? 1 : Math.max(1, lastColumn - firstColumn);
+        for (int col = firstColumn; col <= lastColumn; col += step) {
+            Cell cell = row.getCell(col);
+            if (cell == null) {
+                cell = row.createCell(col);
+            }
+            CellStyle baseStyle = cell.getCellStyle();
+            CellStyle borderStyle = context.getBorderVariant(baseStyle,
+                    top ? rangeStyle.getBorderTopEnum() : baseStyle.getBorderTopEnum(),
+                    bottom ? rangeStyle.getBorderBottomEnum() : baseStyle.getBorderBottomEnum(),
+                    col == firstColumn ? rangeStyle.getBorderLeftEnum() : baseStyle.getBorderLeftEnum(),
+                    col == lastColumn ? rangeStyle.getBorderRightEnum() : baseStyle.getBorderRightEnum());
+            if (borderStyle != baseStyle) {
+                cell.setCellStyle(borderStyle);
+            }
+        }
+    }
+
+    /**
+     * description: 重叠检查由{@link MergedRegionIndex}完成，登记到sheet时跳过POI逐个比较已有区域的校验
+     *
+     * @param range
+     * @return void
+     */
+    private void addMergedRegion(CellRangeAddress range) {
+        mergedRegionIndex.add(range);
+        sheet.addMergedRegionUnsafe(range);
+        stats.mergedRegions++;
+    }
+
+    /**
+     * description: 使用sheet共用的画布一次性创建当前sheet的注释。注释框放在单元格右侧，占两列三行，
+     * 只通过行列号关联单元格，SXSSF中已经刷写到临时文件的行也可以添加注释
+     *
+     * @return void
+     */
+    private void writeComments() {
+        if (comments.isEmpty()) {
+            return;
+        }
+        Drawing<?> drawing = context.getDrawing(sheet);
+        CreationHelper creationHelper = wb.getCreationHelper();
+        for (PendingComment pending : comments) {
+            ExcelData excelData = pending.comment.getExcelData();
+            // 注释保留anchor的引用，不能复用
+            ClientAnchor anchor = creationHelper.createClientAnchor();
+            anchor.setRow1(pending.row);
+            anchor.setRow2(pending.row + 3);
+            anchor.setCol1(pending.column + 1);
+            anchor.setCol2(pending.column + 3);
+            Comment comment = drawing.createCellComment(anchor);
+            String text = excelData == null ? null : excelData.getText();
+            comment.setString(creationHelper.createRichTextString(StringUtils.defaultString(text)));
+            comment.setAddress(pending.row, pending.column);
+        }
+        comments.clear();
+    }
+
+    /**
+     * description: 填充列宽
+     *
+     * @param sheet
+     * @param excelColumns
+     * @return void
+     * @author Hlingoes 2021/4/27
+     */
+    private static void fillColumnWidth(Sheet sheet, List<ExcelColumn> excelColumns) {
+        if (ObjectUtils.isEmpty(excelColumns)) {
+            return;
+        }
+        int columnIndex = 0;
+        for (int i = 0; i < excelColumns.size(); i++) {
+            ExcelColumn excelColumn = excelColumns.get(i);
+            columnIndex = getCellWidthIndex(columnIndex, i, excelColumn.getIndex());
+            sheet.setColumnWidth(columnIndex, (int) excelColumn.getWidth() * 50);
+        }
+    }
+
+    static int getIndex(int columnIndex, int i, Integer index) {
+        if (index != null) {
+            columnIndex = index - 1;
+        }
+        if (index == null && columnIndex != 0) {
+            columnIndex = columnIndex + 1;
+        }
+        if (index == null && columnIndex == 0) {
+            columnIndex = i;
+        }
+        return columnIndex;
+    }
+
+    static int getCellWidthIndex(int columnIndex, int i, Integer index) {
+        if (index != null) {
+            columnIndex = index;
+        }
+        if (index == null && columnIndex != 0) {
+            columnIndex = columnIndex + 1;
+        }
+        if (index == null && columnIndex == 0) {
+            columnIndex = i;
+        }
+        return columnIndex;
+    }
+
+    /**
+     * description: 添加合并单元格样式
+     *
+     * @param cellRangeAddresses
+     * @return void
+     * @author Hlingoes 2021/4/26
+     */
+    private void setCellRangeStyle(List<ExcelCellRangeAddress> cellRangeAddresses) {
+        if (CollectionUtils.isEmpty(cellRangeAddresses)) {
+            return;
+        }
+        for (ExcelCellRangeAddress address : cellRangeAddresses) {
+            CellRangeAddress cellRangeAddress = address.getCellRangeAddress();
+            if (cellRangeAddress == null) {
+                continue;
+            }
+            addMergedRegion(cellRangeAddress);
+            for (int rowNum = cellRangeAddress.getFirstRow(); rowNum <= cellRangeAddress.getLastRow(); rowNum++) {
+                Row row = sheet.getRow(rowNum);
+                if (row == null) {
+                    row = sheet.createRow(rowNum);
+                }
+                setRangeBorder(row, cellRangeAddress, address.getCellStyle());
+            }
+        }
+    }
+
+    /**
+     * description: 添加单元格合并
+     *
+     * @param createRowIndex
+     * @param startIndex
+     * @param cellRanges
+     * @param excelCellInfo
+     * @return int
+     * @author Hlingoes 2021/5/23
+     */
+    private static int addCellRanges(int createRowIndex, int startIndex, List<ExcelCellRangeAddress> cellRanges, ExcelCell excelCellInfo, CellStyle cellStyle) {
+        if (excelCellInfo.getMergeAcross() != null || excelCellInfo.getMergeDown() != null) {
+            cellRanges.add(new ExcelCellRangeAddress(getCellRange(createRowIndex, startIndex, excelCellInfo), cellStyle));
+        }
+        return getNextIndex(startIndex, excelCellInfo);
+    }
+
+    /**
+     * description: 获取单元格的合并区域，没有合并或合并数为0时返回null
+     *
+     * @param createRowIndex
+     * @param startIndex
+     * @param excelCellInfo
+     * @return org.apache.poi.ss.util.CellRangeAddress
+     */
+    static CellRangeAddress getCellRange(int createRowIndex, int startIndex, ExcelCell excelCellInfo) {
+        Integer mergeAcrossCount = excelCellInfo.getMergeAcross();
+        Integer mergeDownCount = excelCellInfo.getMergeDown();
+        CellRangeAddress cellRangeAddress = null;
+        if (mergeAcrossCount != null && mergeDownCount != null) {
+            int mergeAcross = startIndex;
+            if (mergeAcrossCount != 0) {
+                // 获取该单元格结束列数
+                mergeAcross += mergeAcrossCount;
+            }
+            int mergeDown = createRowIndex;
+            if (mergeDownCount != 0) {
+                // 获取该单元格结束列数
+                mergeDown += mergeDownCount;
+            }
+            cellRangeAddress = new CellRangeAddress(createRowIndex, mergeDown, (short) startIndex,
+                    (short) mergeAcross);
+        } else if (mergeAcrossCount != null && mergeDownCount == null) {
+            int mergeAcross = startIndex;
+            if (mergeAcrossCount != 0) {
+                // 获取该单元格结束列数
+                mergeAcross += mergeAcrossCount;
+                // 合并单元格
+                cellRangeAddress = new CellRangeAddress(createRowIndex, createRowIndex, (short) startIndex,
+                        (short) mergeAcross);
+            }
+
+        } else if (mergeDownCount != null && mergeAcrossCount == null) {
+            int mergeDown = createRowIndex;
+            if (mergeDownCount != 0) {
+                // 获取该单元格结束列数
+                mergeDown += mergeDownCount;
+                // 合并单元格
+                cellRangeAddress = new CellRangeAddress(createRowIndex, mergeDown, (short) startIndex,
+                        (short) startIndex);
+            }
+        }
+        return cellRangeAddress;
+    }
+
+    /**
+     * description: 跳过横向合并的列，得到下一个单元格的起始列
+     *
+     * @param startIndex
+     * @param excelCellInfo
+     * @return int
+     */
+    static int getNextIndex(int startIndex, ExcelCell excelCellInfo) {
+        Integer mergeAcrossCount = excelCellInfo.getMergeAcross();
+        if (mergeAcrossCount != null) {
+            int length = mergeAcrossCount.intValue();
+            for (int i = 0; i < length; i++) {
+                startIndex += mergeAcrossCount;
+            }
+        }
+        return startIndex;
+    }
+
+    /**
+     * 设置文本值内容，按Data节点的Type写入数字、日期、布尔值或错误值，其他类型作为文本。直接绑定的数值不再解析
+     *
+     * @param excelData:
+     * @param cell:
+     * @return void
+     */
+    private void setCellValue(ExcelData excelData, Cell cell) {
+        if (null == excelData) {
+            return;
+        }
+        String type = excelData.getType();
+        if (excelData.getRichTextString() != null) {
+            cell.setCellValue(excelData.getRichTextString());
+        } else if (CollectionUtils.isNotEmpty(excelData.getRichTextRuns())) {
+            cell.setCellValue(ExcelXmlReader.createRichTextString(context, excelData.getRichTextRuns()));
+        } else if (excelData.getNumberValue() != null) {
+            cell.setCellValue(excelData.getNumberValue());
+        } else if (ObjectUtils.isEmpty(excelData.getText())) {
+            if (CellValues.NUMBER.equals(type)) {
+                cell.setCellType(CellType.NUMERIC);
+            }
+        } else if (CellValues.NUMBER.equals(type)) {
+            try {
+                cell.setCellValue(CellValues.parseNumber(excelData.getText()));
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("单元格" + cell.getAddress() + "的Number值无法解析: "
+                        + excelData.getText(), e);
+            }
+        } else if (CellValues.DATE_TIME.equals(type)) {
+            double date = CellValues.parseDateTime(excelData.getText());
+            if (Double.isNaN(date)) {
+                cell.setCellValue(excelData.getText());
+            } else {
+                cell.setCellValue(date);
+            }
+        } else if (CellValues.BOOLEAN.equals(type)) {
+            Boolean value = CellValues.parseBoolean(excelData.getText());
+            if (value == null) {
+                cell.setCellValue(excelData.getText());
+            } else {
+                cell.setCellValue(value);
+            }
+        } else if (CellValues.ERROR.equals(type)) {
+            FormulaError error = CellValues.parseError(excelData.getText());
+            if (error == null) {
+                cell.setCellValue(excelData.getText());
+            } else {
+                cell.setCellErrorValue(error.getCode());
+            }
+        } else {
+            cell.setCellValue(excelData.getText());
+        }
+    }
+
+    /**
+     * description: 等待创建的注释及其所在的单元格
+     */
+    private static class PendingComment {
+
+        private final int row;
+
+        private final int column;
+
+        private final ExcelComment comment;
+
+        private PendingComment(int row, int column, ExcelComment comment) {
+            this.row = row;
+            this.column = column;
+            this.comment = comment;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.ExcelRow;
+import com.henry.cn.exportexcel.excel.ExcelStyle;
+import com.henry.cn.exportexcel.excel.ExcelWorksheet;
+import com.henry.cn.exportexcel.reader.ExcelSheetHandler;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * description: 把同一次解析的结果依次交给多个handler，例如同时写入xls和xlsx。
+ * 各个handler收到的是同一个行对象，与蓝图中的静态行一样只读取不修改
+ */
+class TeeSheetHandler implements ExcelSheetHandler {
+
+    private final List<? extends ExcelSheetHandler> handlers;
+
+    TeeSheetHandler(List<? extends ExcelSheetHandler> handlers) {
+        this.handlers = handlers;
+    }
+
+    @Override
+    public void styles(Map<String, ExcelStyle> styles) {
+        for (ExcelSheetHandler handler : handlers) {
+            handler.styles(styles);
+        }
+    }
+
+    @Override
+    public void startSheet(ExcelWorksheet worksheet) {
+        for (ExcelSheetHandler handler : handlers) {
+            handler.startSheet(worksheet);
+        }
+    }
+
+    @Override
+    public void row(ExcelRow excelRow) {
+        for (ExcelSheetHandler handler : handlers) {
+            handler.row(excelRow);
+        }
+    }
+
+    @Override
+    public void endSheet(ExcelWorksheet worksheet) {
+        for (ExcelSheetHandler handler : handlers) {
+            handler.endSheet(worksheet);
+        }
+    }
+}
@@ -0,0 +1,831 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.*;
+import com.henry.cn.exportexcel.reader.ExcelSheetHandler;
+import com.henry.cn.exportexcel.reader.ExcelXmlStreamReader;
+import freemarker.template.*;
+import freemarker.template.utility.DeepUnwrap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.BaseStream;
+
+/**
+ * description: 模板编译后的行蓝图，导出时把dataMap中的值直接绑定到单元格，不再渲染xml文本再解析。
+ * 只支持Data节点文本中的${a.b}、${a.b!}、${a.b!"默认值"}和包住整行的&lt;#list a.b as c&gt;，
+ * 其他指令、内建函数或属性中的插值都无法编译，由调用方继续使用FreeMarker渲染。
+ * 取值、空值和数字格式与FreeMarker的默认行为一致，字符串中的实体引用按xml解码；
+ * Data节点只有一个插值的Number单元格直接写入数值，其他值转换为文本后由写入方按类型解析
+ */
+final class TemplateBlueprint {
+    private static final Logger log = LoggerFactory.getLogger(TemplateBlueprint.class);
+
+    /**
+     * 编译时替换插值和list的标记，使用私有区的字符，不会与模板内容冲突
+     */
+    private static final char HOLE_START = '\uE000';
+
+    private static final char HOLE_END = '\uE001';
+
+    private static final char LIST_START = '\uE002';
+
+    private static final char LIST_END = '\uE003';
+
+    private static final Pattern EXPRESSION = Pattern.compile(
+            "\\s*([A-Za-z_][A-Za-z0-9_]*(?:\\.[A-Za-z_][A-Za-z0-9_]*)*)\\s*(!\\s*(?:\"([^\"\\\\]*)\"|'([^'\\\\]*)')?)?\\s*");
+
+    private static final Pattern LIST = Pattern.compile(
+            "<#list\\s+([A-Za-z_][A-Za-z0-9_]*(?:\\.[A-Za-z_][A-Za-z0-9_]*)*)\\s+as\\s+([A-Za-z_][A-Za-z0-9_]*)\\s*>");
+
+    private static final Pattern LIST_CLOSE = Pattern.compile("</#list\\s*>");
+
+    private final Map<String, ExcelStyle> styles;
+
+    private final List<SheetBlueprint> sheets;
+
+    private final int maxDepth;
+
+    private final Locale locale;
+    /**
+     * 少见类型的值交给FreeMarker格式化，结果与模板中的${value}相同
+     */
+    private final Template valueTemplate;
+
+    private TemplateBlueprint(Map<String, ExcelStyle> styles, List<SheetBlueprint> sheets, int maxDepth,
+                              Template template) throws IOException {
+        this.styles = styles;
+        this.sheets = sheets;
+        this.maxDepth = maxDepth;
+        this.locale = template.getLocale();
+        this.valueTemplate = new Template(template.getName() + "#value", new StringReader("${value}"),
+                template.getConfiguration());
+        this.valueTemplate.setLocale(locale);
+    }
+
+    /**
+     * description: 编译模板源文件，无法编译时返回null
+     *
+     * @param template
+     * @param source   模板源文件的内容
+     * @return com.henry.cn.exportexcel.writer.TemplateBlueprint
+     */
+    static TemplateBlueprint compile(Template template, String source) {
+        if (!"number".equals(template.getNumberFormat())) {
+            log.debug("模板{}不使用默认的数字格式，使用FreeMarker渲染", template.getName());
+            return null;
+        }
+        Compiler compiler = new Compiler();
+        try {
+            String skeleton = compiler.tokenize(source);
+            if (skeleton == null) {
+                log.debug("模板{}无法编译: {}，使用FreeMarker渲染", template.getName(), compiler.reason);
+                return null;
+            }
+            Recorder recorder = new Recorder();
+            ExcelXmlStreamReader.read(new StringReader(skeleton), recorder);
+            List<SheetBlueprint> sheets = compiler.build(recorder);
+            if (sheets == null) {
+                log.debug("模板{}无法编译: {}，使用FreeMarker渲染", template.getName(), compiler.reason);
+                return null;
+            }
+            return new TemplateBlueprint(recorder.styles, sheets, compiler.maxDepth, template);
+        } catch (XMLStreamException | IOException | RuntimeException e) {
+            // 插值出现在数字属性等位置时解析失败
+            log.debug("模板{}无法编译，使用FreeMarker渲染", template.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * description: 将数据绑定到蓝图，按顺序回调handler，与解析渲染结果时的回调相同
+     *
+     * @param dataMap
+     * @param handler
+     * @return void
+     */
+    void bind(Map dataMap, ExcelSheetHandler handler) throws TemplateException, IOException {
+        Binding binding = new Binding(dataMap == null ? Collections.emptyMap() : dataMap, maxDepth, locale,
+                valueTemplate);
+        if (styles != null) {
+            handler.styles(styles);
+        }
+        for (SheetBlueprint sheet : sheets) {
+            handler.startSheet(sheet.worksheet);
+            for (Node node : sheet.nodes) {
+                node.bind(binding, handler);
+            }
+            handler.endSheet(sheet.worksheet);
+        }
+    }
+
+    /**
+     * description: 把FreeMarker指令替换为标记后交给解析器，再从解析结果中还原行和插值的位置
+     */
+    private static class Compiler {
+
+        private final List<Expression> holes = new ArrayList<>();
+
+        private final List<ListNode> lists = new ArrayList<>();
+
+        private final Deque<String> loopVariables = new ArrayDeque<>();
+
+        private int maxDepth;
+
+        private String reason;
+
+        /**
+         * description: 替换插值和list指令，遇到不支持的内容时返回null
+         */
+        private String tokenize(String source) {
+            StringBuilder skeleton = new StringBuilder(source.length());
+            int length = source.length();
+            int i = 0;
+            while (i < length) {
+                char c = source.charAt(i);
+                if (c == '$' && source.startsWith("${", i)) {
+                    int end = findExpressionEnd(source, i + 2);
+                    if (end < 0) {
+                        return unsupported("插值没有结束");
+                    }
+                    Expression expression = parseExpression(source.substring(i + 2, end));
+                    if (expression == null) {
+                        return unsupported("不支持的表达式: " + source.substring(i, end + 1));
+                    }
+                    skeleton.append(HOLE_START).append(holes.size()).append(HOLE_END);
+                    holes.add(expression);
+                    i = end + 1;
+                } else if (c == '<' && source.startsWith("<#--", i)) {
+                    int end = source.indexOf("-->", i + 4);
+                    if (end < 0) {
+                        return unsupported("注释没有结束");
+                    }
+                    i = end + 3;
+                } else if (c == '<' && (source.startsWith("<#", i) || source.startsWith("</#", i))) {
+                    int end = source.indexOf('>', i);
+                    Matcher list = LIST.matcher(source).region(i, length);
+                    Matcher listClose = LIST_CLOSE.matcher(source).region(i, length);
+                    if (list.lookingAt()) {
+                        Expression expression = parseExpression(list.group(1));
+                        if (expression == null || expression.hasDefault) {
+                            return unsupported("不支持的list: " + list.group());
+                        }
+                        appendMarkerRow(skeleton, LIST_START, lists.size());
+                        lists.add(new ListNode(expression, loopVariables.size()));
+                        loopVariables.push(list.group(2));
+                        maxDepth = Math.max(maxDepth, loopVariables.size());
+                        i = list.end();
+                    } else if (listClose.lookingAt() && !loopVariables.isEmpty()) {
+                        loopVariables.pop();
+                        appendMarkerRow(skeleton, LIST_END, loopVariables.size());
+                        i = listClose.end();
+                    } else {
+                        return unsupported("不支持的指令: " + source.substring(i, end < 0 ? length : end + 1));
+                    }
+                } else if ((c == '<' && (source.startsWith("<@", i) || source.startsWith("</@", i)))
+                        || (c == '#' && source.startsWith("#{", i))) {
+                    return unsupported("不支持的指令: " + source.substring(i, Math.min(length, i + 20)));
+                } else {
+                    skeleton.append(c);
+                    i++;
+                }
+            }
+            if (!loopVariables.isEmpty()) {
+                return unsupported("list没有结束");
+            }
+            return skeleton.toString();
+        }
+
+        private static int findExpressionEnd(String source, int start) {
+            char quote = 0;
+            for (int i = start; i < source.length(); i++) {
+                char c = source.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '}') {
+                    return i;
+                } else if (c == '{') {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * description: 解析变量路径和默认值，变量名与外层list的循环变量相同时从循环中取值
+         */
+        private Expression parseExpression(String text) {
+            Matcher matcher = EXPRESSION.matcher(text);
+            if (!matcher.matches()) {
+                return null;
+            }
+            String[] path = matcher.group(1).split("\\.");
+            boolean hasDefault = matcher.group(2) != null;
+            String defaultValue = decodeXml(matcher.group(3) != null ? matcher.group(3)
+                    : (matcher.group(4) != null ? matcher.group(4) : ""));
+            int depth = loopVariables.size();
+            for (String variable : loopVariables) {
+                depth--;
+                if (variable.equals(path[0])) {
+                    return new Expression(matcher.group(1), depth, false,
+                            Arrays.copyOfRange(path, 1, path.length), hasDefault, defaultValue);
+                }
+                if (path.length == 1 && path[0].equals(variable + "_index")) {
+                    return new Expression(matcher.group(1), depth, true, new String[0], hasDefault, defaultValue);
+                }
+            }
+            return new Expression(matcher.group(1), -1, false, path, hasDefault, defaultValue);
+        }
+
+        private static void appendMarkerRow(StringBuilder skeleton, char marker, int index) {
+            skeleton.append("<Row><Cell><Data>").append(marker).append(index).append("</Data></Cell></Row>");
+        }
+
+        /**
+         * description: 由解析结果生成各个sheet的节点，每个插值都必须出现在单元格的Data文本中
+         */
+        private List<SheetBlueprint> build(Recorder recorder) {
+            boolean[] usedHoles = new boolean[holes.size()];
+            int closedLists = 0;
+            List<SheetBlueprint> sheets = new ArrayList<>();
+            for (int s = 0; s < recorder.worksheets.size(); s++) {
+                ExcelWorksheet worksheet = recorder.worksheets.get(s);
+                if (containsMarker(worksheet.getName())) {
+                    return unsupportedSheets("sheet名称中有插值");
+                }
+                Deque<List<Node>> stack = new ArrayDeque<>();
+                Deque<ListNode> openLists = new ArrayDeque<>();
+                List<Node> nodes = new ArrayList<>();
+                stack.push(nodes);
+                for (ExcelRow row : recorder.rows.get(s)) {
+                    char marker = getMarker(row);
+                    if (marker == LIST_START) {
+                        ListNode listNode = lists.get(getMarkerIndex(row));
+                        stack.peek().add(listNode);
+                        stack.push(listNode.body);
+                        openLists.push(listNode);
+                    } else if (marker == LIST_END) {
+                        if (openLists.isEmpty() || openLists.peek().depth != getMarkerIndex(row)) {
+                            return unsupportedSheets("list跨越了sheet或不在行之间");
+                        }
+                        openLists.pop();
+                        stack.pop();
+                        closedLists++;
+                    } else {
+                        if (!openLists.isEmpty() && row.getIndex() != null) {
+                            return unsupportedSheets("list中的行指定了Index");
+                        }
+                        RowNode rowNode = buildRow(row, usedHoles);
+                        if (rowNode == null) {
+                            return null;
+                        }
+                        stack.peek().add(rowNode);
+                    }
+                }
+                if (!openLists.isEmpty()) {
+                    return unsupportedSheets("list跨越了sheet或不在行之间");
+                }
+                sheets.add(new SheetBlueprint(worksheet, nodes));
+            }
+            if (closedLists != lists.size()) {
+                return unsupportedSheets("list不在Table的行之间");
+            }
+            for (boolean used : usedHoles) {
+                if (!used) {
+                    return unsupportedSheets("插值不在单元格的Data文本中");
+                }
+            }
+            return sheets;
+        }
+
+        private RowNode buildRow(ExcelRow row, boolean[] usedHoles) {
+            List<ExcelCell> cells = row.getExcelCells();
+            if (cells == null) {
+                return new RowNode(row, null);
+            }
+            CellBlueprint[] cellBlueprints = null;
+            for (int i = 0; i < cells.size(); i++) {
+                ExcelCell cell = cells.get(i);
+                if (containsMarker(cell.getStyleID()) || hasMarkerInComment(cell) || hasMarkerInRuns(cell)) {
+                    reason = "插值不在单元格的Data文本中";
+                    return null;
+                }
+                ExcelData data = cell.getExcelData();
+                if (data == null || !containsMarker(data.getText())) {
+                    continue;
+                }
+                if (data.getRichTextRuns() != null) {
+                    reason = "富文本单元格中有插值";
+                    return null;
+                }
+                if (cellBlueprints == null) {
+                    cellBlueprints = new CellBlueprint[cells.size()];
+                }
+                cellBlueprints[i] = buildCell(cell, usedHoles);
+            }
+            return new RowNode(row, cellBlueprints);
+        }
+
+        private CellBlueprint buildCell(ExcelCell cell, boolean[] usedHoles) {
+            String text = cell.getExcelData().getText();
+            List<String> literals = new ArrayList<>();
+            List<Expression> expressions = new ArrayList<>();
+            int start = 0;
+            int holeStart;
+            while ((holeStart = text.indexOf(HOLE_START, start)) >= 0) {
+                int holeEnd = text.indexOf(HOLE_END, holeStart);
+                int index = Integer.parseInt(text.substring(holeStart + 1, holeEnd));
+                literals.add(text.substring(start, holeStart));
+                expressions.add(holes.get(index));
+                usedHoles[index] = true;
+                start = holeEnd + 1;
+            }
+            literals.add(text.substring(start));
+            return new CellBlueprint(cell, literals.toArray(new String[0]), expressions.toArray(new Expression[0]));
+        }
+
+        private static char getMarker(ExcelRow row) {
+            List<ExcelCell> cells = row.getExcelCells();
+            if (cells == null || cells.size() != 1 || cells.get(0).getExcelData() == null) {
+                return 0;
+            }
+            String text = cells.get(0).getExcelData().getText();
+            if (text.isEmpty() || (text.charAt(0) != LIST_START && text.charAt(0) != LIST_END)) {
+                return 0;
+            }
+            return text.charAt(0);
+        }
+
+        private static int getMarkerIndex(ExcelRow row) {
+            return Integer.parseInt(row.getExcelCells().get(0).getExcelData().getText().substring(1));
+        }
+
+        private static boolean hasMarkerInComment(ExcelCell cell) {
+            ExcelComment comment = cell.getExcelComment();
+            return comment != null && comment.getExcelData() != null
+                    && containsMarker(comment.getExcelData().getText());
+        }
+
+        private static boolean hasMarkerInRuns(ExcelCell cell) {
+            ExcelData data = cell.getExcelData();
+            if (data == null || data.getRichTextRuns() == null) {
+                return false;
+            }
+            for (ExcelRichTextRun run : data.getRichTextRuns()) {
+                if (containsMarker(run.getText())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean containsMarker(String text) {
+            if (text == null) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c >= HOLE_START && c <= LIST_END) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private String unsupported(String reason) {
+            this.reason = reason;
+            return null;
+        }
+
+        private List<SheetBlueprint> unsupportedSheets(String reason) {
+            this.reason = reason;
+            return null;
+        }
+    }
+
+    /**
+     * description: 记录解析标记后的模板得到的样式、sheet和行
+     */
+    private static class Recorder implements ExcelSheetHandler {
+
+        private Map<String, ExcelStyle> styles;
+
+        private final List<ExcelWorksheet> worksheets = new ArrayList<>();
+
+        private final List<List<ExcelRow>> rows = new ArrayList<>();
+
+        @Override
+        public void styles(Map<String, ExcelStyle> styles) {
+            this.styles = Collections.unmodifiableMap(styles);
+        }
+
+        @Override
+        public void startSheet(ExcelWorksheet worksheet) {
+            worksheets.add(worksheet);
+            rows.add(new ArrayList<>());
+        }
+
+        @Override
+        public void row(ExcelRow row) {
+            rows.get(rows.size() - 1).add(row);
+        }
+
+        @Override
+        public void endSheet(ExcelWorksheet worksheet) {
+        }
+    }
+
+    private static class SheetBlueprint {
+
+        private final ExcelWorksheet worksheet;
+
+        private final List<Node> nodes;
+
+        private SheetBlueprint(ExcelWorksheet worksheet, List<Node> nodes) {
+            this.worksheet = worksheet;
+            this.nodes = nodes;
+        }
+    }
+
+    private interface Node {
+
+        void bind(Binding binding, ExcelSheetHandler handler) throws TemplateException, IOException;
+    }
+
+    /**
+     * description: 模板中的一行，没有插值的行和单元格在每次导出中直接复用
+     */
+    private static class RowNode implements Node {
+
+        private final ExcelRow row;
+        /**
+         * 与row中的单元格一一对应，没有插值的单元格为null，整行都没有插值时数组为null
+         */
+        private final CellBlueprint[] cells;
+
+        private RowNode(ExcelRow row, CellBlueprint[] cells) {
+            this.row = row;
+            this.cells = cells;
+        }
+
+        @Override
+        public void bind(Binding binding, ExcelSheetHandler handler) throws TemplateException, IOException {
+            if (cells == null) {
+                handler.row(row);
+                return;
+            }
+            List<ExcelCell> templateCells = row.getExcelCells();
+            List<ExcelCell> excelCells = new ArrayList<>(templateCells.size());
+            for (int i = 0; i < cells.length; i++) {
+                excelCells.add(cells[i] == null ? templateCells.get(i) : cells[i].bind(binding));
+            }
+            ExcelRow excelRow = new ExcelRow();
+            excelRow.setHeight(row.getHeight());
+            excelRow.setIndex(row.getIndex());
+            excelRow.setExcelCells(excelCells);
+            handler.row(excelRow);
+        }
+    }
+
+    private static class ListNode implements Node {
+
+        private final Expression source;
+
+        private final int depth;
+
+        private final List<Node> body = new ArrayList<>();
+
+        private ListNode(Expression source, int depth) {
+            this.source = source;
+            this.depth = depth;
+        }
+
+        @Override
+        public void bind(Binding binding, ExcelSheetHandler handler) throws TemplateException, IOException {
+            Object items = source.evaluate(binding);
+            if (items == null) {
+                throw new TemplateModelException("list的值为空: " + source.text);
+            }
+            Iterator<?> iterator = binding.iterate(items, source);
+            int index = 0;
+            while (iterator.hasNext()) {
+                binding.items[depth] = iterator.next();
+                binding.indexes[depth] = index++;
+                for (Node node : body) {
+                    node.bind(binding, handler);
+                }
+            }
+            binding.items[depth] = null;
+        }
+    }
+
+    /**
+     * description: Data文本中有插值的单元格，文本由literals和expressions交替组成
+     */
+    private static class CellBlueprint {
+
+        private final ExcelCell cell;
+
+        private final String[] literals;
+
+        private final Expression[] expressions;
+        /**
+         * Number单元格的Data中只有一个插值时直接绑定数值
+         */
+        private final boolean numberHole;
+
+        private CellBlueprint(ExcelCell cell, String[] literals, Expression[] expressions) {
+            this.cell = cell;
+            this.literals = literals;
+            this.expressions = expressions;
+            this.numberHole = CellValues.NUMBER.equals(cell.getExcelData().getType()) && expressions.length == 1
+                    && literals[0].isEmpty() && literals[1].isEmpty();
+        }
+
+        private ExcelCell bind(Binding binding) throws TemplateException, IOException {
+            ExcelData excelData = new ExcelData();
+            excelData.setType(cell.getExcelData().getType());
+            excelData.setXmlns(cell.getExcelData().getXmlns());
+            if (numberHole) {
+                Object value = expressions[0].evaluate(binding);
+                Double number = value instanceof Number ? binding.toCellNumber((Number) value) : null;
+                if (number != null) {
+                    excelData.setNumberValue(number);
+                } else {
+                    excelData.setText(binding.format(value, expressions[0]));
+                }
+            } else if (expressions.length == 1 && literals[0].isEmpty() && literals[1].isEmpty()) {
+                excelData.setText(binding.format(expressions[0].evaluate(binding), expressions[0]));
+            } else {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < expressions.length; i++) {
+                    text.append(literals[i]).append(binding.format(expressions[i].evaluate(binding), expressions[i]));
+                }
+                excelData.setText(text.append(literals[expressions.length]).toString());
+            }
+            ExcelCell excelCell = new ExcelCell();
+            excelCell.setStyleID(cell.getStyleID());
+            excelCell.setMergeAcross(cell.getMergeAcross());
+            excelCell.setMergeDown(cell.getMergeDown());
+            excelCell.setIndex(cell.getIndex());
+            excelCell.setExcelComment(cell.getExcelComment());
+            excelCell.setExcelData(excelData);
+            return excelCell;
+        }
+    }
+
+    /**
+     * description: 变量路径，depth为-1时从dataMap取值，否则从对应层的list循环变量取值
+     */
+    private static class Expression {
+
+        private final String text;
+
+        private final int depth;
+
+        private final boolean loopIndex;
+
+        private final String[] path;
+
+        private final boolean hasDefault;
+
+        private final String defaultValue;
+
+        private Expression(String text, int depth, boolean loopIndex, String[] path, boolean hasDefault,
+                           String defaultValue) {
+            this.text = text;
+            this.depth = depth;
+            this.loopIndex = loopIndex;
+            this.path = path;
+            this.hasDefault = hasDefault;
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * description: 与FreeMarker相同，默认值只处理最后一级为空的情况，中间的变量为空时报错
+         */
+        private Object evaluate(Binding binding) throws TemplateModelException {
+            if (loopIndex) {
+                return binding.indexes[depth];
+            }
+            Object value = depth < 0 ? binding.dataMap : binding.items[depth];
+            for (int i = 0; i < path.length; i++) {
+                if (value == null) {
+                    throw new TemplateModelException("表达式的值为空: " + text);
+                }
+                value = binding.get(value, path[i]);
+            }
+            if (value == null && !hasDefault) {
+                throw new TemplateModelException("表达式的值为空: " + text);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * description: 一次导出的绑定状态，只在导出线程中使用
+     */
+    private static class Binding {
+
+        private final Map dataMap;
+
+        private final Object[] items;
+
+        private final int[] indexes;
+
+        private final NumberFormat numberFormat;
+
+        private final Template valueTemplate;
+
+        private final ObjectWrapper objectWrapper;
+
+        private final int maxFractionDigits;
+
+        private final RoundingMode roundingMode;
+
+        private Binding(Map dataMap, int maxDepth, Locale locale, Template valueTemplate) {
+            this.dataMap = dataMap;
+            this.items = new Object[maxDepth];
+            this.indexes = new int[maxDepth];
+            // 与FreeMarker默认的number格式相同
+            this.numberFormat = NumberFormat.getNumberInstance(locale);
+            this.valueTemplate = valueTemplate;
+            this.objectWrapper = valueTemplate.getObjectWrapper();
+            this.maxFractionDigits = numberFormat.getMaximumFractionDigits();
+            this.roundingMode = numberFormat instanceof DecimalFormat ? numberFormat.getRoundingMode() : null;
+        }
+
+        private Object get(Object value, String key) throws TemplateModelException {
+            if (value instanceof Map) {
+                return ((Map) value).get(key);
+            }
+            TemplateModel model = value instanceof TemplateModel ? (TemplateModel) value : objectWrapper.wrap(value);
+            if (!(model instanceof TemplateHashModel)) {
+                throw new TemplateModelException("不能从" + value.getClass().getName() + "中取" + key);
+            }
+            TemplateModel result = ((TemplateHashModel) model).get(key);
+            return result == null ? null : DeepUnwrap.permissiveUnwrap(result);
+        }
+
+        /**
+         * description: 数组以外的数据源都不预先读取，边遍历边回调handler
+         */
+        private Iterator<?> iterate(Object items, Expression source) throws TemplateModelException {
+            if (items instanceof Iterable) {
+                return ((Iterable<?>) items).iterator();
+            }
+            if (items instanceof Iterator) {
+                return (Iterator<?>) items;
+            }
+            if (items instanceof BaseStream) {
+                return ((BaseStream<?, ?>) items).iterator();
+            }
+            if (items instanceof Spliterator) {
+                return Spliterators.iterator((Spliterator<?>) items);
+            }
+            if (items.getClass().isArray()) {
+                int length = Array.getLength(items);
+                List<Object> list = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    list.add(Array.get(items, i));
+                }
+                return list.iterator();
+            }
+            throw new TemplateModelException("list的值不能遍历: " + source.text + ", " + items.getClass().getName());
+        }
+
+        /**
+         * description: 按FreeMarker的默认数字格式舍入后的值，格式化结果本身无法解析为数字时返回null
+         */
+        private Double toCellNumber(Number number) {
+            if (number instanceof Integer || number instanceof Long || number instanceof Short
+                    || number instanceof Byte) {
+                return (double) number.longValue();
+            }
+            if (roundingMode == null) {
+                return null;
+            }
+            BigDecimal decimal;
+            if (number instanceof BigDecimal) {
+                decimal = (BigDecimal) number;
+            } else if (number instanceof BigInteger) {
+                decimal = new BigDecimal((BigInteger) number);
+            } else if (number instanceof Double || number instanceof Float) {
+                double value = number.doubleValue();
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    return null;
+                }
+                decimal = new BigDecimal(value);
+            } else {
+                return null;
+            }
+            if (decimal.scale() > maxFractionDigits) {
+                decimal = decimal.setScale(maxFractionDigits, roundingMode);
+            }
+            return decimal.doubleValue();
+        }
+
+        /**
+         * description: 转换为模板输出的文本，字符串中的实体引用和换行按xml解析器的规则处理
+         */
+        private String format(Object value, Expression expression) throws TemplateException, IOException {
+            if (value == null) {
+                return expression.defaultValue;
+            }
+            if (value instanceof String) {
+                return decodeXml((String) value);
+            }
+            if (value instanceof Number) {
+                return numberFormat.format(value);
+            }
+            if (value instanceof CharSequence || value instanceof Character || value instanceof Enum) {
+                return decodeXml(value.toString());
+            }
+            // 日期、布尔值和其他对象的格式化规则较多，直接交给FreeMarker
+            StringWriter writer = new StringWriter();
+            valueTemplate.process(Collections.singletonMap("value", value), writer);
+            return decodeXml(writer.toString());
+        }
+    }
+
+    /**
+     * description: 渲染结果中的值会被xml解析器解码，这里按相同的规则处理实体引用和换行，无法识别的实体保留原文
+     *
+     * @param text
+     * @return java.lang.String
+     */
+    static String decodeXml(String text) {
+        if (text.indexOf('&') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        StringBuilder decoded = new StringBuilder(text.length());
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\r') {
+                decoded.append('\n');
+                if (i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                continue;
+            }
+            int end = c == '&' ? text.indexOf(';', i) : -1;
+            if (end < 0) {
+                decoded.append(c);
+                continue;
+            }
+            String entity = text.substring(i + 1, end);
+            int codePoint = decodeEntity(entity);
+            if (codePoint < 0) {
+                decoded.append(c);
+                continue;
+            }
+            decoded.appendCodePoint(codePoint);
+            i = end;
+        }
+        return decoded.toString();
+    }
+
+    private static int decodeEntity(String entity) {
+        switch (entity) {
+            case "amp":
+                return '&';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "quot":
+                return '"';
+            case "apos":
+                return '\'';
+            default:
+                break;
+        }
+        if (entity.length() < 2 || entity.charAt(0) != '#') {
+            return -1;
+        }
+        try {
+            int codePoint = entity.charAt(1) == 'x'
+                    ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+            return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.henry.cn.exportexcel.writer;
+
+import freemarker.cache.TemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.util.StringUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * description: 已编译模板的注册表。开启监听时模板编译后常驻内存，导出时不再检查模板文件，
+ * 由WatchService在文件新增、修改或删除后重新编译；不监听时每次获取都由FreeMarker检查文件是否修改。
+ * 开启蓝图绑定时同时缓存每个模板编译出的{@link TemplateBlueprint}，模板重新编译后蓝图随之失效
+ */
+class TemplateRegistry implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(TemplateRegistry.class);
+
+    /**
+     * 预编译时作为模板的文件扩展名，目录中的图片等其他文件不编译
+     */
+    private static final String[] TEMPLATE_SUFFIXES = {".xml", ".ftl"};
+
+    private final Configuration configuration;
+
+    private final String charset;
+    /**
+     * 为空时读取classpath下的template
+     */
+    private final File templateDir;
+
+    private final boolean watching;
+
+    private final boolean blueprintBinding;
+
+    private final ConcurrentMap<String, CompiledTemplate> templates = new ConcurrentHashMap<>();
+    /**
+     * 按模板名称缓存蓝图，模板对象不同时说明已重新编译
+     */
+    private final ConcurrentMap<String, CompiledBlueprint> blueprints = new ConcurrentHashMap<>();
+
+    private final WatchService watchService;
+
+    /**
+     * description: 开启监听且模板在目录中时启动监听线程，classpath下的模板不会修改，编译后一直使用
+     *
+     * @param configuration
+     * @param charset
+     * @param templateDir
+     * @param watching
+     * @param blueprintBinding
+     */
+    TemplateRegistry(Configuration configuration, String charset, File templateDir, boolean watching,
+                     boolean blueprintBinding) {
+        this.configuration = configuration;
+        this.charset = charset;
+        this.templateDir = templateDir;
+        this.watching = watching;
+        this.blueprintBinding = blueprintBinding;
+        this.watchService = watching && templateDir != null ? startWatching(templateDir.toPath()) : null;
+    }
+
+    /**
+     * description: 获取模板，开启监听时直接使用已编译的模板
+     *
+     * @param templateName
+     * @return freemarker.template.Template
+     */
+    Template get(String templateName) throws IOException {
+        if (!watching) {
+            return configuration.getTemplate(templateName, charset);
+        }
+        CompiledTemplate compiledTemplate = templates.get(templateName);
+        if (compiledTemplate == null) {
+            compiledTemplate = compile(templateName);
+            CompiledTemplate previous = templates.putIfAbsent(templateName, compiledTemplate);
+            if (previous != null) {
+                compiledTemplate = previous;
+            }
+        }
+        return compiledTemplate.template;
+    }
+
+    /**
+     * description: 获取模板的蓝图，未开启蓝图绑定或模板无法编译为蓝图时返回null，由调用方使用FreeMarker渲染
+     *
+     * @param template
+     * @return com.henry.cn.exportexcel.writer.TemplateBlueprint
+     */
+    TemplateBlueprint getBlueprint(Template template) {
+        if (!blueprintBinding) {
+            return null;
+        }
+        CompiledBlueprint compiledBlueprint = blueprints.get(template.getName());
+        if (compiledBlueprint != null && compiledBlueprint.template == template) {
+            return compiledBlueprint.blueprint;
+        }
+        TemplateBlueprint blueprint = compileBlueprint(template);
+        blueprints.put(template.getName(), new CompiledBlueprint(template, blueprint));
+        return blueprint;
+    }
+
+    /**
+     * description: 获取模板编译时文件的最后修改时间，作为样式缓存的版本，无法获取时返回-1。
+     * 开启监听时使用编译时记录的值，不监听时读取模板文件
+     *
+     * @param template
+     * @return long
+     */
+    long getLastModified(Template template) throws IOException {
+        if (watching) {
+            CompiledTemplate compiledTemplate = templates.get(template.getName());
+            if (compiledTemplate != null && compiledTemplate.template == template) {
+                return compiledTemplate.lastModified;
+            }
+        }
+        return readLastModified(template.getSourceName());
+    }
+
+    /**
+     * description: 编译模板目录下的所有模板及其蓝图，返回编译成功的模板个数。不监听时编译结果进入FreeMarker的缓存。
+     * 单个模板编译失败时只记录日志并跳过，由使用该模板的导出在获取模板时失败，不影响其他模板
+     *
+     * @return int
+     */
+    int precompile() throws IOException {
+        List<String> templateNames = templateDir == null ? findClasspathTemplates() : findTemplates();
+        int count = 0;
+        for (String templateName : templateNames) {
+            try {
+                if (watching) {
+                    templates.put(templateName, compile(templateName));
+                }
+                getBlueprint(get(templateName));
+                count++;
+            } catch (IOException | RuntimeException e) {
+                log.warn("precompile template fail: {}", templateName, e);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private CompiledTemplate compile(String templateName) throws IOException {
+        // 先读取修改时间再编译，编译期间文件被修改时下一次监听事件会重新编译
+        long lastModified = readLastModified(templateName);
+        Template template = configuration.getTemplate(templateName, charset);
+        return new CompiledTemplate(template, lastModified);
+    }
+
+    /**
+     * description: 按模板名称重新读取源文件并编译蓝图，读取失败时不使用蓝图
+     *
+     * @param template
+     * @return com.henry.cn.exportexcel.writer.TemplateBlueprint
+     */
+    private TemplateBlueprint compileBlueprint(Template template) {
+        TemplateLoader templateLoader = configuration.getTemplateLoader();
+        try {
+            Object templateSource = templateLoader.findTemplateSource(template.getSourceName());
+            if (templateSource == null) {
+                return null;
+            }
+            try (Reader reader = templateLoader.getReader(templateSource, template.getEncoding())) {
+                return TemplateBlueprint.compile(template, IOUtils.toString(reader));
+            } finally {
+                templateLoader.closeTemplateSource(templateSource);
+            }
+        } catch (IOException e) {
+            log.warn("read template source fail: {}", template.getSourceName(), e);
+            return null;
+        }
+    }
+
+    private long readLastModified(String templateName) throws IOException {
+        TemplateLoader templateLoader = configuration.getTemplateLoader();
+        Object templateSource = templateLoader.findTemplateSource(templateName);
+        if (templateSource == null) {
+            return -1;
+        }
+        try {
+            return templateLoader.getLastModified(templateSource);
+        } finally {
+            templateLoader.closeTemplateSource(templateSource);
+        }
+    }
+
+    private List<String> findTemplates() throws IOException {
+        Path root = templateDir.toPath();
+        List<String> templateNames = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isTemplate(file)) {
+                    templateNames.add(toTemplateName(root, file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return templateNames;
+    }
+
+    private static List<String> findClasspathTemplates() throws IOException {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        String root = resolver.getResource("classpath:template/").getURL().toString();
+        List<String> templateNames = new ArrayList<>();
+        for (Resource resource : resolver.getResources("classpath:template/**/*")) {
+            String url = resource.getURL().toString();
+            if (resource.isReadable() && url.startsWith(root) && isTemplate(Paths.get(resource.getFilename()))) {
+                // jar中的资源地址会转义中文等字符
+                templateNames.add(StringUtils.uriDecode(url.substring(root.length()), StandardCharsets.UTF_8));
+            }
+        }
+        return templateNames;
+    }
+
+    private static boolean isTemplate(Path file) {
+        String fileName = file.getFileName().toString();
+        for (String suffix : TEMPLATE_SUFFIXES) {
+            if (fileName.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toTemplateName(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private WatchService startWatching(Path root) {
+        WatchService service;
+        try {
+            service = root.getFileSystem().newWatchService();
+            registerAll(service, root);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("template dir can not be watched: " + root, e);
+        }
+        Thread watcher = new Thread(() -> watch(service, root), "excel-template-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("watching template dir: {}", root.toAbsolutePath());
+        return service;
+    }
+
+    private static void registerAll(WatchService service, Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) throws IOException {
+                subDir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * description: 监听线程，watchService关闭后退出
+     *
+     * @param service
+     * @param root
+     * @return void
+     */
+    private void watch(WatchService service, Path root) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // 丢失了事件，无法知道哪些模板被修改，全部重新编译
+                    reloadAll();
+                    continue;
+                }
+                Path file = dir.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                    try {
+                        registerAll(service, file);
+                    } catch (IOException | ClosedWatchServiceException e) {
+                        log.warn("watch template dir fail: {}", file, e);
+                    }
+                    continue;
+                }
+                if (isTemplate(file)) {
+                    reload(toTemplateName(root, file), event.kind() == StandardWatchEventKinds.ENTRY_DELETE);
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private void reload(String templateName, boolean deleted) {
+        try {
+            configuration.removeTemplateFromCache(templateName, configuration.getLocale(), charset, true);
+            blueprints.remove(templateName);
+            if (deleted) {
+                templates.remove(templateName);
+                log.info("template removed: {}", templateName);
+                return;
+            }
+            templates.put(templateName, compile(templateName));
+            log.info("template reloaded: {}", templateName);
+        } catch (IOException e) {
+            // 编辑器保存过程中可能读到不完整的文件，移除后下一次导出时重新编译并抛出错误
+            templates.remove(templateName);
+            log.warn("reload template fail: {}", templateName, e);
+        }
+    }
+
+    private void reloadAll() {
+        configuration.clearTemplateCache();
+        for (String templateName : templates.keySet()) {
+            reload(templateName, false);
+        }
+    }
+
+    private static class CompiledBlueprint {
+
+        private final Template template;
+        /**
+         * 模板无法编译为蓝图时为null
+         */
+        private final TemplateBlueprint blueprint;
+
+        private CompiledBlueprint(Template template, TemplateBlueprint blueprint) {
+            this.template = template;
+            this.blueprint = blueprint;
+        }
+    }
+
+    private static class CompiledTemplate {
+
+        private final Template template;
+
+        private final long lastModified;
+
+        private CompiledTemplate(Template template, long lastModified) {
+            this.template = template;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.ExcelStyle;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * description: 按模板缓存已编译的样式描述，模板文件修改后缓存自动失效
+ */
+class TemplateStyleCache {
+
+    private final ConcurrentMap<String, CompiledStyles> cache = new ConcurrentHashMap<>();
+
+    /**
+     * description: 获取模板的样式描述，未缓存或模板已修改时返回null
+     *
+     * @param templateName
+     * @param lastModified
+     * @return java.util.Map<java.lang.String, com.henry.cn.exportexcel.excel.ExcelStyle>
+     */
+    Map<String, ExcelStyle> get(String templateName, long lastModified) {
+        CompiledStyles compiledStyles = cache.get(templateName);
+        if (compiledStyles == null || compiledStyles.lastModified != lastModified) {
+            return null;
+        }
+        return compiledStyles.styles;
+    }
+
+    /**
+     * description: 缓存模板的样式描述，无法获取最后修改时间的模板不缓存
+     *
+     * @param templateName
+     * @param lastModified
+     * @param styles
+     * @return void
+     */
+    void put(String templateName, long lastModified, Map<String, ExcelStyle> styles) {
+        if (lastModified < 0) {
+            return;
+        }
+        cache.put(templateName, new CompiledStyles(lastModified, Collections.unmodifiableMap(styles)));
+    }
+
+    private static class CompiledStyles {
+
+        private final long lastModified;
+
+        private final Map<String, ExcelStyle> styles;
+
+        private CompiledStyles(long lastModified, Map<String, ExcelStyle> styles) {
+            this.lastModified = lastModified;
+            this.styles = styles;
+        }
+    }
+}
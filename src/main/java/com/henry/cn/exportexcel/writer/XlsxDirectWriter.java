@@ -0,0 +1,926 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.*;
+import com.henry.cn.exportexcel.reader.ExcelSheetHandler;
+import com.henry.cn.exportexcel.reader.StyleOverflowPolicy;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * description: 不经过POI的usermodel，将解析器逐行回调的数据直接写成xlsx的各个部件。
+ * 每行写完即按SpreadsheetML输出到zip中，内存中只保留当前行、未结束的合并单元格和当前sheet的注释，
+ * 数字、单元格地址和文本通过{@link XmlOutput}写入重复使用的缓冲区，不为单元格创建对象。
+ * 文本使用inlineStr写在单元格内，与SXSSF相同，不生成sharedStrings.xml。
+ * 样式、合并单元格的边框、注释和图片的效果与{@link SheetWriter}写入SXSSFWorkbook一致
+ */
+class XlsxDirectWriter implements ExcelSheetHandler {
+
+    static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+
+    private static final String DOCUMENT_RELATIONSHIP = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private static final String CONTENT_TYPE_PREFIX = "application/vnd.openxmlformats-officedocument.";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+
+    private static final int MAX_COLUMN_WIDTH = 255 * 256;
+
+    private final ZipOutputStream zip;
+
+    private final XmlOutput out;
+
+    private final XlsxStyles xlsxStyles;
+    /**
+     * sheet序号 -> 该sheet的图片，sheet结束时才读取图片内容
+     */
+    private final Map<Integer, List<ExcelImage>> imageMap = new HashMap<>();
+
+    private final ImageReader imageReader;
+
+    private final ExportStats stats;
+
+    private Map<String, ExcelStyle> styles;
+    /**
+     * 模板样式id -> cellXfs中的序号
+     */
+    private Map<String, Integer> xfMap = Collections.emptyMap();
+
+    private final List<String> sheetNames = new ArrayList<>();
+    /**
+     * 图片内容的hash -> media中的文件名，内容相同的图片只写入一次
+     */
+    private final Map<String, String> mediaMap = new HashMap<>();
+
+    private final Set<String> mediaExtensions = new TreeSet<>();
+
+    private final Set<Integer> drawingSheets = new TreeSet<>();
+
+    private final Set<Integer> commentSheets = new TreeSet<>();
+    /**
+     * 当前sheet的序号，从1开始
+     */
+    private int sheetNumber;
+    /**
+     * 当前行在xml中的序号
+     */
+    private int rowPosition;
+    /**
+     * 当前行在sheet中的行号
+     */
+    private int createRowIndex;
+    /**
+     * 已经写出的最后一行
+     */
+    private int lastRowIndex;
+    /**
+     * 尚未写完的合并单元格
+     */
+    private final List<PendingRange> pendingRanges = new LinkedList<>();
+    /**
+     * 当前sheet的全部合并单元格，sheetData之后统一写出
+     */
+    private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+
+    private MergedRegionIndex mergedRegionIndex;
+
+    private final List<PendingComment> comments = new ArrayList<>();
+
+    private final RowBuffer rowBuffer = new RowBuffer();
+
+    XlsxDirectWriter(OutputStream outputStream, int maxCellStyles, StyleOverflowPolicy styleOverflowPolicy,
+                     List<ExcelImage> images, ImageReader imageReader, ExportStats stats) {
+        this.zip = new ZipOutputStream(outputStream);
+        this.out = new XmlOutput(zip, BUFFER_SIZE);
+        this.xlsxStyles = new XlsxStyles(maxCellStyles, styleOverflowPolicy);
+        this.imageReader = imageReader;
+        this.stats = stats;
+        if (images != null) {
+            for (ExcelImage image : images) {
+                imageMap.computeIfAbsent(image.getSheetIndex(), key -> new ArrayList<>()).add(image);
+            }
+        }
+    }
+
+    @Override
+    public void styles(Map<String, ExcelStyle> styles) {
+        long start = System.nanoTime();
+        this.styles = styles;
+        Map<String, Integer> map = new HashMap<>(styles.size() * 2);
+        for (Map.Entry<String, ExcelStyle> entry : styles.entrySet()) {
+            map.put(entry.getKey(), xlsxStyles.getXf(entry.getValue()));
+        }
+        this.xfMap = map;
+        long elapsed = System.nanoTime() - start;
+        stats.stylesNanos += elapsed;
+        stats.handlerNanos += elapsed;
+    }
+
+    Map<String, ExcelStyle> getStyles() {
+        return styles;
+    }
+
+    XlsxStyles getXlsxStyles() {
+        return xlsxStyles;
+    }
+
+    @Override
+    public void startSheet(ExcelWorksheet worksheet) {
+        long start = System.nanoTime();
+        String sheetName = validateSheetName(worksheet.getName());
+        sheetNames.add(sheetName);
+        sheetNumber = sheetNames.size();
+        rowPosition = 0;
+        createRowIndex = 0;
+        lastRowIndex = -1;
+        pendingRanges.clear();
+        mergedRegions.clear();
+        mergedRegionIndex = new MergedRegionIndex();
+        try {
+            putEntry("xl/worksheets/sheet" + sheetNumber + ".xml");
+            out.write(XML_DECLARATION).write("<worksheet xmlns=\"").write(MAIN_NS).write("\" xmlns:r=\"")
+                    .write(DOCUMENT_RELATIONSHIP).write("\"><sheetViews><sheetView")
+                    .write(sheetNumber == 1 ? " tabSelected=\"1\"" : "")
+                    .write(" workbookViewId=\"0\"/></sheetViews><sheetFormatPr defaultRowHeight=\"15.0\"/>");
+            ExcelTable excelTable = worksheet.getExcelTable();
+            if (excelTable != null) {
+                writeColumns(excelTable.getExcelColumns());
+            }
+            out.write("<sheetData>");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        stats.handlerNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void row(ExcelRow excelRow) {
+        int rowIndex = rowPosition++;
+        if (excelRow == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        createRowIndex = SheetWriter.getIndex(createRowIndex, rowIndex, excelRow.getIndex());
+        if (createRowIndex <= lastRowIndex) {
+            throw new IllegalStateException("第" + (createRowIndex + 1) + "行已经写出，行号必须递增");
+        }
+        stats.rows++;
+        try {
+            // 模板跳过的行若处于合并单元格内，需要先补齐
+            long mergeStart = System.nanoTime();
+            fillPendingRows(createRowIndex - 1);
+            long rowStart = System.nanoTime();
+            rowBuffer.clear(createRowIndex, excelRow.getHeight());
+            int firstNewRange = pendingRanges.size();
+            bufferCells(excelRow.getExcelCells());
+            long rowEnd = System.nanoTime();
+            ListIterator<PendingRange> newRanges = pendingRanges.listIterator(firstNewRange);
+            while (newRanges.hasNext()) {
+                addMergedRegion(newRanges.next().range);
+            }
+            setRangeBorderInRow();
+            long writeStart = System.nanoTime();
+            writeRow();
+            lastRowIndex = createRowIndex;
+            long end = System.nanoTime();
+            stats.mergedRegionNanos += (rowStart - mergeStart) + (writeStart - rowEnd);
+            stats.handlerNanos += end - start;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void endSheet(ExcelWorksheet worksheet) {
+        long start = System.nanoTime();
+        try {
+            // 合并单元格超出模板最后一行的部分
+            fillPendingRows(Integer.MAX_VALUE);
+            out.write("</sheetData>");
+            writeMergedRegions();
+            out.write("<pageMargins left=\"0.7\" right=\"0.7\" top=\"0.75\" bottom=\"0.75\" header=\"0.3\""
+                    + " footer=\"0.3\"/>");
+            List<ExcelImage> images = imageMap.get(sheetNumber - 1);
+            boolean hasImages = CollectionUtils.isNotEmpty(images);
+            boolean hasComments = !comments.isEmpty();
+            if (hasImages) {
+                out.write("<drawing r:id=\"rId1\"/>");
+            }
+            if (hasComments) {
+                out.write("<legacyDrawing r:id=\"rId2\"/>");
+            }
+            out.write("</worksheet>");
+            closeEntry();
+            if (hasImages) {
+                long imagesStart = System.nanoTime();
+                writeDrawing(images);
+                stats.imagesNanos += System.nanoTime() - imagesStart;
+            }
+            if (hasComments) {
+                writeComments();
+            }
+            if (hasImages || hasComments) {
+                writeSheetRelationships(hasImages, hasComments);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        comments.clear();
+        mergedRegions.clear();
+        mergedRegionIndex = null;
+        long elapsed = System.nanoTime() - start;
+        stats.mergedRegionNanos += elapsed;
+        stats.handlerNanos += elapsed;
+    }
+
+    /**
+     * description: 写出workbook、样式和包结构，所有sheet结束后调用，不关闭下层的流
+     *
+     * @return void
+     */
+    void finish() throws IOException {
+        for (Integer sheetIndex : imageMap.keySet()) {
+            if (sheetIndex == null || sheetIndex < 0 || sheetIndex >= sheetNames.size()) {
+                throw new IllegalArgumentException("Sheet index (" + sheetIndex + ") is out of range (0.."
+                        + (sheetNames.size() - 1) + ")");
+            }
+        }
+        putEntry("xl/styles.xml");
+        xlsxStyles.write(out);
+        closeEntry();
+        writeWorkbook();
+        writeContentTypes();
+        putEntry("_rels/.rels");
+        out.write(XML_DECLARATION).write("<Relationships xmlns=\"").write(RELATIONSHIPS_NS).write("\">");
+        writeRelationship("rId1", "officeDocument", "xl/workbook.xml");
+        out.write("</Relationships>");
+        closeEntry();
+        zip.finish();
+    }
+
+    private String validateSheetName(String sheetName) {
+        if (sheetName == null) {
+            throw new IllegalArgumentException("sheetName must not be null");
+        }
+        WorkbookUtil.validateSheetName(sheetName);
+        if (sheetName.length() > MAX_SHEET_NAME_LENGTH) {
+            sheetName = sheetName.substring(0, MAX_SHEET_NAME_LENGTH);
+        }
+        for (String name : sheetNames) {
+            if (name.equalsIgnoreCase(sheetName)) {
+                throw new IllegalArgumentException("The workbook already contains a sheet named '" + sheetName + "'");
+            }
+        }
+        return sheetName;
+    }
+
+    /**
+     * description: 列宽与{@link SheetWriter}的fillColumnWidth一致，按列号排序后写出
+     *
+     * @param excelColumns
+     * @return void
+     */
+    private void writeColumns(List<ExcelColumn> excelColumns) throws IOException {
+        if (ObjectUtils.isEmpty(excelColumns)) {
+            return;
+        }
+        TreeMap<Integer, Integer> widthMap = new TreeMap<>();
+        int columnIndex = 0;
+        for (int i = 0; i < excelColumns.size(); i++) {
+            ExcelColumn excelColumn = excelColumns.get(i);
+            columnIndex = SheetWriter.getCellWidthIndex(columnIndex, i, excelColumn.getIndex());
+            int width = (int) excelColumn.getWidth() * 50;
+            if (width > MAX_COLUMN_WIDTH) {
+                throw new IllegalArgumentException("The maximum column width for an individual cell is 255 characters.");
+            }
+            widthMap.put(columnIndex, width);
+        }
+        out.write("<cols>");
+        for (Map.Entry<Integer, Integer> entry : widthMap.entrySet()) {
+            int column = entry.getKey() + 1;
+            out.write("<col min=\"").write(column).write("\" max=\"").write(column).write("\" width=\"")
+                    .write(entry.getValue() / 256.0).write("\" customWidth=\"1\"/>");
+        }
+        out.write("</cols>");
+    }
+
+    /**
+     * description: 将一行的单元格放入行缓冲区，并收集该行产生的合并单元格
+     *
+     * @param excelCells
+     * @return void
+     */
+    private void bufferCells(List<ExcelCell> excelCells) {
+        if (CollectionUtils.isEmpty(excelCells)) {
+            return;
+        }
+        int startIndex = 0;
+        for (int cellIndex = 0; cellIndex < excelCells.size(); cellIndex++) {
+            ExcelCell excelCell = excelCells.get(cellIndex);
+            if (excelCell == null) {
+                continue;
+            }
+            startIndex = SheetWriter.getIndex(startIndex, cellIndex, excelCell.getIndex());
+            Integer xf = xfMap.get(excelCell.getStyleID());
+            rowBuffer.put(startIndex, xf == null ? 0 : xf, excelCell.getExcelData());
+            stats.cells++;
+            if (excelCell.getExcelComment() != null) {
+                comments.add(new PendingComment(createRowIndex, startIndex, excelCell.getExcelComment()));
+            }
+            if (excelCell.getMergeAcross() != null || excelCell.getMergeDown() != null) {
+                CellRangeAddress range = SheetWriter.getCellRange(createRowIndex, startIndex, excelCell);
+                if (range != null) {
+                    pendingRanges.add(new PendingRange(range, xf == null ? -1 : xf));
+                }
+            }
+            startIndex = SheetWriter.getNextIndex(startIndex, excelCell);
+        }
+    }
+
+    private void addMergedRegion(CellRangeAddress range) {
+        mergedRegionIndex.add(range);
+        mergedRegions.add(range);
+        stats.mergedRegions++;
+    }
+
+    private void fillPendingRows(int endRowIndex) throws IOException {
+        while (!pendingRanges.isEmpty() && lastRowIndex < endRowIndex) {
+            lastRowIndex++;
+            rowBuffer.clear(lastRowIndex, null);
+            setRangeBorderInRow();
+            writeRow();
+        }
+    }
+
+    /**
+     * description: 设置合并单元格在缓冲行上的边框，与{@link SheetWriter}相同：边缘的单元格只替换所在边的边框，
+     * 中间的行只设置首尾两列，已经结束的合并单元格从pendingRanges中移除
+     *
+     * @return void
+     */
+    private void setRangeBorderInRow() {
+        int rowNum = rowBuffer.rowIndex;
+        Iterator<PendingRange> iterator = pendingRanges.iterator();
+        while (iterator.hasNext()) {
+            PendingRange pending = iterator.next();
+            CellRangeAddress range = pending.range;
+            if (rowNum < range.getFirstRow()) {
+                continue;
+            }
+            if (pending.xf >= 0) {
+                setRangeBorder(rowNum, range, pending.xf);
+            }
+            if (rowNum >= range.getLastRow()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void setRangeBorder(int rowNum, CellRangeAddress range, int rangeXf) {
+        boolean top = rowNum == range.getFirstRow();
+        boolean bottom = rowNum == range.getLastRow();
+        int firstColumn = range.getFirstColumn();
+        int lastColumn = range.getLastColumn();
+        int step = top || bottom ? 1 : Math.max(1, lastColumn - firstColumn);
+        for (int col = firstColumn; col <= lastColumn; col += step) {
+            int position = rowBuffer.position(col);
+            int baseXf = rowBuffer.xfs[position];
+            rowBuffer.xfs[position] = xlsxStyles.getBorderVariant(baseXf,
+                    xlsxStyles.getBorder(top ? rangeXf : baseXf, 0),
+                    xlsxStyles.getBorder(bottom ? rangeXf : baseXf, 1),
+                    xlsxStyles.getBorder(col == firstColumn ? rangeXf : baseXf, 2),
+                    xlsxStyles.getBorder(col == lastColumn ? rangeXf : baseXf, 3));
+        }
+    }
+
+    private void writeRow() throws IOException {
+        RowBuffer row = rowBuffer;
+        out.write("<row r=\"").write(row.rowIndex + 1L).write("\"");
+        if (row.height != null) {
+            // 与Row.setHeight相同，以1/20点为单位保存
+            out.write(" ht=\"").write((short) (row.height * 20) / 20.0).write("\" customHeight=\"1\"");
+        }
+        if (row.size == 0) {
+            out.write("/>");
+            return;
+        }
+        out.write(">");
+        for (int i = 0; i < row.size; i++) {
+            writeCell(row.rowIndex, row.columns[i], row.xfs[i], row.values[i]);
+        }
+        out.write("</row>");
+    }
+
+    /**
+     * description: 写出一个单元格，取值规则与{@link SheetWriter}的setCellValue一致
+     *
+     * @param rowIndex
+     * @param column
+     * @param xf
+     * @param excelData
+     * @return void
+     */
+    private void writeCell(int rowIndex, int column, int xf, ExcelData excelData) throws IOException {
+        out.write("<c r=\"").writeCellRef(rowIndex, column).write("\"");
+        if (xf != 0) {
+            out.write(" s=\"").write(xf).write("\"");
+        }
+        if (excelData == null) {
+            out.write("/>");
+            return;
+        }
+        String type = excelData.getType();
+        String text = excelData.getText();
+        if (excelData.getRichTextString() != null) {
+            writeInlineString(excelData.getRichTextString().getString());
+        } else if (CollectionUtils.isNotEmpty(excelData.getRichTextRuns())) {
+            writeRichText(excelData.getRichTextRuns());
+        } else if (excelData.getNumberValue() != null) {
+            writeNumber(excelData.getNumberValue());
+        } else if (ObjectUtils.isEmpty(text)) {
+            out.write("/>");
+        } else if (CellValues.NUMBER.equals(type)) {
+            double value;
+            try {
+                value = CellValues.parseNumber(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("单元格" + new CellAddress(rowIndex, column).formatAsString()
+                        + "的Number值无法解析: " + text, e);
+            }
+            if (isPlainDecimal(text)) {
+                // 原文本已是合法的数字，去掉千分位后直接写出，不再格式化double
+                out.write("><v>");
+                for (int i = 0, length = text.length(); i < length; i++) {
+                    char c = text.charAt(i);
+                    if (c != ',') {
+                        out.writeByte(c);
+                    }
+                }
+                out.write("</v></c>");
+            } else {
+                writeNumber(value);
+            }
+        } else if (CellValues.DATE_TIME.equals(type)) {
+            double date = CellValues.parseDateTime(text);
+            if (Double.isNaN(date)) {
+                writeInlineString(text);
+            } else {
+                writeNumber(date);
+            }
+        } else if (CellValues.BOOLEAN.equals(type)) {
+            Boolean value = CellValues.parseBoolean(text);
+            if (value == null) {
+                writeInlineString(text);
+            } else {
+                out.write(" t=\"b\"><v>").write(value ? "1" : "0").write("</v></c>");
+            }
+        } else if (CellValues.ERROR.equals(type)) {
+            FormulaError error = CellValues.parseError(text);
+            if (error == null) {
+                writeInlineString(text);
+            } else {
+                writeError(error);
+            }
+        } else {
+            writeInlineString(text);
+        }
+    }
+
+    /**
+     * description: 与Cell.setCellValue(double)相同，无穷大写为#DIV/0!，NaN写为#NUM!
+     */
+    private void writeNumber(double value) throws IOException {
+        if (Double.isInfinite(value)) {
+            writeError(FormulaError.DIV0);
+        } else if (Double.isNaN(value)) {
+            writeError(FormulaError.NUM);
+        } else {
+            out.write("><v>").write(value).write("</v></c>");
+        }
+    }
+
+    private void writeError(FormulaError error) throws IOException {
+        out.write(" t=\"e\"><v>").writeEscaped(error.getString()).write("</v></c>");
+    }
+
+    private void writeInlineString(String text) throws IOException {
+        out.write(" t=\"inlineStr\"><is>");
+        writeText(text);
+        out.write("</is></c>");
+    }
+
+    /**
+     * description: 富文本的每个片段使用各自的字体，空的片段不写出
+     *
+     * @param runs
+     * @return void
+     */
+    private void writeRichText(List<ExcelRichTextRun> runs) throws IOException {
+        out.write(" t=\"inlineStr\"><is>");
+        for (ExcelRichTextRun run : runs) {
+            if (StringUtils.isEmpty(run.getText())) {
+                continue;
+            }
+            out.write("<r><rPr>");
+            XlsxStyles.writeFontProperties(out, run.getFont(), true);
+            out.write("</rPr>");
+            writeText(run.getText());
+            out.write("</r>");
+        }
+        out.write("</is></c>");
+    }
+
+    private void writeText(String text) throws IOException {
+        if (!text.isEmpty() && (isXmlSpace(text.charAt(0)) || isXmlSpace(text.charAt(text.length() - 1)))) {
+            out.write("<t xml:space=\"preserve\">");
+        } else {
+            out.write("<t>");
+        }
+        out.writeEscaped(text).write("</t>");
+    }
+
+    private static boolean isXmlSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * description: 是否为可选负号、数字、千分位和至多一个小数点组成的文本，这样的文本去掉千分位后可以直接作为单元格的值
+     *
+     * @param text
+     * @return boolean
+     */
+    private static boolean isPlainDecimal(String text) {
+        int length = text.length();
+        int i = text.charAt(0) == '-' ? 1 : 0;
+        boolean digits = false;
+        boolean point = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else if (c != ',') {
+                return false;
+            }
+        }
+        return digits;
+    }
+
+    private void writeMergedRegions() throws IOException {
+        if (mergedRegions.isEmpty()) {
+            return;
+        }
+        out.write("<mergeCells count=\"").write(mergedRegions.size()).write("\">");
+        for (CellRangeAddress range : mergedRegions) {
+            out.write("<mergeCell ref=\"").writeCellRef(range.getFirstRow(), range.getFirstColumn()).write(":")
+                    .writeCellRef(range.getLastRow(), range.getLastColumn()).write("\"/>");
+        }
+        out.write("</mergeCells>");
+    }
+
+    /**
+     * description: 写出当前sheet的图片，位置与DONT_MOVE_AND_RESIZE的ClientAnchor相同，内容相同的图片共用一个media文件
+     *
+     * @param images
+     * @return void
+     */
+    private void writeDrawing(List<ExcelImage> images) throws IOException {
+        List<String> targets = new ArrayList<>();
+        for (ExcelImage image : images) {
+            ImageData imageData = imageReader.read(image).forXlsx();
+            targets.add(getMedia(imageData));
+            stats.images++;
+        }
+        drawingSheets.add(sheetNumber);
+        putEntry("xl/drawings/drawing" + sheetNumber + ".xml");
+        out.write(XML_DECLARATION)
+                .write("<xdr:wsDr xmlns:xdr=\"http://schemas.openxmlformats.org/drawingml/2006/spreadsheetDrawing\""
+                        + " xmlns:a=\"http://schemas.openxmlformats.org/drawingml/2006/main\" xmlns:r=\"")
+                .write(DOCUMENT_RELATIONSHIP).write("\">");
+        Map<String, Integer> relationshipMap = new LinkedHashMap<>();
+        for (int i = 0; i < images.size(); i++) {
+            ClientAnchor anchor = images.get(i).getAnchor();
+            int relationship = relationshipMap.computeIfAbsent(targets.get(i), key -> relationshipMap.size() + 1);
+            out.write("<xdr:twoCellAnchor editAs=\"absolute\"><xdr:from><xdr:col>").write(anchor.getCol1())
+                    .write("</xdr:col><xdr:colOff>").write(anchor.getDx1())
+                    .write("</xdr:colOff><xdr:row>").write(anchor.getRow1())
+                    .write("</xdr:row><xdr:rowOff>").write(anchor.getDy1())
+                    .write("</xdr:rowOff></xdr:from><xdr:to><xdr:col>").write(anchor.getCol2())
+                    .write("</xdr:col><xdr:colOff>").write(anchor.getDx2())
+                    .write("</xdr:colOff><xdr:row>").write(anchor.getRow2())
+                    .write("</xdr:row><xdr:rowOff>").write(anchor.getDy2())
+                    .write("</xdr:rowOff></xdr:to><xdr:pic><xdr:nvPicPr><xdr:cNvPr id=\"").write(i + 1)
+                    .write("\" name=\"Picture ").write(i + 1)
+                    .write("\"/><xdr:cNvPicPr><a:picLocks noChangeAspect=\"1\"/></xdr:cNvPicPr></xdr:nvPicPr>"
+                            + "<xdr:blipFill><a:blip r:embed=\"rId").write(relationship)
+                    .write("\"/><a:stretch><a:fillRect/></a:stretch></xdr:blipFill><xdr:spPr><a:xfrm>"
+                            + "<a:off x=\"0\" y=\"0\"/><a:ext cx=\"0\" cy=\"0\"/></a:xfrm><a:prstGeom prst=\"rect\">"
+                            + "<a:avLst/></a:prstGeom></xdr:spPr></xdr:pic><xdr:clientData/></xdr:twoCellAnchor>");
+        }
+        out.write("</xdr:wsDr>");
+        closeEntry();
+        putEntry("xl/drawings/_rels/drawing" + sheetNumber + ".xml.rels");
+        out.write(XML_DECLARATION).write("<Relationships xmlns=\"").write(RELATIONSHIPS_NS).write("\">");
+        for (Map.Entry<String, Integer> entry : relationshipMap.entrySet()) {
+            writeRelationship("rId" + entry.getValue(), "image", "../media/" + entry.getKey());
+        }
+        out.write("</Relationships>");
+        closeEntry();
+    }
+
+    /**
+     * description: 获取图片在media中的文件名，第一次出现时写入图片内容
+     *
+     * @param imageData
+     * @return java.lang.String
+     */
+    private String getMedia(ImageData imageData) throws IOException {
+        String media = mediaMap.get(imageData.getHash());
+        if (media == null) {
+            String extension = getExtension(imageData.getPictureType());
+            media = "image" + (mediaMap.size() + 1) + "." + extension;
+            mediaExtensions.add(extension);
+            zip.putNextEntry(new ZipEntry("xl/media/" + media));
+            zip.write(imageData.getBytes());
+            zip.closeEntry();
+            mediaMap.put(imageData.getHash(), media);
+        }
+        return media;
+    }
+
+    private static String getExtension(int pictureType) {
+        switch (pictureType) {
+            case Workbook.PICTURE_TYPE_JPEG:
+                return "jpeg";
+            case XSSFWorkbook.PICTURE_TYPE_GIF:
+                return "gif";
+            case XSSFWorkbook.PICTURE_TYPE_BMP:
+                return "bmp";
+            default:
+                return "png";
+        }
+    }
+
+    /**
+     * description: 写出当前sheet的注释及其vml画布，注释框与{@link SheetWriter}相同，放在单元格右侧，占两列三行
+     *
+     * @return void
+     */
+    private void writeComments() throws IOException {
+        commentSheets.add(sheetNumber);
+        Map<String, Integer> authorMap = new LinkedHashMap<>();
+        for (PendingComment pending : comments) {
+            authorMap.computeIfAbsent(StringUtils.defaultString(pending.comment.getAuthor()),
+                    key -> authorMap.size());
+        }
+        putEntry("xl/comments" + sheetNumber + ".xml");
+        out.write(XML_DECLARATION).write("<comments xmlns=\"").write(MAIN_NS).write("\"><authors>");
+        for (String author : authorMap.keySet()) {
+            out.write("<author>").writeEscaped(author).write("</author>");
+        }
+        out.write("</authors><commentList>");
+        for (PendingComment pending : comments) {
+            ExcelData excelData = pending.comment.getExcelData();
+            String text = excelData == null ? null : excelData.getText();
+            out.write("<comment ref=\"").writeCellRef(pending.row, pending.column).write("\" authorId=\"")
+                    .write(authorMap.get(StringUtils.defaultString(pending.comment.getAuthor())))
+                    .write("\"><text>");
+            writeText(StringUtils.defaultString(text));
+            out.write("</text></comment>");
+        }
+        out.write("</commentList></comments>");
+        closeEntry();
+        putEntry("xl/drawings/vmlDrawing" + sheetNumber + ".vml");
+        out.write("<xml xmlns:v=\"urn:schemas-microsoft-com:vml\" xmlns:o=\"urn:schemas-microsoft-com:office:office\""
+                + " xmlns:x=\"urn:schemas-microsoft-com:office:excel\"><o:shapelayout v:ext=\"edit\">"
+                + "<o:idmap v:ext=\"edit\" data=\"").write(sheetNumber).write("\"/></o:shapelayout>"
+                + "<v:shapetype id=\"_x0000_t202\" coordsize=\"21600,21600\" o:spt=\"202\""
+                + " path=\"m,l,21600r21600,l21600,xe\"><v:stroke joinstyle=\"miter\"/>"
+                + "<v:path gradientshapeok=\"t\" o:connecttype=\"rect\"/></v:shapetype>");
+        int shapeId = sheetNumber * 1024;
+        for (PendingComment pending : comments) {
+            out.write("<v:shape id=\"_x0000_s").write(++shapeId)
+                    .write("\" type=\"#_x0000_t202\" style=\"position:absolute;visibility:hidden\""
+                            + " fillcolor=\"#ffffe1\" o:insetmode=\"auto\"><v:fill color2=\"#ffffe1\"/>"
+                            + "<v:shadow on=\"t\" color=\"black\" obscured=\"t\"/><v:path o:connecttype=\"none\"/>"
+                            + "<v:textbox style=\"mso-direction-alt:auto\"><div style=\"text-align:left\"></div>"
+                            + "</v:textbox><x:ClientData ObjectType=\"Note\"><x:MoveWithCells/><x:SizeWithCells/>"
+                            + "<x:Anchor>").write(pending.column + 1).write(", 0, ").write(pending.row)
+                    .write(", 0, ").write(pending.column + 3).write(", 0, ").write(pending.row + 3)
+                    .write(", 0</x:Anchor><x:AutoFill>False</x:AutoFill><x:Row>").write(pending.row)
+                    .write("</x:Row><x:Column>").write(pending.column).write("</x:Column></x:ClientData></v:shape>");
+        }
+        out.write("</xml>");
+        closeEntry();
+    }
+
+    private void writeSheetRelationships(boolean hasImages, boolean hasComments) throws IOException {
+        putEntry("xl/worksheets/_rels/sheet" + sheetNumber + ".xml.rels");
+        out.write(XML_DECLARATION).write("<Relationships xmlns=\"").write(RELATIONSHIPS_NS).write("\">");
+        if (hasImages) {
+            writeRelationship("rId1", "drawing", "../drawings/drawing" + sheetNumber + ".xml");
+        }
+        if (hasComments) {
+            writeRelationship("rId2", "vmlDrawing", "../drawings/vmlDrawing" + sheetNumber + ".vml");
+            writeRelationship("rId3", "comments", "../comments" + sheetNumber + ".xml");
+        }
+        out.write("</Relationships>");
+        closeEntry();
+    }
+
+    private void writeWorkbook() throws IOException {
+        putEntry("xl/workbook.xml");
+        out.write(XML_DECLARATION).write("<workbook xmlns=\"").write(MAIN_NS).write("\" xmlns:r=\"")
+                .write(DOCUMENT_RELATIONSHIP).write("\"><bookViews><workbookView activeTab=\"0\"/></bookViews><sheets>");
+        for (int i = 0; i < sheetNames.size(); i++) {
+            out.write("<sheet name=\"").writeEscaped(sheetNames.get(i)).write("\" sheetId=\"").write(i + 1)
+                    .write("\" r:id=\"rId").write(i + 1).write("\"/>");
+        }
+        out.write("</sheets></workbook>");
+        closeEntry();
+        putEntry("xl/_rels/workbook.xml.rels");
+        out.write(XML_DECLARATION).write("<Relationships xmlns=\"").write(RELATIONSHIPS_NS).write("\">");
+        for (int i = 0; i < sheetNames.size(); i++) {
+            writeRelationship("rId" + (i + 1), "worksheet", "worksheets/sheet" + (i + 1) + ".xml");
+        }
+        writeRelationship("rId" + (sheetNames.size() + 1), "styles", "styles.xml");
+        out.write("</Relationships>");
+        closeEntry();
+    }
+
+    private void writeContentTypes() throws IOException {
+        putEntry("[Content_Types].xml");
+        out.write(XML_DECLARATION)
+                .write("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                        + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                        + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+        if (!commentSheets.isEmpty()) {
+            out.write("<Default Extension=\"vml\" ContentType=\"").write(CONTENT_TYPE_PREFIX)
+                    .write("vmlDrawing\"/>");
+        }
+        for (String extension : mediaExtensions) {
+            out.write("<Default Extension=\"").write(extension).write("\" ContentType=\"image/").write(extension)
+                    .write("\"/>");
+        }
+        writeOverride("/xl/workbook.xml", "spreadsheetml.sheet.main+xml");
+        writeOverride("/xl/styles.xml", "spreadsheetml.styles+xml");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            writeOverride("/xl/worksheets/sheet" + i + ".xml", "spreadsheetml.worksheet+xml");
+        }
+        for (Integer sheet : drawingSheets) {
+            writeOverride("/xl/drawings/drawing" + sheet + ".xml", "drawing+xml");
+        }
+        for (Integer sheet : commentSheets) {
+            writeOverride("/xl/comments" + sheet + ".xml", "spreadsheetml.comments+xml");
+        }
+        out.write("</Types>");
+        closeEntry();
+    }
+
+    private void writeOverride(String partName, String contentType) throws IOException {
+        out.write("<Override PartName=\"").write(partName).write("\" ContentType=\"").write(CONTENT_TYPE_PREFIX)
+                .write(contentType).write("\"/>");
+    }
+
+    private void writeRelationship(String id, String type, String target) throws IOException {
+        out.write("<Relationship Id=\"").write(id).write("\" Type=\"").write(DOCUMENT_RELATIONSHIP).write("/")
+                .write(type).write("\" Target=\"").writeEscaped(target).write("\"/>");
+    }
+
+    private void putEntry(String name) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+    }
+
+    private void closeEntry() throws IOException {
+        out.flushBuffer();
+        zip.closeEntry();
+    }
+
+    /**
+     * description: 读取图片内容，sheet结束时才调用
+     */
+    @FunctionalInterface
+    interface ImageReader {
+
+        ImageData read(ExcelImage excelImage) throws IOException;
+    }
+
+    /**
+     * description: 当前行的单元格，按列号排序，整个导出过程中重复使用
+     */
+    private static class RowBuffer {
+
+        private int rowIndex;
+
+        private Integer height;
+
+        private int size;
+
+        private int[] columns = new int[16];
+
+        private int[] xfs = new int[16];
+
+        private ExcelData[] values = new ExcelData[16];
+
+        private void clear(int rowIndex, Integer height) {
+            this.rowIndex = rowIndex;
+            this.height = height;
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+        }
+
+        private void put(int column, int xf, ExcelData value) {
+            int position = position(column);
+            xfs[position] = xf;
+            values[position] = value;
+        }
+
+        /**
+         * description: 获取列在缓冲区中的位置，没有该列时插入一个默认样式的空单元格
+         *
+         * @param column
+         * @return int
+         */
+        private int position(int column) {
+            if (size == 0 || columns[size - 1] < column) {
+                return insert(size, column);
+            }
+            int position = Arrays.binarySearch(columns, 0, size, column);
+            return position >= 0 ? position : insert(-position - 1, column);
+        }
+
+        private int insert(int position, int column) {
+            if (size == columns.length) {
+                int capacity = size * 2;
+                columns = Arrays.copyOf(columns, capacity);
+                xfs = Arrays.copyOf(xfs, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            int moved = size - position;
+            if (moved > 0) {
+                System.arraycopy(columns, position, columns, position + 1, moved);
+                System.arraycopy(xfs, position, xfs, position + 1, moved);
+                System.arraycopy(values, position, values, position + 1, moved);
+            }
+            columns[position] = column;
+            xfs[position] = 0;
+            values[position] = null;
+            size++;
+            return position;
+        }
+    }
+
+    /**
+     * description: 尚未写完的合并单元格及其样式，没有样式时xf为-1
+     */
+    private static class PendingRange {
+
+        private final CellRangeAddress range;
+
+        private final int xf;
+
+        private PendingRange(CellRangeAddress range, int xf) {
+            this.range = range;
+            this.xf = xf;
+        }
+    }
+
+    /**
+     * description: 等待写出的注释及其所在的单元格
+     */
+    private static class PendingComment {
+
+        private final int row;
+
+        private final int column;
+
+        private final ExcelComment comment;
+
+        private PendingComment(int row, int column, ExcelComment comment) {
+            this.row = row;
+            this.column = column;
+            this.comment = comment;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.henry.cn.exportexcel.writer;
+
+import com.henry.cn.exportexcel.excel.ExcelFont;
+import com.henry.cn.exportexcel.excel.ExcelStyle;
+import com.henry.cn.exportexcel.reader.NumberFormats;
+import com.henry.cn.exportexcel.reader.StyleOverflowPolicy;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STBorderStyle;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STHorizontalAlignment;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STPatternType;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STVerticalAlignment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * description: {@link XlsxDirectWriter}使用的styles.xml。字体、填充、边框、数字格式和样式分别去重，
+ * 样式在Styles节点回调时一次性登记，写入单元格时只使用登记得到的序号。
+ * 外观相同的样式、样式数量上限和合并单元格的边框样式与{@link com.henry.cn.exportexcel.reader.WorkbookContext}的处理一致
+ */
+class XlsxStyles {
+    private static final Logger log = LoggerFactory.getLogger(XlsxStyles.class);
+
+    private static final String DEFAULT_FONT_NAME = "Calibri";
+
+    private static final int DEFAULT_FONT_SIZE = 11;
+    /**
+     * 自定义数字格式的序号从164开始，之前的序号属于内置格式
+     */
+    private static final int FIRST_CUSTOM_FORMAT = 164;
+
+    private static final BorderStyle[] BORDER_STYLES = BorderStyle.values();
+
+    private final int maxCellStyles;
+
+    private final StyleOverflowPolicy styleOverflowPolicy;
+    /**
+     * 序号0为默认字体
+     */
+    private final List<ExcelFont> fonts = new ArrayList<>();
+
+    private final Map<ExcelFont, Integer> fontMap = new HashMap<>();
+    /**
+     * 序号0、1为excel要求的none和gray125
+     */
+    private final Map<String, Integer> fillMap = new LinkedHashMap<>();
+    /**
+     * 每个边框依次为上、下、左、右的BorderStyle序号，序号0为没有边框
+     */
+    private final List<int[]> borders = new ArrayList<>();
+
+    private final Map<Integer, Integer> borderMap = new HashMap<>();
+
+    private final Map<String, Integer> numberFormatMap = new LinkedHashMap<>();
+
+    private final List<Xf> xfs = new ArrayList<>();
+
+    private final Map<ExcelStyle, Integer> xfMap = new HashMap<>();
+
+    private final Map<Long, Integer> borderVariantMap = new HashMap<>();
+
+    private int collapsedStyleCount;
+
+    private int degradedStyleCount;
+
+    XlsxStyles(int maxCellStyles, StyleOverflowPolicy styleOverflowPolicy) {
+        int formatLimit = SpreadsheetVersion.EXCEL2007.getMaxCellStyles();
+        this.maxCellStyles = maxCellStyles > 0 ? Math.min(maxCellStyles, formatLimit) : formatLimit;
+        this.styleOverflowPolicy = styleOverflowPolicy;
+        fonts.add(null);
+        fillMap.put("<patternFill patternType=\"none\"/>", 0);
+        fillMap.put("<patternFill patternType=\"gray125\"/>", 1);
+        borders.add(new int[4]);
+        borderMap.put(0, 0);
+        xfs.add(new Xf());
+    }
+
+    /**
+     * description: 获取样式描述对应的样式序号，外观相同的样式只登记一次
+     *
+     * @param excelStyle
+     * @return int
+     */
+    int getXf(ExcelStyle excelStyle) {
+        Integer index = xfMap.get(excelStyle);
+        if (index != null) {
+            collapsedStyleCount++;
+            return index;
+        }
+        if (isStyleBudgetExhausted(excelStyle.getId())) {
+            return 0;
+        }
+        Xf xf = new Xf();
+        if (excelStyle.getNumberFormat() != null) {
+            xf.numberFormat = getNumberFormat(excelStyle.getNumberFormat());
+        }
+        if (excelStyle.getFont() != null) {
+            xf.font = fontMap.computeIfAbsent(excelStyle.getFont(), key -> {
+                fonts.add(key);
+                return fonts.size() - 1;
+            });
+        }
+        xf.fill = getFill(excelStyle);
+        xf.border = getBorder(ordinal(excelStyle.getBorderTop()), ordinal(excelStyle.getBorderBottom()),
+                ordinal(excelStyle.getBorderLeft()), ordinal(excelStyle.getBorderRight()));
+        if (excelStyle.getAlignment() != null) {
+            xf.horizontal = STHorizontalAlignment.Enum.forInt(excelStyle.getAlignment().ordinal() + 1).toString();
+        }
+        if (excelStyle.getVerticalAlignment() != null) {
+            xf.vertical = STVerticalAlignment.Enum.forInt(excelStyle.getVerticalAlignment().ordinal() + 1).toString();
+        }
+        xf.wrapText = excelStyle.isWrapText();
+        xfs.add(xf);
+        index = xfs.size() - 1;
+        xfMap.put(excelStyle, index);
+        return index;
+    }
+
+    /**
+     * description: 样式的某个边框，side依次为0上、1下、2左、3右，返回BorderStyle的序号
+     *
+     * @param xf
+     * @param side
+     * @return int
+     */
+    int getBorder(int xf, int side) {
+        return borders.get(xfs.get(xf).border)[side];
+    }
+
+    /**
+     * description: 获取在样式xf上替换四个边框后的样式序号，相同的组合只登记一次，
+     * 边框与原样式相同或样式数量达到上限且允许降级时返回xf
+     *
+     * @param xf
+     * @param top
+     * @param bottom
+     * @param left
+     * @param right
+     * @return int
+     */
+    int getBorderVariant(int xf, int top, int bottom, int left, int right) {
+        int[] base = borders.get(xfs.get(xf).border);
+        if (base[0] == top && base[1] == bottom && base[2] == left && base[3] == right) {
+            return xf;
+        }
+        long key = (long) xf << 16 | top << 12 | bottom << 8 | left << 4 | right;
+        Integer index = borderVariantMap.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (isStyleBudgetExhausted("border variant of " + xf)) {
+            return xf;
+        }
+        Xf variant = xfs.get(xf).copy();
+        variant.border = getBorder(top, bottom, left, right);
+        xfs.add(variant);
+        index = xfs.size() - 1;
+        borderVariantMap.put(key, index);
+        return index;
+    }
+
+    /**
+     * description: 登记的样式数量，不包括默认样式
+     *
+     * @return int
+     */
+    int getCellStyleCount() {
+        return xfs.size() - 1;
+    }
+
+    int getCollapsedStyleCount() {
+        return collapsedStyleCount;
+    }
+
+    int getDegradedStyleCount() {
+        return degradedStyleCount;
+    }
+
+    private boolean isStyleBudgetExhausted(String description) {
+        if (xfs.size() < maxCellStyles) {
+            return false;
+        }
+        if (styleOverflowPolicy == StyleOverflowPolicy.FAIL) {
+            throw new IllegalStateException("样式数量达到上限" + maxCellStyles + ", style: " + description);
+        }
+        if (degradedStyleCount++ == 0) {
+            log.warn("样式数量达到上限{}，之后新的样式使用默认样式代替, style: {}", maxCellStyles, description);
+        }
+        return true;
+    }
+
+    private int getNumberFormat(String numberFormat) {
+        String formatCode = NumberFormats.toFormatCode(numberFormat);
+        int builtin = BuiltinFormats.getBuiltinFormat(formatCode);
+        if (builtin >= 0) {
+            return builtin;
+        }
+        return numberFormatMap.computeIfAbsent(formatCode, key -> FIRST_CUSTOM_FORMAT + numberFormatMap.size());
+    }
+
+    /**
+     * description: 与XSSFCellStyle一致，填充色同时作为前景色和背景色
+     */
+    private int getFill(ExcelStyle excelStyle) {
+        if (excelStyle.getInteriorColor() == null && excelStyle.getFillPattern() == null) {
+            return 0;
+        }
+        StringBuilder fill = new StringBuilder("<patternFill");
+        if (excelStyle.getFillPattern() != null) {
+            fill.append(" patternType=\"")
+                    .append(STPatternType.Enum.forInt(excelStyle.getFillPattern().getCode() + 1)).append('"');
+        }
+        fill.append('>');
+        if (excelStyle.getInteriorColor() != null) {
+            String argb = toArgb(excelStyle.getInteriorColor());
+            fill.append("<fgColor rgb=\"").append(argb).append("\"/><bgColor rgb=\"").append(argb).append("\"/>");
+        }
+        fill.append("</patternFill>");
+        return fillMap.computeIfAbsent(fill.toString(), key -> fillMap.size());
+    }
+
+    private int getBorder(int top, int bottom, int left, int right) {
+        int key = top << 12 | bottom << 8 | left << 4 | right;
+        return borderMap.computeIfAbsent(key, k -> {
+            borders.add(new int[]{top, bottom, left, right});
+            return borders.size() - 1;
+        });
+    }
+
+    private static int ordinal(BorderStyle borderStyle) {
+        return borderStyle == null ? 0 : borderStyle.ordinal();
+    }
+
+    /**
+     * description: #RRGGBB格式的颜色转换为OOXML的ARGB
+     *
+     * @param color
+     * @return java.lang.String
+     */
+    static String toArgb(String color) {
+        return String.format("FF%06X", Integer.decode(color) & 0xFFFFFF);
+    }
+
+    /**
+     * description: 写入字体的属性，run为true时写富文本片段的rPr，字体名称使用rFont
+     *
+     * @param out
+     * @param font
+     * @param run
+     * @return void
+     */
+    static void writeFontProperties(XmlOutput out, ExcelFont font, boolean run) throws IOException {
+        if (font == null) {
+            font = new ExcelFont();
+        }
+        if (font.isBold()) {
+            out.write("<b/>");
+        }
+        out.write("<sz val=\"").write(font.getSize() == null ? DEFAULT_FONT_SIZE : font.getSize()).write("\"/>");
+        if (font.getColor() != null) {
+            out.write("<color rgb=\"").write(toArgb(font.getColor())).write("\"/>");
+        }
+        out.write(run ? "<rFont val=\"" : "<name val=\"")
+                .writeEscaped(font.getFontName() == null ? DEFAULT_FONT_NAME : font.getFontName()).write("\"/>");
+        if (font.getCharSet() != null) {
+            out.write("<charset val=\"").write(font.getCharSet()).write("\"/>");
+        }
+    }
+
+    /**
+     * description: 写出styles.xml
+     *
+     * @param out
+     * @return void
+     */
+    void write(XmlOutput out) throws IOException {
+        out.write(XlsxDirectWriter.XML_DECLARATION)
+                .write("<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
+        if (!numberFormatMap.isEmpty()) {
+            out.write("<numFmts count=\"").write(numberFormatMap.size()).write("\">");
+            for (Map.Entry<String, Integer> entry : numberFormatMap.entrySet()) {
+                out.write("<numFmt numFmtId=\"").write(entry.getValue()).write("\" formatCode=\"")
+                        .writeEscaped(entry.getKey()).write("\"/>");
+            }
+            out.write("</numFmts>");
+        }
+        out.write("<fonts count=\"").write(fonts.size()).write("\">");
+        out.write("<font><sz val=\"11\"/><color indexed=\"8\"/><name val=\"Calibri\"/><family val=\"2\"/>"
+                + "<scheme val=\"minor\"/></font>");
+        for (int i = 1; i < fonts.size(); i++) {
+            out.write("<font>");
+            writeFontProperties(out, fonts.get(i), false);
+            out.write("</font>");
+        }
+        out.write("</fonts><fills count=\"").write(fillMap.size()).write("\">");
+        for (String fill : fillMap.keySet()) {
+            out.write("<fill>").write(fill).write("</fill>");
+        }
+        out.write("</fills><borders count=\"").write(borders.size()).write("\">");
+        for (int[] border : borders) {
+            out.write("<border>");
+            writeBorderSide(out, "left", border[2]);
+            writeBorderSide(out, "right", border[3]);
+            writeBorderSide(out, "top", border[0]);
+            writeBorderSide(out, "bottom", border[1]);
+            out.write("<diagonal/></border>");
+        }
+        out.write("</borders><cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/>"
+                + "</cellStyleXfs><cellXfs count=\"").write(xfs.size()).write("\">");
+        for (Xf xf : xfs) {
+            xf.write(out);
+        }
+        out.write("</cellXfs><cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/>"
+                + "</cellStyles></styleSheet>");
+    }
+
+    private static void writeBorderSide(XmlOutput out, String side, int borderStyle) throws IOException {
+        out.write("<").write(side);
+        if (borderStyle != 0) {
+            out.write(" style=\"").write(STBorderStyle.Enum.forInt(BORDER_STYLES[borderStyle].getCode() + 1).toString())
+                    .write("\"");
+        }
+        out.write("/>");
+    }
+
+    /**
+     * description: cellXfs中的一个样式
+     */
+    private static class Xf {
+
+        private int numberFormat;
+
+        private int font;
+
+        private int fill;
+
+        private int border;
+
+        private String horizontal;
+
+        private String vertical;
+
+        private boolean wrapText;
+
+        private Xf copy() {
+            Xf xf = new Xf();
+            xf.numberFormat = numberFormat;
+            xf.font = font;
+            xf.fill = fill;
+            xf.border = border;
+            xf.horizontal = horizontal;
+            xf.vertical = vertical;
+            xf.wrapText = wrapText;
+            return xf;
+        }
+
+        private void write(XmlOutput out) throws IOException {
+            out.write("<xf numFmtId=\"").write(numberFormat).write("\" fontId=\"").write(font)
+                    .write("\" fillId=\"").write(fill).write("\" borderId=\"").write(border).write("\" xfId=\"0\"");
+            if (numberFormat != 0) {
+                out.write(" applyNumberFormat=\"1\"");
+            }
+            if (font != 0) {
+                out.write(" applyFont=\"1\"");
+            }
+            if (fill != 0) {
+                out.write(" applyFill=\"1\"");
+            }
+            if (border != 0) {
+                out.write(" applyBorder=\"1\"");
+            }
+            if (horizontal == null && vertical == null && !wrapText) {
+                out.write("/>");
+                return;
+            }
+            out.write(" applyAlignment=\"1\"><alignment");
+            if (horizontal != null) {
+                out.write(" horizontal=\"").write(horizontal).write("\"");
+            }
+            if (vertical != null) {
+                out.write(" vertical=\"").write(vertical).write("\"");
+            }
+            if (wrapText) {
+                out.write(" wrapText=\"1\"");
+            }
+            out.write("/></xf>");
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.henry.cn.exportexcel.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * description: 直接按UTF-8编码写xml的字节缓冲区，缓冲区在整个导出过程中重复使用，满了才写入下层的流。
+ * 写数字、单元格地址和转义文本时都不生成中间字符串
+ */
+final class XmlOutput {
+
+    private final OutputStream out;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    XmlOutput(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * description: 写入不需要转义的内容，例如标签和属性名
+     *
+     * @param text
+     * @return com.henry.cn.exportexcel.writer.XmlOutput
+     */
+    XmlOutput write(String text) throws IOException {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                writeByte(c);
+            } else {
+                i = writeUtf8(text, i, length);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * description: 写入文本或属性值，转义xml的特殊字符，并丢弃xml 1.0不允许的控制字符
+     *
+     * @param text
+     * @return com.henry.cn.exportexcel.writer.XmlOutput
+     */
+    XmlOutput writeEscaped(String text) throws IOException {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    write("&amp;");
+                    break;
+                case '<':
+                    write("&lt;");
+                    break;
+                case '>':
+                    write("&gt;");
+                    break;
+                case '"':
+                    write("&quot;");
+                    break;
+                case '\n':
+                case '\r':
+                case '\t':
+                    writeByte(c);
+                    break;
+                default:
+                    if (c < 0x20 || c == 0xFFFE || c == 0xFFFF) {
+                        break;
+                    }
+                    if (c < 0x80) {
+                        writeByte(c);
+                    } else {
+                        i = writeUtf8(text, i, length);
+                    }
+                    break;
+            }
+        }
+        return this;
+    }
+
+    XmlOutput write(long value) throws IOException {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                return write(Long.toString(value));
+            }
+            writeByte('-');
+            value = -value;
+        }
+        ensure(20);
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        reverse(start, position - 1);
+        return this;
+    }
+
+    /**
+     * description: 写入double，整数直接按long写入，其他值使用Double.toString
+     *
+     * @param value
+     * @return com.henry.cn.exportexcel.writer.XmlOutput
+     */
+    XmlOutput write(double value) throws IOException {
+        if (value == (long) value && Math.abs(value) < 1e15) {
+            return write((long) value);
+        }
+        return write(Double.toString(value));
+    }
+
+    /**
+     * description: 写入A1格式的单元格地址，行列号从0开始
+     *
+     * @param row
+     * @param column
+     * @return com.henry.cn.exportexcel.writer.XmlOutput
+     */
+    XmlOutput writeCellRef(int row, int column) throws IOException {
+        writeColumnName(column);
+        return write(row + 1L);
+    }
+
+    XmlOutput writeColumnName(int column) throws IOException {
+        ensure(3);
+        int start = position;
+        int value = column + 1;
+        while (value > 0) {
+            int remainder = (value - 1) % 26;
+            buffer[position++] = (byte) ('A' + remainder);
+            value = (value - 1) / 26;
+        }
+        reverse(start, position - 1);
+        return this;
+    }
+
+    XmlOutput writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+        return this;
+    }
+
+    /**
+     * description: 将缓冲区的内容写入下层的流，每个zip条目结束前调用
+     *
+     * @return void
+     */
+    void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private int writeUtf8(String text, int index, int length) throws IOException {
+        char c = text.charAt(index);
+        ensure(4);
+        if (c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | c >> 6);
+            buffer[position++] = (byte) (0x80 | c & 0x3F);
+            return index;
+        }
+        if (Character.isHighSurrogate(c) && index + 1 < length && Character.isLowSurrogate(text.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+            buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+            buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+            return index + 1;
+        }
+        if (Character.isSurrogate(c)) {
+            // 不成对的代理字符不是合法的xml字符
+            return index;
+        }
+        buffer[position++] = (byte) (0xE0 | c >> 12);
+        buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+        buffer[position++] = (byte) (0x80 | c & 0x3F);
+        return index;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.length - position < bytes) {
+            flushBuffer();
+        }
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            byte b = buffer[from];
+            buffer[from++] = buffer[to];
+            buffer[to--] = b;
+        }
+    }
+}
@@ -1,29 +1,108 @@
 package com.henry.cn.exportexcel;
 
 import com.henry.cn.exportexcel.excel.ExcelImage;
+import com.henry.cn.exportexcel.reader.StyleOverflowPolicy;
+import com.henry.cn.exportexcel.service.AsyncExcelExportService;
+import com.henry.cn.exportexcel.writer.ExcelBatchItem;
+import com.henry.cn.exportexcel.writer.ExcelBatchResult;
+import com.henry.cn.exportexcel.writer.ExcelExportException;
+import com.henry.cn.exportexcel.writer.ExcelExporter;
+import com.henry.cn.exportexcel.writer.ExcelFormat;
 import com.henry.cn.exportexcel.writer.ExcelWriter;
+import com.henry.cn.exportexcel.writer.ResultSetRows;
+import freemarker.template.TemplateException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.FileUtils;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
 import org.apache.poi.hssf.usermodel.HSSFClientAnchor;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Color;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Picture;
+import org.apache.poi.ss.usermodel.PictureData;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Shape;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellAddress;
 import org.apache.poi.xssf.usermodel.XSSFClientAnchor;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 class ExportExcelApplicationTests {
 
     private static final Logger log = LoggerFactory.getLogger(ExportExcelApplicationTests.class);
 
+    @Autowired
+    private AsyncExcelExportService asyncExcelExportService;
+
+    @Autowired
+    private ExcelExporter excelExporter;
+
     @Test
     public void writeExcel() throws IOException {
         Map<String, Object> dataMap = getDemoDataMap();
@@ -54,6 +133,1012 @@ class ExportExcelApplicationTests {
         ExcelWriter.writeExcel2007(dataMap, templateName, "图片-颜色-单元格合并-样例-2007", xssfImgs);
     }
 
+    @Test
+    public void writerUsesConfiguredExporter() {
+        // 静态方法与容器中的引擎共用预编译并监听的模板，不再逐次检查模板文件
+        assertSame(excelExporter, ExcelWriter.getExporter());
+        assertTrue(ExcelWriter.getExporter().isWatchTemplates());
+    }
+
+    @Test
+    public void writerSetTemplateDir() throws InterruptedException {
+        long watchers = countTemplateWatchers();
+        ExcelWriter.setTemplateDir(excelExporter.getTemplateDir());
+        try {
+            assertNotSame(excelExporter, ExcelWriter.getExporter());
+            assertEquals(watchers + 1, countTemplateWatchers());
+        } finally {
+            ExcelWriter.setExporter(excelExporter);
+        }
+        // 被替换的引擎由ExcelWriter创建，替换时关闭并停止监听线程
+        long deadline = System.currentTimeMillis() + 5000;
+        while (countTemplateWatchers() > watchers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(watchers, countTemplateWatchers());
+    }
+
+    private static long countTemplateWatchers() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.isAlive() && "excel-template-watcher".equals(thread.getName()))
+                .count();
+    }
+
+    @Test
+    public void writeExcelStreaming(@TempDir File tempDir) throws IOException {
+        Map<String, Object> dataMap = getDemoDataMap();
+        String templateName = "图片-颜色-单元格合并-样例.xml";
+        File xssfFile = new File(tempDir, "xssf.xlsx");
+        File sxssfFile = new File(tempDir, "sxssf.xlsx");
+        ExcelWriter.writeExcel2007(dataMap, templateName, xssfFile);
+        // 窗口设置得很小，保证合并单元格跨越已刷写的行
+        ExcelWriter.writeExcel2007Streaming(dataMap, templateName, sxssfFile, new ArrayList<>(), 2, true);
+        assertSameContent(xssfFile, sxssfFile);
+    }
+
+    @Test
+    public void writeExcelDirect(@TempDir File tempDir) throws IOException, InvalidFormatException {
+        Map<String, Object> dataMap = getDemoDataMap();
+        String templateName = "图片-颜色-单元格合并-样例.xml";
+        File img = new PathMatchingResourcePatternResolver().getResource("template/功能简介.png").getFile();
+        List<ExcelImage> images = Collections.singletonList(
+                new ExcelImage(img, 0, createAnchor(ExcelFormat.XLSX, 5, 1)));
+        File sxssfFile = new File(tempDir, "sxssf.xlsx");
+        File directFile = new File(tempDir, "direct.xlsx");
+        ExcelWriter.writeExcel2007Streaming(dataMap, templateName, sxssfFile, images);
+        ExcelWriter.writeExcel2007Direct(dataMap, templateName, directFile, images);
+        assertSameContent(sxssfFile, directFile);
+        try (Workbook expected = WorkbookFactory.create(sxssfFile, null, true);
+             Workbook actual = WorkbookFactory.create(directFile, null, true)) {
+            assertEquals(1, actual.getAllPictures().size());
+            for (int i = 0; i < expected.getNumberOfSheets(); i++) {
+                Sheet expectedSheet = expected.getSheetAt(i);
+                Sheet actualSheet = actual.getSheetAt(i);
+                for (int col = 0; col < 20; col++) {
+                    assertEquals(expectedSheet.getColumnWidth(col), actualSheet.getColumnWidth(col));
+                }
+                for (Row expectedRow : expectedSheet) {
+                    Row actualRow = actualSheet.getRow(expectedRow.getRowNum());
+                    assertEquals(expectedRow.getHeight(), actualRow.getHeight());
+                    for (Cell expectedCell : expectedRow) {
+                        CellStyle expectedStyle = expectedCell.getCellStyle();
+                        CellStyle actualStyle = actualRow.getCell(expectedCell.getColumnIndex()).getCellStyle();
+                        String address = expectedCell.getAddress().formatAsString();
+                        assertEquals(expectedStyle.getDataFormatString(), actualStyle.getDataFormatString(), address);
+                        assertEquals(expectedStyle.getAlignmentEnum(), actualStyle.getAlignmentEnum(), address);
+                        assertEquals(expectedStyle.getWrapText(), actualStyle.getWrapText(), address);
+                        assertEquals(expectedStyle.getBorderTopEnum(), actualStyle.getBorderTopEnum(), address);
+                        assertEquals(expectedStyle.getBorderLeftEnum(), actualStyle.getBorderLeftEnum(), address);
+                        Color expectedColor = expectedStyle.getFillForegroundColorColor();
+                        Color actualColor = actualStyle.getFillForegroundColorColor();
+                        assertEquals(expectedColor == null ? null : getHex(expectedColor),
+                                actualColor == null ? null : getHex(actualColor), address);
+                        Font expectedFont = expected.getFontAt(expectedStyle.getFontIndex());
+                        Font actualFont = actual.getFontAt(actualStyle.getFontIndex());
+                        assertEquals(expectedFont.getFontName(), actualFont.getFontName(), address);
+                        assertEquals(expectedFont.getFontHeightInPoints(), actualFont.getFontHeightInPoints(), address);
+                        assertEquals(expectedFont.getBold(), actualFont.getBold(), address);
+                    }
+                }
+            }
+        }
+        File streamFile = new File(tempDir, "stream.xlsx");
+        try (OutputStream outputStream = new FileOutputStream(streamFile)) {
+            ExcelWriter.writeExcel2007Direct(dataMap, templateName, outputStream);
+        }
+        assertSameContent(directFile, streamFile);
+    }
+
+    @Test
+    public void writeExcelParallelSheets(@TempDir File tempDir) throws IOException {
+        Map<String, Object> dataMap = getDemoDataMap();
+        String templateName = "图片-颜色-单元格合并-样例.xml";
+        ExcelExporter sequential = ExcelExporter.builder()
+                .templateDir(ExcelWriter.getExporter().getTemplateDir())
+                .exportDir(tempDir)
+                .build();
+        ExcelExporter parallel = sequential.toBuilder()
+                .sheetExecutor(ForkJoinPool.commonPool())
+                .build();
+        for (ExcelFormat format : ExcelFormat.values()) {
+            File expectedFile = sequential.writeExcel(format, dataMap, templateName, "sequential-" + format);
+            File actualFile = parallel.writeExcel(format, dataMap, templateName, "parallel-" + format);
+            assertSameContent(expectedFile, actualFile);
+        }
+    }
+
+    @Test
+    public void writeExcelToStream(@TempDir File tempDir) throws IOException {
+        Map<String, Object> dataMap = getDemoDataMap();
+        String templateName = "图片-颜色-单元格合并-样例.xml";
+        ExcelExporter exporter = ExcelExporter.builder()
+                .templateDir(ExcelWriter.getExporter().getTemplateDir())
+                .exportDir(tempDir)
+                .build();
+        File expectedFile = exporter.writeExcel(ExcelFormat.XLSX, dataMap, templateName, "file");
+        File channelFile = new File(tempDir, "channel.xlsx");
+        try (FileChannel channel = FileChannel.open(channelFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            exporter.writeExcel(ExcelFormat.XLSX, dataMap, templateName, channel);
+            // 导出结束后由调用方关闭
+            assertTrue(channel.isOpen());
+        }
+        assertSameContent(expectedFile, channelFile);
+        File streamFile = new File(tempDir, "stream.xls");
+        try (OutputStream outputStream = new FileOutputStream(streamFile)) {
+            exporter.writeExcel(ExcelFormat.XLS, dataMap, templateName, outputStream);
+        }
+        assertSameContent(exporter.writeExcel(ExcelFormat.XLS, dataMap, templateName, "file"), streamFile);
+    }
+
+    @Test
+    public void writeExcelMetrics(@TempDir File tempDir) throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ExcelExporter exporter = ExcelExporter.builder()
+                .templateDir(ExcelWriter.getExporter().getTemplateDir())
+                .exportDir(tempDir)
+                .meterRegistry(registry)
+                .allocationSampling(true)
+                .build();
+        File file = exporter.writeExcel(ExcelFormat.XLSX_STREAMING, getDemoDataMap(), "图片-颜色-单元格合并-样例.xml",
+                "metrics");
+        String format = ExcelFormat.XLSX_STREAMING.name();
+        assertEquals(1, registry.get("excel.export").tags("format", format, "outcome", "success").timer().count());
+        assertTrue(registry.get("excel.export.stage").tags("format", format, "stage", "render").timer()
+                .totalTime(TimeUnit.NANOSECONDS) > 0);
+        assertTrue(registry.get("excel.export.rows").tag("format", format).counter().count() > 0);
+        assertTrue(registry.get("excel.export.cells").tag("format", format).counter().count() > 0);
+        assertTrue(registry.get("excel.export.mergedRegions").tag("format", format).counter().count() > 0);
+        assertEquals(file.length(), registry.get("excel.export.bytes").tag("format", format).counter().count());
+        assertThrows(ExcelExportException.class,
+                () -> exporter.writeExcel(ExcelFormat.XLS, getDemoDataMap(), "不存在的模板.xml", "metrics"));
+        assertEquals(1, registry.get("excel.export").tags("format", "XLS", "outcome", "failure").timer().count());
+    }
+
+    @Test
+    public void writeExcelWatchTemplates(@TempDir File tempDir) throws Exception {
+        String template = "<?xml version=\"1.0\"?>\n"
+                + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+                + " <Worksheet ss:Name=\"监听\"><Table>\n"
+                + "  <Row><Cell><Data ss:Type=\"String\">%s${name}</Data></Cell></Row>\n"
+                + " </Table></Worksheet>\n"
+                + "</Workbook>\n";
+        File templateDir = new File(tempDir, "template");
+        File templateFile = new File(templateDir, "watch.xml");
+        FileUtils.writeStringToFile(templateFile, String.format(template, "旧"), "UTF-8");
+        FileUtils.writeStringToFile(new File(templateDir, "logo.png"), "不是模板", "UTF-8");
+        // 有语法错误的模板不影响预编译其他模板，使用时才失败
+        FileUtils.writeStringToFile(new File(templateDir, "broken.xml"), "<#if>", "UTF-8");
+        Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("name", "模板");
+        try (ExcelExporter exporter = ExcelExporter.builder().templateDir(templateDir).exportDir(tempDir)
+                .watchTemplates(true).build()) {
+            assertEquals(1, exporter.precompileTemplates());
+            assertThrows(ExcelExportException.class,
+                    () -> exporter.writeExcel(ExcelFormat.XLSX, dataMap, "broken.xml", "broken"));
+            assertEquals("旧模板", readFirstCell(exporter.writeExcel(ExcelFormat.XLSX, dataMap, "watch.xml", "old")));
+            FileUtils.writeStringToFile(templateFile, String.format(template, "新"), "UTF-8");
+            // 监听线程异步重新编译
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            String value;
+            do {
+                Thread.sleep(100);
+                value = readFirstCell(exporter.writeExcel(ExcelFormat.XLSX, dataMap, "watch.xml", "new"));
+            } while (!"新模板".equals(value) && System.currentTimeMillis() < deadline);
+            assertEquals("新模板", value);
+        }
+    }
+
+    @Test
+    public void writeExcelBlueprint(@TempDir File tempDir) throws IOException {
+        String template = "<?xml version=\"1.0\"?>\n"
+                + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+                + " <Styles><Style ss:ID=\"border\"><Borders>\n"
+                + "  <Border ss:Position=\"Bottom\" ss:LineStyle=\"Continuous\" ss:Weight=\"1\"/>\n"
+                + " </Borders></Style></Styles>\n"
+                + " <Worksheet ss:Name=\"蓝图\"><Table>\n"
+                + "  <Row><Cell ss:MergeAcross=\"2\" ss:StyleID=\"border\"><Data ss:Type=\"String\">${title}</Data></Cell></Row>\n"
+                + "  <#-- 每条数据一行 -->\n"
+                + "  <#list rows as row>\n"
+                + "  <Row><Cell><Data ss:Type=\"Number\">${row_index}</Data></Cell>\n"
+                + "   <Cell ss:StyleID=\"border\"><Data ss:Type=\"String\">${row.name!\"无\"}-${row.code!}</Data></Cell>\n"
+                + "   <Cell><Data ss:Type=\"Number\">${row.amount}</Data></Cell></Row>\n"
+                + "  </#list>\n"
+                + "  <Row><Cell><Data ss:Type=\"String\">合计</Data></Cell><Cell ss:Index=\"3\"><Data ss:Type=\"Number\">${total}</Data></Cell></Row>\n"
+                + " </Table></Worksheet>\n"
+                + "</Workbook>\n";
+        File templateDir = new File(tempDir, "template");
+        FileUtils.writeStringToFile(new File(templateDir, "blueprint.xml"), template, "UTF-8");
+        // 含有蓝图不支持的指令，仍使用FreeMarker渲染
+        FileUtils.writeStringToFile(new File(templateDir, "fallback.xml"),
+                template.replace("${title}", "<#if title??>${title}</#if>"), "UTF-8");
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("name", i % 7 == 0 ? null : "电站&#10;" + i);
+            row.put("code", i % 5 == 0 ? null : "C" + i);
+            row.put("amount", i % 2 == 0 ? new BigDecimal("1234.56789").multiply(BigDecimal.valueOf(i)) : i * 1000L);
+            rows.add(row);
+        }
+        Map<String, Object> dataMap = new HashMap<>();
+        // 模板不转义，值中的实体引用由解析器解码
+        dataMap.put("title", "标题 &amp; &lt;说明&gt;");
+        dataMap.put("rows", rows);
+        dataMap.put("total", 12345.6789);
+        ExcelExporter blueprintExporter = ExcelExporter.builder().templateDir(templateDir).exportDir(tempDir).build();
+        ExcelExporter freemarkerExporter = blueprintExporter.toBuilder().blueprintBinding(false).build();
+        for (ExcelFormat format : ExcelFormat.values()) {
+            File expectedFile = freemarkerExporter.writeExcel(format, dataMap, "blueprint.xml", "freemarker-" + format);
+            assertSameContent(expectedFile,
+                    blueprintExporter.writeExcel(format, dataMap, "blueprint.xml", "blueprint-" + format));
+            assertSameContent(expectedFile,
+                    blueprintExporter.writeExcel(format, dataMap, "fallback.xml", "fallback-" + format));
+        }
+        assertEquals("标题 & <说明>", readFirstCell(new File(tempDir, "blueprint-XLSX.xlsx")));
+        // 缺少的值与FreeMarker一样导出失败
+        dataMap.remove("total");
+        assertThrows(ExcelExportException.class,
+                () -> blueprintExporter.writeExcel(ExcelFormat.XLSX, dataMap, "blueprint.xml", "missing"));
+    }
+
+    @Test
+    public void writeExcelLazySources(@TempDir File tempDir) throws Exception {
+        String template = "<?xml version=\"1.0\"?>\n"
+                + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+                + " <Worksheet ss:Name=\"延迟加载\"><Table>\n"
+                + "  <Row><Cell><Data ss:Type=\"String\">序号</Data></Cell><Cell><Data ss:Type=\"String\">电站</Data></Cell>"
+                + "<Cell><Data ss:Type=\"String\">金额</Data></Cell></Row>\n"
+                + "  <#list rows as row>\n"
+                + "  <Row><Cell><Data ss:Type=\"Number\">${row.id}</Data></Cell>"
+                + "<Cell><Data ss:Type=\"String\">${row.stationName}</Data></Cell>"
+                + "<Cell><Data ss:Type=\"Number\">${row.amount}</Data></Cell></Row>\n"
+                + "  </#list>\n"
+                + " </Table></Worksheet>\n"
+                + "</Workbook>\n";
+        File templateDir = new File(tempDir, "template");
+        FileUtils.writeStringToFile(new File(templateDir, "lazy.xml"), template, "UTF-8");
+        // 无法编译为蓝图，由FreeMarker渲染
+        FileUtils.writeStringToFile(new File(templateDir, "lazy-freemarker.xml"),
+                template.replace("${row.stationName}", "<#if row.stationName??>${row.stationName}</#if>"), "UTF-8");
+        int n = 3000;
+        List<Map<String, Object>> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", i);
+            row.put("stationName", "电站" + i);
+            row.put("amount", new BigDecimal(i).multiply(new BigDecimal("1.2345")));
+            rows.add(row);
+        }
+        ExecutorService renderExecutor = Executors.newSingleThreadExecutor();
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:lazy")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table station_bill(id int primary key, station_name varchar(64), "
+                        + "amount decimal(12, 4))");
+            }
+            try (PreparedStatement insert = connection.prepareStatement("insert into station_bill values (?, ?, ?)")) {
+                for (Map<String, Object> row : rows) {
+                    insert.setObject(1, row.get("id"));
+                    insert.setObject(2, row.get("stationName"));
+                    insert.setObject(3, row.get("amount"));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            ExcelExporter exporter = ExcelExporter.builder().templateDir(templateDir).exportDir(tempDir).build();
+            ExcelExporter pipedExporter = exporter.toBuilder().renderExecutor(renderExecutor).build();
+            for (String templateName : new String[]{"lazy.xml", "lazy-freemarker.xml"}) {
+                for (ExcelFormat format : new ExcelFormat[]{ExcelFormat.XLSX_STREAMING, ExcelFormat.XLSX_DIRECT}) {
+                    String fileName = templateName + "-" + format;
+                    File expectedFile = exporter.writeExcel(format, Collections.singletonMap("rows", rows),
+                            templateName, "list-" + fileName);
+                    assertSameContent(expectedFile, pipedExporter.writeExcel(format,
+                            Collections.singletonMap("rows", rows.stream()), templateName, "stream-" + fileName));
+                    try (Statement statement = connection.createStatement();
+                         ResultSet resultSet = statement.executeQuery(
+                                 "select id, station_name as stationName, amount from station_bill order by id")) {
+                        assertSameContent(expectedFile, pipedExporter.writeExcel(format,
+                                Collections.singletonMap("rows", new ResultSetRows(resultSet, 100)), templateName,
+                                "jdbc-" + fileName));
+                    }
+                }
+            }
+            // 渲染失败时抛出渲染的异常，而不是解析到不完整xml的异常
+            rows.get(n / 2).remove("amount");
+            ExcelExportException failure = assertThrows(ExcelExportException.class, () -> pipedExporter.writeExcel(
+                    ExcelFormat.XLSX_DIRECT, Collections.singletonMap("rows", rows.iterator()), "lazy-freemarker.xml",
+                    "failure"));
+            assertTrue(failure.getCause() instanceof TemplateException);
+        } finally {
+            renderExecutor.shutdown();
+        }
+    }
+
+    private String readFirstCell(File file) throws IOException {
+        try (Workbook wb = WorkbookFactory.create(file)) {
+            return wb.getSheetAt(0).getRow(0).getCell(0).getStringCellValue();
+        } catch (InvalidFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Test
+    public void writeExcelRichTextFonts(@TempDir File tempDir) throws IOException, InvalidFormatException {
+        // 每行一个富文本单元格，字体只有两种
+        String template = "<?xml version=\"1.0\"?>\n"
+                + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:html=\"http://www.w3.org/TR/REC-html40\">\n"
+                + " <Styles><Style ss:ID=\"Default\" ss:Name=\"Normal\"/></Styles>\n"
+                + " <Worksheet ss:Name=\"富文本\"><Table>\n"
+                + "  <#list 1..rows as i><Row><Cell><ss:Data ss:Type=\"String\" xmlns=\"http://www.w3.org/TR/REC-html40\">"
+                + "<Font html:Color=\"#FF0000\">红${i}</Font><Font html:Face=\"Arial\">-</Font>"
+                + "</ss:Data></Cell></Row></#list>\n"
+                + " </Table></Worksheet>\n"
+                + "</Workbook>\n";
+        FileUtils.writeStringToFile(new File(tempDir, "rich-text.xml"), template, "UTF-8");
+        ExcelExporter exporter = ExcelExporter.builder().templateDir(tempDir).exportDir(tempDir).build();
+        Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("rows", 500);
+        for (ExcelFormat format : ExcelFormat.values()) {
+            File file = exporter.writeExcel(format, dataMap, "rich-text.xml", "rich-text-" + format);
+            try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+                assertEquals("红500-", wb.getSheetAt(0).getRow(499).getCell(0).getStringCellValue());
+                assertTrue(wb.getNumberOfFonts() < 10, format + " fonts: " + wb.getNumberOfFonts());
+            }
+        }
+    }
+
+    @Test
+    public void writeExcelTypedValues(@TempDir File tempDir) throws IOException, InvalidFormatException {
+        String template = "<?xml version=\"1.0\"?>\n"
+                + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+                + " <Styles><Style ss:ID=\"Default\" ss:Name=\"Normal\"/></Styles>\n"
+                + " <Worksheet ss:Name=\"类型\"><Table>\n"
+                + "  <Row><Cell><Data ss:Type=\"Number\">${amount}</Data></Cell>"
+                + "<Cell><Data ss:Type=\"Number\">0.1</Data></Cell>"
+                + "<Cell><Data ss:Type=\"Number\">-3.5E-5</Data></Cell>"
+                + "<Cell><Data ss:Type=\"Number\">12345678.123456789</Data></Cell>"
+                + "<Cell><Data ss:Type=\"Number\">12345678901234567890</Data></Cell></Row>\n"
+                + "  <Row><Cell><Data ss:Type=\"DateTime\">2020-04-14T13:30:00.000</Data></Cell>"
+                + "<Cell><Data ss:Type=\"DateTime\">1899-12-31T06:00:00.000</Data></Cell>"
+                + "<Cell><Data ss:Type=\"DateTime\">1900-02-28</Data></Cell></Row>\n"
+                + "  <Row><Cell><Data ss:Type=\"Boolean\">1</Data></Cell>"
+                + "<Cell><Data ss:Type=\"Boolean\">false</Data></Cell>"
+                + "<Cell><Data ss:Type=\"Error\">#DIV/0!</Data></Cell>"
+                + "<Cell><Data ss:Type=\"Error\">#N/A</Data></Cell></Row>\n"
+                + " </Table></Worksheet>\n"
+                + "</Workbook>\n";
+        FileUtils.writeStringToFile(new File(tempDir, "typed.xml"), template, "UTF-8");
+        ExcelExporter exporter = ExcelExporter.builder().templateDir(tempDir).exportDir(tempDir).build();
+        Map<String, Object> dataMap = new HashMap<>();
+        // 千分位分隔的金额
+        dataMap.put("amount", "1,234,567.89");
+        double date = DateUtil.getExcelDate(new GregorianCalendar(2020, Calendar.APRIL, 14, 13, 30).getTime());
+        for (ExcelFormat format : ExcelFormat.values()) {
+            File file = exporter.writeExcel(format, dataMap, "typed.xml", "typed-" + format);
+            try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+                Sheet sheet = wb.getSheetAt(0);
+                Row numbers = sheet.getRow(0);
+                assertEquals(1234567.89, numbers.getCell(0).getNumericCellValue());
+                assertEquals(0.1, numbers.getCell(1).getNumericCellValue());
+                assertEquals(-3.5E-5, numbers.getCell(2).getNumericCellValue());
+                assertEquals(12345678.123456789, numbers.getCell(3).getNumericCellValue());
+                assertEquals(1.2345678901234567E19, numbers.getCell(4).getNumericCellValue());
+                Row dates = sheet.getRow(1);
+                assertEquals(date, dates.getCell(0).getNumericCellValue(), 1e-9);
+                assertEquals(0.25, dates.getCell(1).getNumericCellValue());
+                assertEquals(59, dates.getCell(2).getNumericCellValue());
+                Row others = sheet.getRow(2);
+                assertEquals(CellType.BOOLEAN, others.getCell(0).getCellTypeEnum());
+                assertTrue(others.getCell(0).getBooleanCellValue());
+                assertEquals(false, others.getCell(1).getBooleanCellValue());
+                assertEquals(CellType.ERROR, others.getCell(2).getCellTypeEnum());
+                assertEquals(FormulaError.DIV0.getCode(), others.getCell(2).getErrorCellValue());
+                assertEquals(FormulaError.NA.getCode(), others.getCell(3).getErrorCellValue());
+            }
+        }
+        dataMap.put("amount", "1.2.3");
+        ExcelExportException failure = assertThrows(ExcelExportException.class,
+                () -> exporter.writeExcel(ExcelFormat.XLSX, dataMap, "typed.xml", "typed-invalid"));
+        assertTrue(failure.getCause().getMessage().contains("A1"), failure.getCause().getMessage());
+    }
+
+    @Test
+    public void writeExcelBorderColors(@TempDir File tempDir) throws IOException {
+        ExcelExporter exporter = ExcelExporter.builder()
+                .templateDir(ExcelWriter.getExporter().getTemplateDir())
+                .exportDir(tempDir)
+                .build();
+        File file = exporter.writeExcel(ExcelFormat.XLS, getDemoDataMap(), "图片-颜色-单元格合并-样例.xml", "borders");
+        try (HSSFWorkbook wb = new HSSFWorkbook(new FileInputStream(file))) {
+            int borderedCells = 0;
+            for (Sheet sheet : wb) {
+                for (Row row : sheet) {
+                    for (Cell cell : row) {
+                        HSSFCellStyle style = (HSSFCellStyle) cell.getCellStyle();
+                        if (style.getBorderTopEnum() == BorderStyle.NONE) {
+                            continue;
+                        }
+                        // 模板没有指定边框颜色，POI创建的样式默认使用位置8，登记填充颜色后仍为黑色；
+                        // 从默认样式复制的边框颜色为内置的位置0，同样是黑色
+                        short colorIndex = style.getTopBorderColor();
+                        String address = new CellAddress(cell).formatAsString();
+                        if (colorIndex == 0) {
+                            continue;
+                        }
+                        borderedCells++;
+                        assertEquals(HSSFColor.HSSFColorPredefined.BLACK.getIndex(), colorIndex, address);
+                        assertArrayEquals(new short[]{0, 0, 0},
+                                wb.getCustomPalette().getColor(colorIndex).getTriplet(), address);
+                    }
+                }
+            }
+            assertTrue(borderedCells > 0);
+            // 白色的位置同样不被模板颜色覆盖
+            assertArrayEquals(new short[]{255, 255, 255},
+                    wb.getCustomPalette().getColor(HSSFColor.HSSFColorPredefined.WHITE.getIndex()).getTriplet());
+        }
+    }
+
+    @Test
+    public void writeExcelColors(@TempDir File tempDir) throws IOException, InvalidFormatException {
+        String template = "<?xml version=\"1.0\"?>\n"
+                + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+                + " <Styles>\n"
+                + "  <#list colors as color><Style ss:ID=\"c${color?index}\">"
+                + "<Interior ss:Color=\"${color}\" ss:Pattern=\"Solid\"/></Style></#list>\n"
+                + " </Styles>\n"
+                + " <Worksheet ss:Name=\"颜色\"><Table>\n"
+                + "  <#list colors as color><Row><Cell ss:StyleID=\"c${color?index}\">"
+                + "<Data ss:Type=\"String\">${color}</Data></Cell></Row></#list>\n"
+                + " </Table></Worksheet>\n"
+                + "</Workbook>\n";
+        FileUtils.writeStringToFile(new File(tempDir, "colors.xml"), template, "UTF-8");
+        // 60种不在默认调色板中的颜色，超过xls调色板可以占用的54个位置（黑色和白色的位置保留）
+        List<String> colors = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            colors.add(String.format("#%02X%02X%02X", i * 4 + 1, 7, 250 - i * 3));
+        }
+        // 与第一个颜色相同，调色板用完后仍然使用已登记的位置
+        colors.add("#0107fa");
+        colors.add("#0107FA");
+        Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("colors", colors);
+        ExcelExporter exporter = ExcelExporter.builder().templateDir(tempDir).exportDir(tempDir).build();
+        for (ExcelFormat format : ExcelFormat.values()) {
+            File file = exporter.writeExcel(format, dataMap, "colors.xml", "colors-" + format);
+            try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+                Sheet sheet = wb.getSheetAt(0);
+                int exact = format == ExcelFormat.XLS ? 54 : 60;
+                for (int i = 0; i < colors.size(); i++) {
+                    Color color = sheet.getRow(i).getCell(0).getCellStyle().getFillForegroundColorColor();
+                    String hex = colors.get(i).substring(1).toUpperCase(Locale.ROOT);
+                    if (i < exact || i >= 60) {
+                        assertEquals(hex, getHex(color), format + " row " + i);
+                    } else {
+                        assertTrue(color != null, format + " row " + i);
+                    }
+                }
+            }
+        }
+    }
+
+    private String getHex(Color color) {
+        if (color instanceof HSSFColor) {
+            short[] triplet = ((HSSFColor) color).getTriplet();
+            return String.format("%02X%02X%02X", triplet[0], triplet[1], triplet[2]);
+        }
+        return ((XSSFColor) color).getARGBHex().substring(2);
+    }
+
+    @Test
+    public void writeExcelNumberFormats(@TempDir File tempDir) throws IOException, InvalidFormatException {
+        Map<String, String> formats = new LinkedHashMap<>();
+        formats.put("Standard", "#,##0.00");
+        formats.put("Fixed", "0.00");
+        formats.put("Percent", "0.00%");
+        formats.put("Short Date", "m/d/yy");
+        formats.put("Currency", "\"$\"#,##0.00_);[Red](\"$\"#,##0.00)");
+        formats.put("Scientific", "0.00E+00");
+        formats.put("yyyy-mm-dd", "yyyy-mm-dd");
+        formats.put("0.000", "0.000");
+        String template = "<?xml version=\"1.0\"?>\n"
+                + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+                + " <Styles>\n"
+                + "  <#list formats as format><Style ss:ID=\"f${format?index}\">"
+                + "<NumberFormat ss:Format=\"${format}\"/></Style>"
+                + "<Style ss:ID=\"b${format?index}\"><Font ss:Bold=\"1\"/>"
+                + "<NumberFormat ss:Format=\"${format}\"/></Style></#list>\n"
+                + " </Styles>\n"
+                + " <Worksheet ss:Name=\"格式\"><Table>\n"
+                + "  <#list formats as format><Row><Cell ss:StyleID=\"f${format?index}\"><Data ss:Type=\"Number\">1.5</Data></Cell>"
+                + "<Cell ss:StyleID=\"b${format?index}\"><Data ss:Type=\"Number\">1.5</Data></Cell></Row></#list>\n"
+                + " </Table></Worksheet>\n"
+                + "</Workbook>\n";
+        FileUtils.writeStringToFile(new File(tempDir, "formats.xml"), template, "UTF-8");
+        Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("formats", new ArrayList<>(formats.keySet()));
+        ExcelExporter exporter = ExcelExporter.builder().templateDir(tempDir).exportDir(tempDir).build();
+        for (ExcelFormat format : ExcelFormat.values()) {
+            File file = exporter.writeExcel(format, dataMap, "formats.xml", "formats-" + format);
+            try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+                Sheet sheet = wb.getSheetAt(0);
+                int i = 0;
+                for (String expected : formats.values()) {
+                    Row row = sheet.getRow(i++);
+                    assertEquals(expected, row.getCell(0).getCellStyle().getDataFormatString(), format + " " + expected);
+                    // 格式相同的样式使用同一个格式序号
+                    assertEquals(row.getCell(0).getCellStyle().getDataFormat(), row.getCell(1).getCellStyle().getDataFormat());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void writeExcelStyleBudget(@TempDir File tempDir) throws IOException, InvalidFormatException {
+        // same${i}外观完全相同，size${i}的字号各不相同
+        String template = "<?xml version=\"1.0\"?>\n"
+                + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+                + " <Styles>\n"
+                + "  <#list 1..styles as i><Style ss:ID=\"same${i}\"><Font ss:Color=\"#FF0000\"/></Style>"
+                + "<Style ss:ID=\"size${i}\"><Font ss:Size=\"${i + 5}\"/></Style></#list>\n"
+                + " </Styles>\n"
+                + " <Worksheet ss:Name=\"样式\"><Table>\n"
+                + "  <#list 1..styles as i><Row><Cell ss:StyleID=\"same${i}\"><Data ss:Type=\"Number\">${i}</Data></Cell>"
+                + "<Cell ss:StyleID=\"size${i}\"><Data ss:Type=\"Number\">${i}</Data></Cell></Row></#list>\n"
+                + " </Table></Worksheet>\n"
+                + "</Workbook>\n";
+        FileUtils.writeStringToFile(new File(tempDir, "styles.xml"), template, "UTF-8");
+        Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("styles", 100);
+        ExcelExporter exporter = ExcelExporter.builder().templateDir(tempDir).exportDir(tempDir).build();
+        File file = exporter.writeExcel(ExcelFormat.XLS, dataMap, "styles.xml", "collapsed");
+        try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+            Sheet sheet = wb.getSheetAt(0);
+            assertEquals(sheet.getRow(0).getCell(0).getCellStyle().getIndex(),
+                    sheet.getRow(99).getCell(0).getCellStyle().getIndex());
+            assertEquals(16, wb.getFontAt(sheet.getRow(10).getCell(1).getCellStyle().getFontIndex())
+                    .getFontHeightInPoints());
+        }
+        ExcelExporter limited = exporter.toBuilder().maxCellStyles(50).build();
+        ExcelExportException failure = assertThrows(ExcelExportException.class,
+                () -> limited.writeExcel(ExcelFormat.XLSX, dataMap, "styles.xml", "fail"));
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+        File degradedFile = limited.toBuilder().styleOverflowPolicy(StyleOverflowPolicy.DEGRADE).build()
+                .writeExcel(ExcelFormat.XLSX, dataMap, "styles.xml", "degrade");
+        try (Workbook wb = WorkbookFactory.create(degradedFile, null, true)) {
+            assertTrue(wb.getNumCellStyles() <= 50);
+            assertEquals(100, wb.getSheetAt(0).getRow(99).getCell(1).getNumericCellValue());
+        }
+    }
+
+    @Test
+    public void writeExcelMergedRegions(@TempDir File tempDir) throws IOException, InvalidFormatException {
+        String head = "<?xml version=\"1.0\"?>\n"
+                + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+                + " <Styles><Style ss:ID=\"b\"><Borders>"
+                + "<Border ss:Position=\"Bottom\" ss:LineStyle=\"Continuous\" ss:Weight=\"1\"/>"
+                + "<Border ss:Position=\"Right\" ss:LineStyle=\"Continuous\" ss:Weight=\"1\"/>"
+                + "</Borders></Style></Styles>\n"
+                + " <Worksheet ss:Name=\"合并\"><Table>\n";
+        String tail = " </Table></Worksheet>\n</Workbook>\n";
+        // 每个区域向下合并两行，边框只在区域的边缘
+        FileUtils.writeStringToFile(new File(tempDir, "merged.xml"), head
+                + "<#list 1..regions as i><Row><Cell ss:MergeDown=\"1\" ss:MergeAcross=\"1\" ss:StyleID=\"b\">"
+                + "<Data ss:Type=\"Number\">${i}</Data></Cell></Row><Row/></#list>\n" + tail, "UTF-8");
+        FileUtils.writeStringToFile(new File(tempDir, "overlap.xml"), head
+                + "<Row><Cell ss:MergeDown=\"2\"><Data ss:Type=\"Number\">1</Data></Cell></Row>"
+                + "<Row><Cell ss:MergeAcross=\"1\"><Data ss:Type=\"Number\">2</Data></Cell></Row>\n" + tail, "UTF-8");
+        ExcelExporter exporter = ExcelExporter.builder().templateDir(tempDir).exportDir(tempDir).build();
+        Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("regions", 2000);
+        for (ExcelFormat format : ExcelFormat.values()) {
+            File file = exporter.writeExcel(format, dataMap, "merged.xml", "merged-" + format);
+            try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+                Sheet sheet = wb.getSheetAt(0);
+                assertEquals(2000, sheet.getNumMergedRegions());
+                Row bottom = sheet.getRow(3999);
+                assertEquals(BorderStyle.THIN, bottom.getCell(0).getCellStyle().getBorderBottomEnum());
+                assertEquals(BorderStyle.NONE, bottom.getCell(0).getCellStyle().getBorderRightEnum());
+                assertEquals(BorderStyle.THIN, bottom.getCell(1).getCellStyle().getBorderBottomEnum());
+                assertEquals(BorderStyle.THIN, bottom.getCell(1).getCellStyle().getBorderRightEnum());
+            }
+            assertThrows(ExcelExportException.class,
+                    () -> exporter.writeExcel(format, dataMap, "overlap.xml", "overlap-" + format));
+        }
+    }
+
+    @Test
+    public void writeExcelComments(@TempDir File tempDir) throws IOException, InvalidFormatException {
+        String template = "<?xml version=\"1.0\"?>\n"
+                + "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\"\n"
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+                + " <Styles><Style ss:ID=\"Default\" ss:Name=\"Normal\"/></Styles>\n"
+                + " <Worksheet ss:Name=\"注释\"><Table>\n"
+                + "  <#list 1..rows as i><Row><Cell><Data ss:Type=\"Number\">${i}</Data></Cell>"
+                + "<Cell><Data ss:Type=\"String\">第${i}行</Data>"
+                + "<Comment ss:Author=\"Hlingoes\"><ss:Data>注释${i?c}</ss:Data></Comment></Cell></Row></#list>\n"
+                + " </Table></Worksheet>\n"
+                + "</Workbook>\n";
+        FileUtils.writeStringToFile(new File(tempDir, "comments.xml"), template, "UTF-8");
+        File img = new PathMatchingResourcePatternResolver().getResource("template/功能简介.png").getFile();
+        ExcelExporter exporter = ExcelExporter.builder().templateDir(tempDir).exportDir(tempDir).build();
+        Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("rows", 500);
+        for (ExcelFormat format : ExcelFormat.values()) {
+            ClientAnchor anchor = format == ExcelFormat.XLS
+                    ? new HSSFClientAnchor(0, 0, 0, 0, (short) 3, 1, (short) 6, 8)
+                    : new XSSFClientAnchor(0, 0, 0, 0, 3, 1, 6, 8);
+            List<ExcelImage> images = new ArrayList<>();
+            images.add(new ExcelImage(img, 0, anchor));
+            File file = exporter.writeExcel(format, dataMap, "comments.xml", "comments-" + format, images);
+            try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+                Sheet sheet = wb.getSheetAt(0);
+                // 注释和图片在同一个画布中
+                assertEquals(1, wb.getAllPictures().size());
+                for (int row : new int[]{0, 499}) {
+                    Comment comment = sheet.getCellComment(new CellAddress(row, 1));
+                    assertEquals("注释" + (row + 1), comment.getString().getString());
+                    assertEquals(row, comment.getClientAnchor().getRow1());
+                    assertEquals(2, comment.getClientAnchor().getCol1());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void writeExcelImages(@TempDir File tempDir) throws IOException, InvalidFormatException {
+        Map<String, Object> dataMap = getDemoDataMap();
+        String templateName = "图片-颜色-单元格合并-样例.xml";
+        File png = new PathMatchingResourcePatternResolver().getResource("template/功能简介.png").getFile();
+        File gif = new File(tempDir, "logo.gif");
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "gif", gif);
+        ExcelExporter exporter = ExcelWriter.getExporter().toBuilder().exportDir(tempDir).build();
+        for (ExcelFormat format : new ExcelFormat[]{ExcelFormat.XLS, ExcelFormat.XLSX}) {
+            List<ExcelImage> images = new ArrayList<>();
+            // 同一张png出现在两个sheet中
+            images.add(new ExcelImage(png, 0, createAnchor(format, 5, 1)));
+            images.add(new ExcelImage(png, 1, createAnchor(format, 5, 1)));
+            images.add(new ExcelImage(gif, 1, createAnchor(format, 1, 10)));
+            File file = exporter.writeExcel(format, dataMap, templateName, "images-" + format, images);
+            try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+                List<? extends PictureData> pictures = wb.getAllPictures();
+                assertEquals(2, pictures.size());
+                assertEquals(Workbook.PICTURE_TYPE_PNG, pictures.get(0).getPictureType());
+                assertArrayEquals(FileUtils.readFileToByteArray(png), pictures.get(0).getData());
+                // xls不支持gif，转换为png
+                int gifType = format == ExcelFormat.XLS ? Workbook.PICTURE_TYPE_PNG : XSSFWorkbook.PICTURE_TYPE_GIF;
+                assertEquals(gifType, pictures.get(1).getPictureType());
+            }
+        }
+    }
+
+    @Test
+    public void writeExcelImageSources(@TempDir File tempDir) throws IOException, InvalidFormatException {
+        Map<String, Object> dataMap = getDemoDataMap();
+        String templateName = "图片-颜色-单元格合并-样例.xml";
+        ByteArrayOutputStream chart = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", chart);
+        byte[] bytes = chart.toByteArray();
+        ExcelExporter exporter = ExcelWriter.getExporter().toBuilder().exportDir(tempDir).build();
+        for (ExcelFormat format : new ExcelFormat[]{ExcelFormat.XLS, ExcelFormat.XLSX}) {
+            AtomicInteger supplied = new AtomicInteger();
+            ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 4);
+            buffer.put(new byte[2]).put(bytes).flip().position(2);
+            List<ExcelImage> images = new ArrayList<>();
+            images.add(new ExcelImage(bytes, 0, createAnchor(format, 5, 1)));
+            images.add(new ExcelImage(buffer, 0, createAnchor(format, 5, 10)));
+            images.add(new ExcelImage(new ByteArrayInputStream(bytes), 1, createAnchor(format, 5, 1)));
+            images.add(new ExcelImage(() -> {
+                supplied.incrementAndGet();
+                return bytes;
+            }, 1, createAnchor(format, 5, 10)));
+            // 写入图片时才调用
+            assertEquals(0, supplied.get());
+            File file = exporter.writeExcel(format, dataMap, templateName, "image-sources-" + format, images);
+            assertEquals(1, supplied.get());
+            assertEquals(2, buffer.position());
+            try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+                // 内容相同的图片只保存一份
+                List<? extends PictureData> pictures = wb.getAllPictures();
+                assertEquals(1, pictures.size());
+                assertEquals(Workbook.PICTURE_TYPE_PNG, pictures.get(0).getPictureType());
+                assertArrayEquals(bytes, pictures.get(0).getData());
+            }
+        }
+        // 多格式导出时输入流只能读取一次，各个格式共用读取的内容，按需生成的图片也只生成一次
+        ExcelExporter parallel = exporter.toBuilder().sheetExecutor(ForkJoinPool.commonPool()).build();
+        for (ExcelExporter multiExporter : new ExcelExporter[]{exporter, parallel}) {
+            for (ExcelFormat xlsx : new ExcelFormat[]{ExcelFormat.XLSX, ExcelFormat.XLSX_DIRECT}) {
+                AtomicInteger supplied = new AtomicInteger();
+                ExcelImage streamImage = new ExcelImage(new ByteArrayInputStream(bytes), 0,
+                        createAnchor(ExcelFormat.XLS, 5, 1));
+                ExcelImage suppliedImage = new ExcelImage(() -> {
+                    supplied.incrementAndGet();
+                    return bytes;
+                }, 1, createAnchor(ExcelFormat.XLS, 5, 1));
+                Map<ExcelFormat, List<ExcelImage>> images = new EnumMap<>(ExcelFormat.class);
+                images.put(ExcelFormat.XLS, Arrays.asList(streamImage, suppliedImage));
+                images.put(xlsx, Arrays.asList(streamImage.withAnchor(createAnchor(xlsx, 5, 1)),
+                        suppliedImage.withAnchor(createAnchor(xlsx, 5, 1))));
+                Map<ExcelFormat, File> files = multiExporter.writeExcel(EnumSet.of(ExcelFormat.XLS, xlsx), dataMap,
+                        templateName, "image-sources-multi-" + xlsx, images);
+                assertEquals(1, supplied.get());
+                for (File file : files.values()) {
+                    try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+                        List<? extends PictureData> pictures = wb.getAllPictures();
+                        assertEquals(1, pictures.size());
+                        assertArrayEquals(bytes, pictures.get(0).getData());
+                    }
+                }
+            }
+        }
+        ExcelExportException failure = assertThrows(ExcelExportException.class, () -> exporter.writeExcel(
+                ExcelFormat.XLSX, dataMap, templateName, "image-empty",
+                Collections.singletonList(new ExcelImage(new byte[0], 0, createAnchor(ExcelFormat.XLSX, 5, 1)))));
+        assertTrue(failure.getCause() instanceof IOException);
+    }
+
+    /**
+     * description: 每个sheet中有一张与png内容相同的图片，依次位于(col, row)
+     */
+    private void assertPictures(File file, File png, int... positions) throws IOException {
+        try (Workbook wb = WorkbookFactory.create(file, null, true)) {
+            List<? extends PictureData> pictures = wb.getAllPictures();
+            assertEquals(1, pictures.size());
+            assertArrayEquals(FileUtils.readFileToByteArray(png), pictures.get(0).getData());
+            for (int i = 0; i < positions.length / 2; i++) {
+                List<Picture> sheetPictures = new ArrayList<>();
+                for (Shape shape : wb.getSheetAt(i).getDrawingPatriarch()) {
+                    sheetPictures.add((Picture) shape);
+                }
+                assertEquals(1, sheetPictures.size());
+                ClientAnchor anchor = sheetPictures.get(0).getClientAnchor();
+                assertEquals(positions[i * 2], anchor.getCol1());
+                assertEquals(positions[i * 2 + 1], anchor.getRow1());
+            }
+        } catch (InvalidFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private ClientAnchor createAnchor(ExcelFormat format, int col, int row) {
+        if (format == ExcelFormat.XLS) {
+            return new HSSFClientAnchor(0, 0, 0, 0, (short) col, row, (short) (col + 4), row + 8);
+        }
+        return new XSSFClientAnchor(0, 0, 0, 0, col, row, col + 4, row + 8);
+    }
+
+    @Test
+    public void writeExcelAsync() throws Exception {
+        Map<String, Object> dataMap = getDemoDataMap();
+        File file = asyncExcelExportService.submit(ExcelFormat.XLSX, dataMap, "图片-颜色-单元格合并-样例.xml",
+                "async").get(1, TimeUnit.MINUTES);
+        assertTrue(file.isFile());
+        FileUtils.forceDelete(file);
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> asyncExcelExportService.submit(ExcelFormat.XLSX, dataMap, "不存在的模板.xml", "async").get());
+        assertTrue(failure.getCause() instanceof ExcelExportException);
+    }
+
+    @Test
+    public void writeExcelAsyncRejected(@TempDir File tempDir) throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.AbortPolicy());
+        AsyncExcelExportService service = new AsyncExcelExportService(
+                ExcelWriter.getExporter().toBuilder().exportDir(tempDir).build(), executor);
+        CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            // 占住唯一的线程，第一个任务排队，第二个任务被拒绝
+            executor.execute(() -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Map<String, Object> dataMap = getDemoDataMap();
+            String templateName = "图片-颜色-单元格合并-样例.xml";
+            CompletableFuture<File> queued = service.submit(ExcelFormat.XLS, dataMap, templateName, "queued");
+            CompletableFuture<File> rejected = service.submit(ExcelFormat.XLS, dataMap, templateName, "rejected");
+            ExecutionException failure = assertThrows(ExecutionException.class, rejected::get);
+            assertTrue(failure.getCause() instanceof RejectedExecutionException);
+            blocker.countDown();
+            assertTrue(queued.get(1, TimeUnit.MINUTES).isFile());
+        } finally {
+            blocker.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void writeExcelBatch(@TempDir File tempDir) throws IOException {
+        String templateName = "图片-颜色-单元格合并-样例.xml";
+        ExcelExporter exporter = ExcelExporter.builder()
+                .templateDir(ExcelWriter.getExporter().getTemplateDir())
+                .exportDir(tempDir)
+                .build();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        // 线程池拒绝任务时在当前线程导出
+        Executor rejecting = command -> {
+            throw new RejectedExecutionException();
+        };
+        int n = 12;
+        // items在导出结束后关闭，释放数据库游标等资源
+        AtomicInteger closed = new AtomicInteger();
+        try {
+            for (ExcelFormat format : new ExcelFormat[]{ExcelFormat.XLS, ExcelFormat.XLSX_DIRECT}) {
+                Executor executor = format == ExcelFormat.XLS ? pool : rejecting;
+                File expectedFile = exporter.writeExcel(format, getDemoDataMap(), templateName, "single-" + format);
+                // 第3个文件缺少数据，导出失败不影响其他文件
+                List<ExcelBatchResult> results = exporter.writeExcelBatch(format, templateName,
+                        IntStream.range(0, n).mapToObj(i -> new ExcelBatchItem("batch-" + format + "-" + i,
+                                i == 2 ? new HashMap<>() : getDemoDataMap())).onClose(closed::incrementAndGet),
+                        executor, 2);
+                assertEquals(n, results.size());
+                for (int i = 0; i < n; i++) {
+                    ExcelBatchResult result = results.get(i);
+                    assertEquals("batch-" + format + "-" + i, result.getItem().getFileName());
+                    if (i == 2) {
+                        assertFalse(result.isSuccess());
+                        assertTrue(result.getFailure() instanceof ExcelExportException);
+                        assertFalse(new File(tempDir, "batch-" + format + "-2" + format.getExtension()).exists());
+                    } else {
+                        assertTrue(result.isSuccess());
+                        assertSameContent(expectedFile, result.getFile());
+                    }
+                }
+            }
+            assertEquals(2, closed.get());
+            assertThrows(ExcelExportException.class, () -> exporter.writeExcelBatch(ExcelFormat.XLS, "missing.xml",
+                    Stream.<ExcelBatchItem>empty().onClose(closed::incrementAndGet), pool, 2));
+            assertEquals(3, closed.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void writeExcelMultiFormat(@TempDir File tempDir) throws IOException {
+        Map<String, Object> dataMap = getDemoDataMap();
+        String templateName = "图片-颜色-单元格合并-样例.xml";
+        ExcelExporter sequential = ExcelExporter.builder()
+                .templateDir(ExcelWriter.getExporter().getTemplateDir())
+                .exportDir(tempDir)
+                .build();
+        ExcelExporter parallel = sequential.toBuilder()
+                .sheetExecutor(ForkJoinPool.commonPool())
+                .build();
+        File png = new PathMatchingResourcePatternResolver().getResource("template/功能简介.png").getFile();
+        // xls和xlsx的anchor类型不同，按格式分别传入图片
+        Map<ExcelFormat, List<ExcelImage>> images = new EnumMap<>(ExcelFormat.class);
+        Map<ExcelFormat, File> expectedFiles = new EnumMap<>(ExcelFormat.class);
+        for (ExcelFormat format : ExcelFormat.values()) {
+            images.put(format, Arrays.asList(new ExcelImage(png, 0, createAnchor(format, 5, 1)),
+                    new ExcelImage(png, 1, createAnchor(format, 3, 10))));
+            expectedFiles.put(format, sequential.writeExcel(format, dataMap, templateName, "single-" + format));
+        }
+        List<Set<ExcelFormat>> formatSets = Arrays.asList(EnumSet.of(ExcelFormat.XLS, ExcelFormat.XLSX),
+                EnumSet.of(ExcelFormat.XLS, ExcelFormat.XLSX_STREAMING),
+                EnumSet.of(ExcelFormat.XLS, ExcelFormat.XLSX_DIRECT));
+        for (Set<ExcelFormat> formats : formatSets) {
+            for (ExcelExporter exporter : new ExcelExporter[]{sequential, parallel}) {
+                String fileName = "multi-" + formats.size() + "-" + (exporter == parallel);
+                Map<ExcelFormat, File> files = exporter.writeExcel(formats, dataMap, templateName, fileName);
+                assertEquals(formats, files.keySet());
+                for (ExcelFormat format : formats) {
+                    assertSameContent(expectedFiles.get(format), files.get(format));
+                }
+                Map<ExcelFormat, File> imageFiles = exporter.writeExcel(formats, dataMap, templateName,
+                        fileName + "-images", images);
+                for (ExcelFormat format : formats) {
+                    assertSameContent(expectedFiles.get(format), imageFiles.get(format));
+                    assertPictures(imageFiles.get(format), png, 5, 1, 3, 10);
+                }
+            }
+        }
+        // 调用方的anchor不被修改，同一组图片可以重复导出
+        assertEquals(ClientAnchor.AnchorType.MOVE_AND_RESIZE, images.get(ExcelFormat.XLSX).get(0).getAnchor()
+                .getAnchorType());
+        // anchor与格式不匹配时整体失败
+        ExcelExportException mismatch = assertThrows(ExcelExportException.class, () -> sequential.writeExcel(
+                EnumSet.of(ExcelFormat.XLS, ExcelFormat.XLSX), dataMap, templateName, "mismatch",
+                Collections.singletonMap(ExcelFormat.XLS, images.get(ExcelFormat.XLSX))));
+        assertTrue(mismatch.getCause() instanceof IOException);
+        assertFalse(new File(tempDir, "mismatch.xls").exists());
+        assertThrows(IllegalArgumentException.class, () -> sequential.writeExcel(
+                EnumSet.of(ExcelFormat.XLSX, ExcelFormat.XLSX_DIRECT), dataMap, templateName, "same-extension"));
+        // 任意一种格式失败时不留下文件
+        assertThrows(ExcelExportException.class, () -> parallel.writeExcel(
+                EnumSet.of(ExcelFormat.XLS, ExcelFormat.XLSX_DIRECT), new HashMap<>(), templateName, "failure"));
+        assertFalse(new File(tempDir, "failure.xls").exists());
+        assertFalse(new File(tempDir, "failure.xlsx").exists());
+    }
+
+    private void assertSameContent(File expectedFile, File actualFile) throws IOException {
+        try (Workbook expected = WorkbookFactory.create(expectedFile, null, true);
+             Workbook actual = WorkbookFactory.create(actualFile, null, true)) {
+            assertEquals(expected.getNumberOfSheets(), actual.getNumberOfSheets());
+            for (int i = 0; i < expected.getNumberOfSheets(); i++) {
+                Sheet expectedSheet = expected.getSheetAt(i);
+                Sheet actualSheet = actual.getSheetAt(i);
+                assertEquals(expectedSheet.getSheetName(), actualSheet.getSheetName());
+                assertEquals(expectedSheet.getNumMergedRegions(), actualSheet.getNumMergedRegions());
+                for (Row expectedRow : expectedSheet) {
+                    Row actualRow = actualSheet.getRow(expectedRow.getRowNum());
+                    for (Cell expectedCell : expectedRow) {
+                        Cell actualCell = actualRow.getCell(expectedCell.getColumnIndex());
+                        assertEquals(expectedCell.toString(), actualCell.toString());
+                        assertEquals(expectedCell.getCellStyle().getBorderBottomEnum(),
+                                actualCell.getCellStyle().getBorderBottomEnum());
+                        assertEquals(expectedCell.getCellStyle().getBorderRightEnum(),
+                                actualCell.getCellStyle().getBorderRightEnum());
+                    }
+                }
+            }
+        } catch (InvalidFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Test
+    public void writeExcelConcurrently(@TempDir File tempDir) throws Exception {
+        Map<String, Object> dataMap = getDemoDataMap();
+        String templateName = "图片-颜色-单元格合并-样例.xml";
+        ExcelExporter exporter = ExcelExporter.builder()
+                .templateDir(ExcelWriter.getExporter().getTemplateDir())
+                .exportDir(tempDir)
+                .build();
+        File expectedFile = exporter.writeExcel(ExcelFormat.XLS, dataMap, templateName, "expected");
+        int n = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<File>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                String fileName = "concurrent-" + i;
+                futures.add(executor.submit(() -> exporter.writeExcel(ExcelFormat.XLS, dataMap, templateName, fileName)));
+            }
+            for (Future<File> future : futures) {
+                assertSameColors(expectedFile, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void assertSameColors(File expectedFile, File actualFile) throws IOException {
+        try (HSSFWorkbook expected = new HSSFWorkbook(new FileInputStream(expectedFile));
+             HSSFWorkbook actual = new HSSFWorkbook(new FileInputStream(actualFile))) {
+            for (int i = 0; i < expected.getNumberOfSheets(); i++) {
+                Sheet actualSheet = actual.getSheetAt(i);
+                for (Row expectedRow : expected.getSheetAt(i)) {
+                    Row actualRow = actualSheet.getRow(expectedRow.getRowNum());
+                    for (Cell expectedCell : expectedRow) {
+                        HSSFCellStyle expectedStyle = (HSSFCellStyle) expectedCell.getCellStyle();
+                        HSSFCellStyle actualStyle = (HSSFCellStyle) actualRow.getCell(expectedCell.getColumnIndex())
+                                .getCellStyle();
+                        assertArrayEquals(getTriplet(expectedStyle.getFillForegroundColorColor()),
+                                getTriplet(actualStyle.getFillForegroundColorColor()));
+                        assertArrayEquals(getTriplet(expectedStyle.getFont(expected).getHSSFColor(expected)),
+                                getTriplet(actualStyle.getFont(actual).getHSSFColor(actual)));
+                    }
+                }
+            }
+        }
+    }
+
+    private short[] getTriplet(HSSFColor color) {
+        return color == null ? null : color.getTriplet();
+    }
+
     private Map<String, Object> getDemoDataMap() {
         Map<String, Object> bill = new HashMap<>();
         bill.put("customerName", "奥迪公司");